@@ -0,0 +1,183 @@
+package se.pbt.stepcounter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.model.MonthStep;
+import se.pbt.stepcounter.model.WeekStep;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded read-through cache of the stored week and month totals of users, and of their lists of weeks and months
+ * of a year, which dashboards read far more often than users upload.
+ * Entries are removed when the rows behind them are written, both at once and when the writing transaction completes,
+ * so a read racing with the write can not keep the old value. Entries also expire after a fixed time, which bounds
+ * how long a write made by another instance can go unseen.
+ * Hit, miss and eviction counts are published through actuator under the cache names "weekStepCount",
+ * "monthStepCount", "weekStepList" and "monthStepList".
+ */
+@Component
+public class AggregateStepCache {
+
+    private final WeekStepRepository weekStepRepository;
+    private final MonthStepRepository monthStepRepository;
+    private final Cache<String, Integer> weekStepCounts;
+    private final Cache<String, Integer> monthStepCounts;
+    private final Cache<String, List<WeekStep>> weekStepLists;
+    private final Cache<String, List<MonthStep>> monthStepLists;
+
+    /**
+     * Constructor for AggregateStepCache class.
+     *
+     * @param weekStepRepository the {@link WeekStepRepository} the week data is loaded from on a cache miss
+     * @param monthStepRepository the {@link MonthStepRepository} the month data is loaded from on a cache miss
+     * @param meterRegistry the {@link MeterRegistry} the cache statistics are registered with
+     * @param ttlSeconds the number of seconds an entry is kept after it was loaded
+     * @param maximumSize the maximum number of entries kept in each of the caches
+     */
+    public AggregateStepCache(final WeekStepRepository weekStepRepository,
+                              final MonthStepRepository monthStepRepository,
+                              final MeterRegistry meterRegistry,
+                              @Value("${stepcounter.cache.aggregate.ttl-seconds:60}") final long ttlSeconds,
+                              @Value("${stepcounter.cache.aggregate.maximum-size:100000}") final long maximumSize) {
+        this.weekStepRepository = weekStepRepository;
+        this.monthStepRepository = monthStepRepository;
+        this.weekStepCounts = buildCache(meterRegistry, "weekStepCount", ttlSeconds, maximumSize);
+        this.monthStepCounts = buildCache(meterRegistry, "monthStepCount", ttlSeconds, maximumSize);
+        this.weekStepLists = buildCache(meterRegistry, "weekStepList", ttlSeconds, maximumSize);
+        this.monthStepLists = buildCache(meterRegistry, "monthStepList", ttlSeconds, maximumSize);
+    }
+
+    /**
+     * Retrieves the stored step count of a user for a week, loading it from the database on a cache miss.
+     *
+     * @return the stored step count, or 0 if the week has no row
+     */
+    public int getStepCountForWeek(String userId, int year, int week) {
+        return get(weekStepCounts, periodKey(userId, year, week),
+                () -> weekStepRepository.getStepCountByUserIdYearAndWeek(userId, year, week).orElse(0));
+    }
+
+    /**
+     * Retrieves the stored step count of a user for a month, loading it from the database on a cache miss.
+     *
+     * @return the stored step count, or 0 if the month has no row
+     */
+    public int getStepCountForMonth(String userId, int year, int month) {
+        return get(monthStepCounts, periodKey(userId, year, month),
+                () -> monthStepRepository.getStepCountByUserIdYearAndMonth(userId, year, month).orElse(0));
+    }
+
+    /**
+     * Retrieves the stored {@link WeekStep} objects of a user for a year, loading them from the database on a cache
+     * miss.
+     *
+     * @return an unmodifiable list of the stored {@link WeekStep} objects, which are shared with other callers and
+     * must not be changed
+     */
+    public List<WeekStep> getWeekSteps(String userId, int year) {
+        return get(weekStepLists, yearKey(userId, year),
+                () -> Collections.unmodifiableList(weekStepRepository.findByUserIdAndYear(userId, year)));
+    }
+
+    /**
+     * Retrieves the stored {@link MonthStep} objects of a user for a year, loading them from the database on a
+     * cache miss.
+     *
+     * @return an unmodifiable list of the stored {@link MonthStep} objects, which are shared with other callers and
+     * must not be changed
+     */
+    public List<MonthStep> getMonthSteps(String userId, int year) {
+        return get(monthStepLists, yearKey(userId, year),
+                () -> Collections.unmodifiableList(monthStepRepository.findByUserIdAndYear(userId, year)));
+    }
+
+    /**
+     * Removes the cached total of a week and the cached list of weeks of its year, once now and once more when the
+     * current transaction completes.
+     */
+    public void invalidateWeek(String userId, int year, int week) {
+        var periodKey = periodKey(userId, year, week);
+        var yearKey = yearKey(userId, year);
+        runNowAndAfterCompletion(() -> {
+            weekStepCounts.invalidate(periodKey);
+            weekStepLists.invalidate(yearKey);
+        });
+    }
+
+    /**
+     * Removes the cached total of a month and the cached list of months of its year, once now and once more when the
+     * current transaction completes.
+     */
+    public void invalidateMonth(String userId, int year, int month) {
+        var periodKey = periodKey(userId, year, month);
+        var yearKey = yearKey(userId, year);
+        runNowAndAfterCompletion(() -> {
+            monthStepCounts.invalidate(periodKey);
+            monthStepLists.invalidate(yearKey);
+        });
+    }
+
+    /**
+     * Removes all cached entries.
+     */
+    public void invalidateAll() {
+        weekStepCounts.invalidateAll();
+        monthStepCounts.invalidateAll();
+        weekStepLists.invalidateAll();
+        monthStepLists.invalidateAll();
+    }
+
+    private static <V> Cache<String, V> buildCache(MeterRegistry meterRegistry, String name, long ttlSeconds, long maximumSize) {
+        Cache<String, V> cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, name);
+        return cache;
+    }
+
+    private static <V> V get(Cache<String, V> cache, String key, Callable<V> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException)
+                throw (RuntimeException) exception.getCause();
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    private static String periodKey(String userId, int year, int period) {
+        return userId + ":" + year + ":" + period;
+    }
+
+    private static String yearKey(String userId, int year) {
+        return userId + ":" + year;
+    }
+
+    private static void runNowAndAfterCompletion(Runnable action) {
+        action.run();
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+package se.pbt.stepcounter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.model.Step;
+import se.pbt.stepcounter.repository.StepRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded in-process cache holding the most recent {@link Step} object of each user, used by the upload path to
+ * decide whether new data updates the latest step or creates a new one without querying the step table.
+ * The cache stores copies of the {@link Step} objects, so changes made to a returned object are not visible to other
+ * callers until they are written back with {@link #update(Step)}.
+ * Entries expire a fixed time after they were written, so steps written by another instance are read from the
+ * database again within that time.
+ * Hit and miss counts are published through actuator under the cache name "latestStep".
+ */
+@Component
+public class LatestStepCache {
+
+    private static final String CACHE_NAME = "latestStep";
+
+    private final StepRepository stepRepository;
+    private final Cache<String, Step> cache;
+
+    /**
+     * Constructor for LatestStepCache class.
+     *
+     * @param stepRepository the {@link StepRepository} used to load the latest step of a user on a cache miss
+     * @param meterRegistry the {@link MeterRegistry} the cache statistics are registered with
+     * @param ttlSeconds the number of seconds a step is kept after it was loaded or written
+     * @param maximumSize the maximum number of users kept in the cache
+     */
+    public LatestStepCache(final StepRepository stepRepository,
+                           final MeterRegistry meterRegistry,
+                           @Value("${stepcounter.cache.latest-step.ttl-seconds:60}") final long ttlSeconds,
+                           @Value("${stepcounter.cache.latest-step.maximum-size:10000}") final long maximumSize) {
+        this.stepRepository = stepRepository;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Retrieves the most recent {@link Step} object of a user, loading it from the database on a cache miss.
+     * The loaded step is only cached if no step was stored for the user in the meantime, since this read is not
+     * serialized with the writes of the user and may have loaded an older version of the same step.
+     *
+     * @param userId the ID of the user
+     * @return a copy of the users most recent {@link Step} object, or an empty Optional if the user has no steps
+     */
+    public Optional<Step> get(String userId) {
+        var cachedStep = cache.getIfPresent(userId);
+        if (cachedStep != null)
+            return Optional.of(copyOf(cachedStep));
+        var storedStep = stepRepository.findFirstByUserIdOrderByStartTimeDesc(userId);
+        storedStep.ifPresent(step -> cache.asMap().putIfAbsent(userId, copyOf(step)));
+        return storedStep;
+    }
+
+    /**
+     * Retrieves the cached {@link Step} objects of the given users. Users that are not in the cache are left out.
+     *
+     * @param userIds the IDs of the users
+     * @return a map holding a copy of the cached {@link Step} object of each user found in the cache
+     */
+    public Map<String, Step> getAllPresent(Collection<String> userIds) {
+        var cachedSteps = new HashMap<String, Step>();
+        cache.getAllPresent(userIds).forEach((userId, step) -> cachedSteps.put(userId, copyOf(step)));
+        return cachedSteps;
+    }
+
+    /**
+     * Stores a written {@link Step} object as the latest step of its user, unless a step with a later start time is
+     * already cached. When called inside a transaction the cache is updated once the transaction commits, and the
+     * user is evicted instead if it rolls back.
+     *
+     * @param step the {@link Step} object that was written to the database
+     */
+    public void update(Step step) {
+        var snapshot = copyOf(step);
+        runAfterCommit(() -> cache.asMap().merge(snapshot.getUserId(), snapshot, LatestStepCache::latestOf),
+                () -> cache.invalidate(snapshot.getUserId()));
+    }
+
+    /**
+     * Removes the cached step of a user, forcing the next lookup to read from the database.
+     *
+     * @param userId the ID of the user
+     */
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Removes the cached steps of all users.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static void runAfterCommit(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED)
+                    onCommit.run();
+                else
+                    onRollback.run();
+            }
+        });
+    }
+
+    /**
+     * Keeps the step with the latest start time. A step replaces a cached step with the same start time, since it
+     * holds the newest data for that step.
+     */
+    private static Step latestOf(Step cachedStep, Step newStep) {
+        return newStep.getStartTime().isBefore(cachedStep.getStartTime()) ? cachedStep : newStep;
+    }
+
+    private static Step copyOf(Step step) {
+        var copy = new Step(step.getUserId(), step.getStepCount(), step.getStartTime(), step.getEndTime(), step.getUploadTime());
+        copy.setId(step.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,101 @@
+package se.pbt.stepcounter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.model.Step;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, time-windowed store of recent uploads and the {@link Step} object each of them resulted in, used to
+ * recognize a client resending an upload it has already made. An upload is identified by the Idempotency-Key the
+ * client sent with it, or by a hash of its content when it has no key.
+ * Hit and miss counts are published through actuator under the cache name "uploadDeduplication".
+ */
+@Component
+public class UploadDeduplicationCache {
+
+    private static final String CACHE_NAME = "uploadDeduplication";
+
+    private final Cache<String, Step> cache;
+
+    /**
+     * Constructor for UploadDeduplicationCache class.
+     *
+     * @param meterRegistry the {@link MeterRegistry} the cache statistics are registered with
+     * @param windowSeconds the number of seconds an upload is remembered
+     * @param maximumSize the maximum number of uploads remembered
+     */
+    public UploadDeduplicationCache(final MeterRegistry meterRegistry,
+                                    @Value("${stepcounter.cache.deduplication.window-seconds:600}") final long windowSeconds,
+                                    @Value("${stepcounter.cache.deduplication.maximum-size:100000}") final long maximumSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(windowSeconds, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Creates the key identifying an upload. Keys are scoped to the user, so two users sending the same
+     * Idempotency-Key do not share an entry.
+     *
+     * @param userId the ID of the user
+     * @param idempotencyKey the key the client sent with the upload, or null if it sent none
+     * @param stepDTO the {@link StepDTO} object holding the uploaded data
+     * @return the key of the upload
+     */
+    public static String keyOf(String userId, String idempotencyKey, StepDTO stepDTO) {
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty())
+            return userId + ":key:" + idempotencyKey;
+        var content = String.join("|",
+                stepDTO.getUserId(),
+                String.valueOf(stepDTO.getStepCount()),
+                String.valueOf(stepDTO.getStartTime().toInstant()),
+                String.valueOf(stepDTO.getEndTime().toInstant()),
+                String.valueOf(stepDTO.getUploadTime().toInstant()));
+        return userId + ":hash:" + Hashing.sha256().hashString(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the {@link Step} object an earlier upload with the same key resulted in.
+     *
+     * @param key the key of the upload
+     * @return a copy of the resulting {@link Step} object, or an empty Optional if the upload is not remembered
+     */
+    public Optional<Step> getPrevious(String key) {
+        return Optional.ofNullable(cache.getIfPresent(key)).map(UploadDeduplicationCache::copyOf);
+    }
+
+    /**
+     * Remembers the {@link Step} object an upload resulted in.
+     *
+     * @param key the key of the upload
+     * @param step the {@link Step} object the upload resulted in
+     */
+    public void remember(String key, Step step) {
+        cache.put(key, copyOf(step));
+    }
+
+    /**
+     * Forgets all remembered uploads.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static Step copyOf(Step step) {
+        var copy = new Step(step.getUserId(), step.getStepCount(), step.getStartTime(), step.getEndTime(), step.getUploadTime());
+        copy.setId(step.getId());
+        return copy;
+    }
+}
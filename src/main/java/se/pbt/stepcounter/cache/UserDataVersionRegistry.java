@@ -0,0 +1,114 @@
+package se.pbt.stepcounter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.model.UserDataVersion;
+import se.pbt.stepcounter.repository.UserDataVersionRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The data version of each user, a number stored in the user_data_version table and increased by every write of step
+ * data for the user, so a client can tell whether anything it read before has changed without reading it again.
+ * Versions are kept in a bounded cache. A version is removed from the cache when it is increased, both at once and
+ * when the writing transaction completes, so a read racing with the write can not keep the old version. Entries also
+ * expire after a fixed time, which bounds how long a write made by another instance can go unseen.
+ * Hit and miss counts are published through actuator under the cache name "userDataVersion".
+ */
+@Component
+public class UserDataVersionRegistry {
+
+    private static final String CACHE_NAME = "userDataVersion";
+
+    private final UserDataVersionRepository userDataVersionRepository;
+    private final Cache<String, Long> cache;
+
+    /**
+     * Constructor for UserDataVersionRegistry class.
+     *
+     * @param userDataVersionRepository the {@link UserDataVersionRepository} holding the stored versions
+     * @param meterRegistry the {@link MeterRegistry} the cache statistics are registered with
+     * @param ttlSeconds the number of seconds a version is kept after it was loaded
+     * @param maximumSize the maximum number of users kept in the cache
+     */
+    public UserDataVersionRegistry(final UserDataVersionRepository userDataVersionRepository,
+                                   final MeterRegistry meterRegistry,
+                                   @Value("${stepcounter.cache.data-version.ttl-seconds:60}") final long ttlSeconds,
+                                   @Value("${stepcounter.cache.data-version.maximum-size:100000}") final long maximumSize) {
+        this.userDataVersionRepository = userDataVersionRepository;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Retrieves the data version of a user, loading it from the database on a cache miss.
+     *
+     * @param userId the ID of the user
+     * @return the version, or 0 if no data has been written for the user
+     */
+    public long getVersion(String userId) {
+        try {
+            return cache.get(userId, () -> userDataVersionRepository.findById(userId)
+                    .map(UserDataVersion::getVersion)
+                    .orElse(0L));
+        } catch (ExecutionException | UncheckedExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException)
+                throw (RuntimeException) exception.getCause();
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    /**
+     * Increases the data version of each of the given users, in the current transaction if there is one.
+     *
+     * @param userIds the IDs of the users whose data was written
+     */
+    public void increaseVersions(Collection<String> userIds) {
+        if (userIds.isEmpty())
+            return;
+        var writtenUserIds = List.copyOf(userIds);
+        userDataVersionRepository.increaseVersions(writtenUserIds);
+        runNowAndAfterCompletion(() -> cache.invalidateAll(writtenUserIds));
+    }
+
+    /**
+     * Increases the data version of every user, for writes that change the data of all users at once.
+     */
+    public void increaseAllVersions() {
+        userDataVersionRepository.increaseAllVersions();
+        runNowAndAfterCompletion(cache::invalidateAll);
+    }
+
+    /**
+     * Removes the cached versions of all users.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static void runNowAndAfterCompletion(Runnable action) {
+        action.run();
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package se.pbt.stepcounter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.mapper.ZoneDayConverter;
+import se.pbt.stepcounter.model.UserZone;
+import se.pbt.stepcounter.repository.UserZoneRepository;
+
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The time zone of each user, in which their step data is counted to days, weeks and months. The zone of a user is
+ * stored in the user_zone table the first time data is uploaded for them, taken from the time fields of that upload,
+ * and reused for all later uploads and reads, whatever offset the data of those carries. Users without a stored zone
+ * are read in the configured default zone.
+ * The zones are kept in a bounded cache as {@link ZoneDayConverter} objects, shared by all users of the same zone.
+ * Hit and miss counts are published through actuator under the cache name "userZone".
+ */
+@Component
+public class UserZoneRegistry {
+
+    private static final String CACHE_NAME = "userZone";
+
+    private final UserZoneRepository userZoneRepository;
+    private final Cache<String, ZoneDayConverter> cache;
+    private final ConcurrentMap<ZoneId, ZoneDayConverter> convertersByZone = new ConcurrentHashMap<>();
+    private final ZoneDayConverter defaultConverter;
+
+    /**
+     * Constructor for UserZoneRegistry class.
+     *
+     * @param userZoneRepository the {@link UserZoneRepository} holding the stored zones
+     * @param meterRegistry the {@link MeterRegistry} the cache statistics are registered with
+     * @param maximumSize the maximum number of users kept in the cache
+     * @param defaultZone the zone of users without a stored zone, or empty for the zone of the server
+     */
+    public UserZoneRegistry(final UserZoneRepository userZoneRepository,
+                            final MeterRegistry meterRegistry,
+                            @Value("${stepcounter.cache.user-zone.maximum-size:100000}") final long maximumSize,
+                            @Value("${stepcounter.calendar.default-zone:}") final String defaultZone) {
+        this.userZoneRepository = userZoneRepository;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.defaultConverter = converterOf(defaultZone.trim().isEmpty() ? ZoneId.systemDefault() : ZoneId.of(defaultZone.trim()));
+    }
+
+    /**
+     * Retrieves the zone of a user, loading it from the database on a cache miss.
+     *
+     * @param userId the ID of the user
+     * @return the {@link ZoneDayConverter} of the users zone, or of the default zone if the user has none stored
+     */
+    public ZoneDayConverter getZone(String userId) {
+        var converter = cache.getIfPresent(userId);
+        if (converter != null)
+            return converter;
+        return userZoneRepository.findById(userId)
+                .map(userZone -> cacheZone(userId, ZoneId.of(userZone.getZoneId())))
+                .orElse(defaultConverter);
+    }
+
+    /**
+     * Retrieves the zone of a user, storing the given zone as the users zone if the user has none yet.
+     * The zone is stored with an insert that does nothing if a zone is already stored, so concurrent first uploads of
+     * a user, on this or another instance, all get the zone that was stored first instead of failing.
+     * When called inside a transaction the zone is cached once the transaction commits.
+     *
+     * @param userId the ID of the user
+     * @param zone the zone of the data being uploaded for the user
+     * @return the {@link ZoneDayConverter} of the users zone
+     */
+    public ZoneDayConverter registerIfAbsent(String userId, ZoneId zone) {
+        var converter = cache.getIfPresent(userId);
+        if (converter != null)
+            return converter;
+        var storedZone = userZoneRepository.findById(userId);
+        if (storedZone.isPresent())
+            return cacheZone(userId, ZoneId.of(storedZone.get().getZoneId()));
+        // A concurrent first upload for the same user may store another zone, so the zone that was stored is read back
+        userZoneRepository.addIfAbsent(new UserZone(userId, zone.getId()));
+        var registeredZone = userZoneRepository.findById(userId)
+                .map(userZone -> ZoneId.of(userZone.getZoneId()))
+                .orElseThrow(() -> new IllegalStateException("No zone stored for user " + userId));
+        var newConverter = converterOf(registeredZone);
+        runAfterCommit(() -> cache.put(userId, newConverter));
+        return newConverter;
+    }
+
+    /**
+     * Removes the cached zones of all users.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private ZoneDayConverter cacheZone(String userId, ZoneId zone) {
+        var converter = converterOf(zone);
+        cache.put(userId, converter);
+        return converter;
+    }
+
+    private ZoneDayConverter converterOf(ZoneId zone) {
+        return convertersByZone.computeIfAbsent(zone, ZoneDayConverter::new);
+    }
+
+    private static void runAfterCommit(Runnable onCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED)
+                    onCommit.run();
+            }
+        });
+    }
+}
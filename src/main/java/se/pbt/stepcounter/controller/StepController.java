@@ -1,33 +1,63 @@
 package se.pbt.stepcounter.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import se.pbt.stepcounter.controller.apiresponse.AcceptedPostResponse;
 import se.pbt.stepcounter.controller.apiresponse.GroupedApiResponse;
 import se.pbt.stepcounter.controller.apiresponse.OkGetRequest;
 import se.pbt.stepcounter.controller.apiresponse.OkPostResponse;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.dto.stepdto.BatchStepCountRequestDTO;
 import se.pbt.stepcounter.dto.stepdto.DailyWeekStepDTO;
+import se.pbt.stepcounter.dto.stepdto.IngestReceiptDTO;
+import se.pbt.stepcounter.dto.stepdto.NdjsonImportSummaryDTO;
 import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.dto.stepdto.StepHistoryPageDTO;
 import se.pbt.stepcounter.dto.stepdto.WeeklyStepDTO;
+import se.pbt.stepcounter.dto.stepdto.YearlyStepSummaryDTO;
+import se.pbt.stepcounter.exception.DateTimeValueException;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.exception.NotFoundException;
+import se.pbt.stepcounter.mapper.BinaryStepReader;
+import se.pbt.stepcounter.mapper.StepDTOStreamReader;
 import se.pbt.stepcounter.model.MonthStep;
 import se.pbt.stepcounter.model.Step;
 import se.pbt.stepcounter.model.WeekStep;
+import se.pbt.stepcounter.service.NdjsonStepImporter;
+import se.pbt.stepcounter.service.StepExporter;
+import se.pbt.stepcounter.service.StepIngestQueue;
 import se.pbt.stepcounter.service.StepService;
+import se.pbt.stepcounter.validator.DateTimeRangeValidator;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A controller for managing steps data for a single user. This class is intended for development purposes only and does not
  * require a security token.
+ * Reads of the step data of a user carry an ETag made from the users data version, and are answered with status 304
+ * and no body, without reading the data, when the client sends the current ETag in If-None-Match.
  *
  * @see StepService
+ * @see StepIngestQueue
+ * @see StepDTOStreamReader
+ * @see NdjsonStepImporter
+ * @see StepExporter
  * @see GroupedApiResponse
  */
 @RestController
@@ -36,11 +66,27 @@
 @RequestMapping("/steps")
 public class StepController {
 
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String CSV_MEDIA_TYPE = "text/csv";
+
     private final StepService stepService;
+    private final StepIngestQueue stepIngestQueue;
+    private final StepDTOStreamReader stepDTOStreamReader;
+    private final NdjsonStepImporter ndjsonStepImporter;
+    private final StepExporter stepExporter;
+    private final long exportTimeoutMillis;
 
 
-    public StepController(StepService stepService) {
+    public StepController(StepService stepService, StepIngestQueue stepIngestQueue,
+                          StepDTOStreamReader stepDTOStreamReader, NdjsonStepImporter ndjsonStepImporter,
+                          StepExporter stepExporter,
+                          @Value("${stepcounter.export.timeout-minutes:60}") long exportTimeoutMinutes) {
         this.stepService = stepService;
+        this.stepIngestQueue = stepIngestQueue;
+        this.stepDTOStreamReader = stepDTOStreamReader;
+        this.ndjsonStepImporter = ndjsonStepImporter;
+        this.stepExporter = stepExporter;
+        this.exportTimeoutMillis = exportTimeoutMinutes * 60_000;
     }
 
     /**
@@ -55,12 +101,33 @@ public void deleteStepTable() {
     }
 
 
-    @Operation(summary = "Adds new step data to the database for a specified user")
+    @Operation(summary = "Adds new step data to the database for a specified user. A repeated upload with the same " +
+            "Idempotency-Key header, or the same content if no key is sent, returns the earlier result without storing it again")
     @OkPostResponse(schemaImplementation = Step.class)
     @PostMapping(value = "/{userId}", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Step> addStepForUser(final @PathVariable String userId,
-                                              final @RequestBody @Valid StepDTO newStepData) {
-            var addedStep = stepService.addSingleStepForUser(userId, newStepData);
+                                              final @RequestBody @Valid StepDTO newStepData,
+                                              final @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+            var addedStep = stepService.addSingleStepForUser(userId, newStepData, idempotencyKey);
+            return ResponseEntity.ok(addedStep);
+    }
+
+
+    @Operation(summary = "Adds new step data in the compact binary format, holding a single sample, for a specified user. " +
+            "A repeated upload with the same Idempotency-Key header, or the same content if no key is sent, returns the earlier result")
+    @OkPostResponse(schemaImplementation = Step.class)
+    @PostMapping(value = "/{userId}", consumes = BinaryStepReader.MEDIA_TYPE)
+    public ResponseEntity<Step> addBinaryStepForUser(final @PathVariable String userId,
+                                                    final InputStream requestBody,
+                                                    final @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) throws IOException {
+            var binaryStepReader = new BinaryStepReader(requestBody);
+            if (binaryStepReader.getSampleCount() != 1 || !binaryStepReader.next())
+                throw new InvalidStepDataException("Binary step data for a single step must hold exactly one sample");
+            // The same time field rule the DateTimeRange constraint applies to JSON uploads
+            if (!DateTimeRangeValidator.isValid(binaryStepReader.getStartEpochSecond(),
+                    binaryStepReader.getEndEpochSecond(), binaryStepReader.getUploadEpochSecond()))
+                throw new DateTimeValueException("Start time must before end time, which in turn must be before uploaded time");
+            var addedStep = stepService.addSingleStepForUser(userId, binaryStepReader.toStepDTO(userId), idempotencyKey);
             return ResponseEntity.ok(addedStep);
     }
 
@@ -75,20 +142,140 @@ public ResponseEntity<Step> addStepListForUser(final @PathVariable String userId
     }
 
 
+    @Operation(summary = "Adds new step data in the compact binary format, holding any number of samples, for a specified user")
+    @OkPostResponse(schemaImplementation = Step.class)
+    @PostMapping(value = "/multiple/{userId}", consumes = BinaryStepReader.MEDIA_TYPE)
+    public ResponseEntity<Step> addBinaryStepListForUser(final @PathVariable String userId,
+                                                        final InputStream requestBody) throws IOException {
+            var addedStep = stepService.addBinaryStepsForUser(userId, new BinaryStepReader(requestBody));
+            return new ResponseEntity<>(addedStep, HttpStatus.CREATED);
+    }
+
+
+    @Operation(summary = "Adds new step data to the database from a list of DTO objects for a specified user, " +
+            "reading and checking the list one object at a time. Intended for large backfill uploads")
+    @OkPostResponse(schemaImplementation = Step.class)
+    @PostMapping(value = "/stream/multiple/{userId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Step> streamStepListForUser(final @PathVariable String userId,
+                                                      final InputStream requestBody) throws IOException {
+            var addedStep = stepService.addStreamedStepsForUser(userId, stepDTOStreamReader.readStepDTOs(requestBody));
+            return new ResponseEntity<>(addedStep, HttpStatus.CREATED);
+    }
+
+
+    @Operation(summary = "Adds new step data for multiple users in one batch and returns the status of each item")
+    @OkPostResponse(schemaImplementation = BatchItemStatusDTO.class)
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BatchItemStatusDTO>> addStepsForMultipleUsers(final @RequestBody List<StepDTO> stepDtoList) {
+        var itemStatuses = stepService.addStepsForMultipleUsers(stepDtoList);
+        return ResponseEntity.ok(itemStatuses);
+    }
+
+
+    @Operation(summary = "Get the step count of one week or one month for multiple users, as a map of user ID to step count")
+    @OkPostResponse(schemaImplementation = Map.class)
+    @PostMapping(value = "/stepcount/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Integer>> getStepCountsForMultipleUsers(final @RequestBody BatchStepCountRequestDTO request) {
+        var stepCountByUser = stepService.getStepCountsForUsers(request);
+        return ResponseEntity.ok(stepCountByUser);
+    }
+
+    @Operation(summary = "Adds newline-delimited step data for any number of users, one DTO object per line, and returns " +
+            "a summary of the accepted and rejected lines. Intended for backfill and replay of large amounts of data. " +
+            "If the database fails, the import stops with 503 Service Unavailable and a summary of the lines up to the " +
+            "last committed one")
+    @OkPostResponse(schemaImplementation = NdjsonImportSummaryDTO.class)
+    @PostMapping(value = "/ndjson", consumes = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<NdjsonImportSummaryDTO> addNdjsonSteps(final InputStream requestBody) throws IOException {
+        var summary = ndjsonStepImporter.importSteps(requestBody);
+        if (summary.getFailureMessage() != null)
+            return new ResponseEntity<>(summary, HttpStatus.SERVICE_UNAVAILABLE);
+        return ResponseEntity.ok(summary);
+    }
+
+
+    @Operation(summary = "Validates new step data for a specified user and queues it to be stored asynchronously")
+    @AcceptedPostResponse(schemaImplementation = IngestReceiptDTO.class)
+    @PostMapping(value = "/async/{userId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<IngestReceiptDTO> queueStepForUser(final @PathVariable String userId,
+                                                             final @RequestBody @Valid StepDTO newStepData) {
+        var receipt = stepIngestQueue.submitSingleStep(userId, newStepData);
+        return new ResponseEntity<>(receipt, HttpStatus.ACCEPTED);
+    }
+
+
+    @Operation(summary = "Validates a list of new step data for a specified user and queues it to be stored asynchronously")
+    @AcceptedPostResponse(schemaImplementation = IngestReceiptDTO.class)
+    @PostMapping(value = "/async/multiple/{userId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<IngestReceiptDTO> queueStepListForUser(final @PathVariable String userId,
+                                                                 final @RequestBody List<@Valid StepDTO> stepDtoList) {
+        var receipt = stepIngestQueue.submitMultipleSteps(userId, stepDtoList);
+        return new ResponseEntity<>(receipt, HttpStatus.ACCEPTED);
+    }
+
+
+    @Operation(summary = "Retrieve the processing status of step data queued for asynchronous storage")
+    @OkGetRequest(schemaImplementation = IngestReceiptDTO.class)
+    @GetMapping(value = "/async/receipt/{receiptId}")
+    public ResponseEntity<IngestReceiptDTO> getIngestReceipt(final @PathVariable String receiptId) {
+        var receipt = stepIngestQueue.getReceipt(receiptId)
+                .orElseThrow(() -> new NotFoundException("No queued upload found for receipt id: " + receiptId));
+        return new ResponseEntity<>(receipt, HttpStatus.OK);
+    }
+
+
+    @Operation(summary = "Export all step, week-step or month-step rows of a user, or of all users if no userId is given, " +
+            "as NDJSON or CSV. The rows are streamed as they are read, and gzipped with Content-Encoding gzip if requested")
+    @GetMapping(value = "/export")
+    public WebAsyncTask<Void> exportSteps(final @RequestParam(defaultValue = "STEP") StepExporter.Table table,
+                                          final @RequestParam(required = false) String userId,
+                                          final @RequestParam(defaultValue = "NDJSON") StepExporter.Format format,
+                                          final @RequestParam(defaultValue = "false") boolean gzip,
+                                          final HttpServletResponse response) {
+        response.setContentType(format == StepExporter.Format.NDJSON ? NDJSON_MEDIA_TYPE : CSV_MEDIA_TYPE);
+        if (gzip)
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        // An export may run far longer than other requests, so it gets a timeout of its own
+        return new WebAsyncTask<>(exportTimeoutMillis, () -> {
+            stepExporter.export(table, userId, format, gzip, response.getOutputStream());
+            return null;
+        });
+    }
+
+
     @Operation(summary = "Retrieve the most recently stored step object of the user")
     @OkGetRequest(schemaImplementation = Step.class)
     @GetMapping(value = "/latest/{userId}")
-    public ResponseEntity<Step> getUsersLatestStep(final @PathVariable String userId) {
+    public ResponseEntity<Step> getUsersLatestStep(final @PathVariable String userId, final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
         var retrievedStep = stepService.getLatestStepByStartTimeFromUser(userId);
         return new ResponseEntity<>(retrievedStep, HttpStatus.OK);
     }
 
+    @Operation(summary = "Get a page of the stored steps of a user, newest first. Pass the nextCursor of a page as " +
+            "'after' to read the page that follows it. At most " + StepService.MAX_HISTORY_PAGE_SIZE + " steps are returned per page")
+    @OkGetRequest(schemaImplementation = StepHistoryPageDTO.class)
+    @GetMapping(value = "/history/{userId}")
+    public ResponseEntity<StepHistoryPageDTO> getStepHistoryForUser(final @PathVariable String userId,
+                                                                    final @RequestParam(required = false) String after,
+                                                                    final @RequestParam(defaultValue = "100") int limit,
+                                                                    final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
+        var stepHistoryPage = stepService.getStepHistory(userId, after, limit);
+        return new ResponseEntity<>(stepHistoryPage, HttpStatus.OK);
+    }
+
     @Operation(summary = "Get a user's step count per month by user and year and month)")
     @OkGetRequest(schemaImplementation = Integer.class)
     @GetMapping(value = {"/stepcount/{userId}/year/{year}/month/{month}"})
     public ResponseEntity<Integer> getUserMonthStepCountForYearAndMonth(final @PathVariable String userId,
                                                         final @PathVariable int year,
-                                                        final @PathVariable int month) {
+                                                        final @PathVariable int month,
+                                                        final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
         var monthStepCount =  stepService.getStepCountForUserYearAndMonth(userId, year, month);
         return new ResponseEntity<>(monthStepCount, HttpStatus.OK);
     }
@@ -98,7 +285,10 @@ public ResponseEntity<Integer> getUserMonthStepCountForYearAndMonth(final @PathV
     @GetMapping(value = {"/stepcount/{userId}/year/{year}/week/{week}"})
     public ResponseEntity<Integer> getUserWeekStepCountForWeekAndYear(final @PathVariable String userId,
                                                       final @PathVariable int year,
-                                                      final @PathVariable int week) {
+                                                      final @PathVariable int week,
+                                                      final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
         var weekStepCount = stepService.getStepCountForUserYearAndWeek(userId, year, week);
         return new ResponseEntity<>(weekStepCount, HttpStatus.OK);
     }
@@ -107,7 +297,10 @@ public ResponseEntity<Integer> getUserWeekStepCountForWeekAndYear(final @PathVar
     @OkGetRequest(schemaImplementation = MonthStep.class)
     @GetMapping(value = "/monthsteps/user/{userId}/year/{year}")
     public ResponseEntity<List<MonthStep>> getAllMonthStepsFromYearForUser(final @PathVariable String userId,
-                                                           final @PathVariable int year) {
+                                                           final @PathVariable int year,
+                                                           final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
         var listOfMonthSteps = stepService.getMonthStepsFromYearForUser(userId, year);
         return new ResponseEntity<>(listOfMonthSteps, HttpStatus.OK);
     }
@@ -116,7 +309,10 @@ public ResponseEntity<List<MonthStep>> getAllMonthStepsFromYearForUser(final @Pa
     @OkGetRequest(schemaImplementation = WeekStep.class)
     @GetMapping(value = "/weeksteps/user/{userId}/year/{year}")
     public ResponseEntity<List<WeekStep>> getAllWeeksStepsFromYearForUser(final @PathVariable String userId,
-                                                          final @PathVariable int year) {
+                                                          final @PathVariable int year,
+                                                          final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
         var listOfWeekSteps = stepService.getWeekStepsForUserAndYear(userId, year);
         return new ResponseEntity<>(listOfWeekSteps, HttpStatus.OK);
     }
@@ -125,7 +321,11 @@ public ResponseEntity<List<WeekStep>> getAllWeeksStepsFromYearForUser(final @Pat
     @Operation(summary = "Get stepCount per day for current week for a specific user")
     @OkGetRequest(schemaImplementation = DailyWeekStepDTO.class)
     @GetMapping(value = "/stepcount/{userId}/currentweekdaily")
-    public ResponseEntity<DailyWeekStepDTO> getStepCountByDayForUserCurrentWeek(final @PathVariable String userId) {
+    public ResponseEntity<DailyWeekStepDTO> getStepCountByDayForUserCurrentWeek(final @PathVariable String userId,
+                                                                                final WebRequest webRequest) {
+        // The current week changes without any write, so the tag holds the current day of the user as well
+        if (webRequest.checkNotModified(dataVersionTag(userId) + "-" + stepService.getCurrentEpochDay(userId)))
+            return null;
         var stepsPerDayCurrentWeek = stepService.getStepsPerDayForWeek(userId);
         return new ResponseEntity<>(stepsPerDayCurrentWeek, HttpStatus.OK);
     }
@@ -134,9 +334,32 @@ public ResponseEntity<DailyWeekStepDTO> getStepCountByDayForUserCurrentWeek(fina
     @OkGetRequest(schemaImplementation = WeeklyStepDTO.class)
     @GetMapping(value = "/stepcount/user/{userId}/year/{year}/weekly")
     public ResponseEntity<WeeklyStepDTO> getStepCountForUserPerWeek(final @PathVariable String userId,
-                                                    final @PathVariable int year) {
+                                                    final @PathVariable int year,
+                                                    final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
          var stepsPerWeekForYear = stepService.getStepCountPerWeekForUser(userId, year);
          return new ResponseEntity<>(stepsPerWeekForYear, HttpStatus.OK);
     }
-}
 
+    @Operation(summary = "Get the weekly and monthly step counts, the total and the best week and month of a year for a user")
+    @OkGetRequest(schemaImplementation = YearlyStepSummaryDTO.class)
+    @GetMapping(value = "/summary/{userId}/year/{year}")
+    public ResponseEntity<YearlyStepSummaryDTO> getYearlyStepSummaryForUser(final @PathVariable String userId,
+                                                                            final @PathVariable int year,
+                                                                            final WebRequest webRequest) {
+        if (webRequest.checkNotModified(dataVersionTag(userId)))
+            return null;
+        var yearlyStepSummary = stepService.getYearlyStepSummary(userId, year);
+        return new ResponseEntity<>(yearlyStepSummary, HttpStatus.OK);
+    }
+
+    /**
+     * Makes the ETag of the step data of a user from the users data version. When {@link WebRequest#checkNotModified}
+     * finds it in If-None-Match, it sets status 304 on the response and the handler returns null, so no body is
+     * written. Otherwise it sets the ETag header of the response.
+     */
+    private String dataVersionTag(String userId) {
+        return "v" + stepService.getDataVersion(userId);
+    }
+}
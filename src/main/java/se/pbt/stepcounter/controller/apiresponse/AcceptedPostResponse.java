@@ -0,0 +1,20 @@
+package se.pbt.stepcounter.controller.apiresponse;
+
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@GroupedApiResponse
+@ApiResponse(
+        responseCode = "202",
+        description = "POST request accepted for asynchronous processing"
+)
+public @interface AcceptedPostResponse {
+    Class<?> schemaImplementation() default Void.class;
+    String mediaType() default "application/json";
+}
@@ -0,0 +1,84 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Outcome of a single item in a batch upload")
+public class BatchItemStatusDTO {
+
+    @Schema(description = "Position of the item in the uploaded list")
+    private int index;
+
+    @Schema(description = "User id of the item")
+    private String userId;
+
+    @Schema(description = "Whether the item was accepted or rejected")
+    private Status status;
+
+    @Schema(description = "Reason the item was rejected, null if accepted")
+    private String message;
+
+    public BatchItemStatusDTO() {
+    }
+
+    public BatchItemStatusDTO(int index, String userId, Status status, String message) {
+        this.index = index;
+        this.userId = userId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static BatchItemStatusDTO accepted(int index, String userId) {
+        return new BatchItemStatusDTO(index, userId, Status.ACCEPTED, null);
+    }
+
+    public static BatchItemStatusDTO rejected(int index, String userId, String message) {
+        return new BatchItemStatusDTO(index, userId, Status.REJECTED, message);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchItemStatusDTO{" +
+                "index=" + index +
+                ", userId='" + userId + '\'' +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                '}';
+    }
+
+    public enum Status {
+        ACCEPTED,
+        REJECTED
+    }
+}
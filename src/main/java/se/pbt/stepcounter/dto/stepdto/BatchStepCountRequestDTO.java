@@ -0,0 +1,62 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Used to request the step count of one week or one month for multiple users")
+public class BatchStepCountRequestDTO {
+
+    @Schema(description = "IDs of the users", required = true)
+    private List<String> userIds;
+
+    @Schema(description = "The year of the week or month", required = true)
+    private int year;
+
+    @Schema(description = "The week to count, if no month is given")
+    private Integer week;
+
+    @Schema(description = "The month to count, if no week is given")
+    private Integer month;
+
+    public BatchStepCountRequestDTO() {}
+
+    public BatchStepCountRequestDTO(List<String> userIds, int year, Integer week, Integer month) {
+        this.userIds = userIds;
+        this.year = year;
+        this.week = week;
+        this.month = month;
+    }
+
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    public void setUserIds(List<String> userIds) {
+        this.userIds = userIds;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public void setYear(int year) {
+        this.year = year;
+    }
+
+    public Integer getWeek() {
+        return week;
+    }
+
+    public void setWeek(Integer week) {
+        this.week = week;
+    }
+
+    public Integer getMonth() {
+        return month;
+    }
+
+    public void setMonth(Integer month) {
+        this.month = month;
+    }
+}
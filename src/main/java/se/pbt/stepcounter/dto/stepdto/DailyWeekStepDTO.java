@@ -1,12 +1,18 @@
 package se.pbt.stepcounter.dto.stepdto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
-import java.util.List;
+import java.time.DayOfWeek;
 
+/**
+ * The step counts are held in one array indexed by day of the week, from Monday, and written to JSON by
+ * {@link DailyWeekStepDTOSerializer} as one field per day.
+ */
 @Schema(description = "Step stepCount per day for specific week")
+@JsonSerialize(using = DailyWeekStepDTOSerializer.class)
 public class DailyWeekStepDTO {
 
     @Schema(description = "User id")
@@ -14,40 +20,16 @@ public class DailyWeekStepDTO {
 
     @Schema(description = "Number of the week")
     @Min(value = 1, message = "Week number cant be lower than 1")
-    @Max(value = 52, message = "Week number cant be greater than 52")
+    @Max(value = 53, message = "Week number cant be greater than 53")
     private int weekNumber;
 
-    @Schema(description = "Total number of steps taken on monday")
-    private int mondayStepCount;
+    @Schema(description = "Total number of steps taken on each day, from monday to sunday")
+    private final int[] stepCountPerDay;
 
-    @Schema(description = "Total number of steps taken on tuesday")
-    private int tuesdayStepCount;
-
-    @Schema(description = "Total number of steps taken on wednesday")
-    private int wednesdayStepCount;
-
-    @Schema(description = "Total number of steps taken on thursday")
-    private int thursdayStepCount;
-
-    @Schema(description = "Total number of steps taken on friday")
-    private int fridayStepCount;
-
-    @Schema(description = "Total number of steps taken on saturday")
-    private int saturdayStepCount;
-
-    @Schema(description = "Total number of steps taken on sunday")
-    private int sundayStepCount;
-
-    public DailyWeekStepDTO(String userId, int weekNumber, List<Integer> stepCountPerDay) {
+    public DailyWeekStepDTO(String userId, int weekNumber, int[] stepCountPerDay) {
         this.userId = userId;
         this.weekNumber = weekNumber;
-        this.mondayStepCount = stepCountPerDay.get(0);
-        this.tuesdayStepCount = stepCountPerDay.get(1);
-        this.wednesdayStepCount = stepCountPerDay.get(2);
-        this.thursdayStepCount = stepCountPerDay.get(3);
-        this.fridayStepCount = stepCountPerDay.get(4);
-        this.saturdayStepCount = stepCountPerDay.get(5);
-        this.sundayStepCount = stepCountPerDay.get(6);
+        this.stepCountPerDay = stepCountPerDay;
     }
 
     public String getUserId() {
@@ -66,73 +48,81 @@ public void setWeekNumber(int weekNumber) {
         this.weekNumber = weekNumber;
     }
 
+    /**
+     * @param dayOfWeek the day of the week
+     * @return the total number of steps taken on the day
+     */
+    public int getStepCount(DayOfWeek dayOfWeek) {
+        return stepCountPerDay[dayOfWeek.ordinal()];
+    }
+
     public int getMondayStepCount() {
-        return mondayStepCount;
+        return getStepCount(DayOfWeek.MONDAY);
     }
 
     public void setMondayStepCount(int mondayStepCount) {
-        this.mondayStepCount = mondayStepCount;
+        stepCountPerDay[DayOfWeek.MONDAY.ordinal()] = mondayStepCount;
     }
 
     public int getTuesdayStepCount() {
-        return tuesdayStepCount;
+        return getStepCount(DayOfWeek.TUESDAY);
     }
 
     public void setTuesdayStepCount(int tuesdayStepCount) {
-        this.tuesdayStepCount = tuesdayStepCount;
+        stepCountPerDay[DayOfWeek.TUESDAY.ordinal()] = tuesdayStepCount;
     }
 
     public int getWednesdayStepCount() {
-        return wednesdayStepCount;
+        return getStepCount(DayOfWeek.WEDNESDAY);
     }
 
     public void setWednesdayStepCount(int wednesdayStepCount) {
-        this.wednesdayStepCount = wednesdayStepCount;
+        stepCountPerDay[DayOfWeek.WEDNESDAY.ordinal()] = wednesdayStepCount;
     }
 
     public int getThursdayStepCount() {
-        return thursdayStepCount;
+        return getStepCount(DayOfWeek.THURSDAY);
     }
 
     public void setThursdayStepCount(int thursdayStepCount) {
-        this.thursdayStepCount = thursdayStepCount;
+        stepCountPerDay[DayOfWeek.THURSDAY.ordinal()] = thursdayStepCount;
     }
 
     public int getFridayStepCount() {
-        return fridayStepCount;
+        return getStepCount(DayOfWeek.FRIDAY);
     }
 
     public void setFridayStepCount(int fridayStepCount) {
-        this.fridayStepCount = fridayStepCount;
+        stepCountPerDay[DayOfWeek.FRIDAY.ordinal()] = fridayStepCount;
     }
 
     public int getSaturdayStepCount() {
-        return saturdayStepCount;
+        return getStepCount(DayOfWeek.SATURDAY);
     }
 
     public void setSaturdayStepCount(int saturdayStepCount) {
-        this.saturdayStepCount = saturdayStepCount;
+        stepCountPerDay[DayOfWeek.SATURDAY.ordinal()] = saturdayStepCount;
     }
 
     public int getSundayStepCount() {
-        return sundayStepCount;
+        return getStepCount(DayOfWeek.SUNDAY);
     }
 
     public void setSundayStepCount(int sundayStepCount) {
-        this.sundayStepCount = sundayStepCount;
+        stepCountPerDay[DayOfWeek.SUNDAY.ordinal()] = sundayStepCount;
     }
 
     @Override
     public String toString() {
         return "WeekStepDTO{" +
                 "userId='" + userId + '\'' +
-                ", mondayStepCount=" + mondayStepCount +
-                ", tuesdayStepCount=" + tuesdayStepCount +
-                ", wednesdayStepCount=" + wednesdayStepCount +
-                ", thursdayStepCount=" + thursdayStepCount +
-                ", fridayStepCount=" + fridayStepCount +
-                ", saturdayStepCount=" + saturdayStepCount +
-                ", sundayStepCount=" + sundayStepCount +
+                ", mondayStepCount=" + getMondayStepCount() +
+                ", tuesdayStepCount=" + getTuesdayStepCount() +
+                ", wednesdayStepCount=" + getWednesdayStepCount() +
+                ", thursdayStepCount=" + getThursdayStepCount() +
+                ", fridayStepCount=" + getFridayStepCount() +
+                ", saturdayStepCount=" + getSaturdayStepCount() +
+                ", sundayStepCount=" + getSundayStepCount() +
                 '}';
     }
 }
@@ -0,0 +1,45 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+
+/**
+ * Writes a {@link DailyWeekStepDTO} with one field per day, read straight from its array of step counts.
+ * The field names are encoded once, when the class is loaded.
+ */
+public class DailyWeekStepDTOSerializer extends StdSerializer<DailyWeekStepDTO> {
+
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString WEEK_NUMBER = new SerializedString("weekNumber");
+    private static final SerializedString[] DAY_FIELDS = {
+            new SerializedString("mondayStepCount"),
+            new SerializedString("tuesdayStepCount"),
+            new SerializedString("wednesdayStepCount"),
+            new SerializedString("thursdayStepCount"),
+            new SerializedString("fridayStepCount"),
+            new SerializedString("saturdayStepCount"),
+            new SerializedString("sundayStepCount")};
+
+    public DailyWeekStepDTOSerializer() {
+        super(DailyWeekStepDTO.class);
+    }
+
+    @Override
+    public void serialize(DailyWeekStepDTO dailyWeekStepDTO, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(USER_ID);
+        generator.writeString(dailyWeekStepDTO.getUserId());
+        generator.writeFieldName(WEEK_NUMBER);
+        generator.writeNumber(dailyWeekStepDTO.getWeekNumber());
+        for (int day = 0; day < DAY_FIELDS.length; day++) {
+            generator.writeFieldName(DAY_FIELDS[day]);
+            generator.writeNumber(dailyWeekStepDTO.getStepCount(DayOfWeek.of(day + 1)));
+        }
+        generator.writeEndObject();
+    }
+}
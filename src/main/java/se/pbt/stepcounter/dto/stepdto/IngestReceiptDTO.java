@@ -0,0 +1,78 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Receipt for step data that was queued for asynchronous processing")
+public class IngestReceiptDTO {
+
+    @Schema(description = "Id used to look up the processing status of the upload")
+    private String receiptId;
+
+    @Schema(description = "User id of the upload")
+    private String userId;
+
+    @Schema(description = "Processing status of the upload")
+    private Status status;
+
+    @Schema(description = "Reason the upload failed, null unless failed")
+    private String message;
+
+    public IngestReceiptDTO() {
+    }
+
+    public IngestReceiptDTO(String receiptId, String userId, Status status, String message) {
+        this.receiptId = receiptId;
+        this.userId = userId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getReceiptId() {
+        return receiptId;
+    }
+
+    public void setReceiptId(String receiptId) {
+        this.receiptId = receiptId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestReceiptDTO{" +
+                "receiptId='" + receiptId + '\'' +
+                ", userId='" + userId + '\'' +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                '}';
+    }
+
+    public enum Status {
+        QUEUED,
+        PROCESSING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -0,0 +1,100 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Outcome of a newline-delimited bulk upload")
+public class NdjsonImportSummaryDTO {
+
+    @Schema(description = "Number of lines that were stored")
+    private int acceptedCount;
+
+    @Schema(description = "Number of lines that were rejected")
+    private int rejectedCount;
+
+    @Schema(description = "The rejected lines, where index is the line number starting at 1. Only the first rejected lines are listed if there are many")
+    private List<BatchItemStatusDTO> rejectedLines;
+
+    @Schema(description = "Number of the last line whose outcome is final. An upload that stopped on a failure can be resumed from the line after it")
+    private int lastCommittedLine;
+
+    @Schema(description = "The reason the upload stopped before its end, or null if all lines were processed")
+    private String failureMessage;
+
+    @Schema(description = "Time spent processing the upload, in milliseconds")
+    private long elapsedMillis;
+
+    public NdjsonImportSummaryDTO() {
+    }
+
+    public NdjsonImportSummaryDTO(int acceptedCount, int rejectedCount, List<BatchItemStatusDTO> rejectedLines,
+                                  int lastCommittedLine, String failureMessage, long elapsedMillis) {
+        this.acceptedCount = acceptedCount;
+        this.rejectedCount = rejectedCount;
+        this.rejectedLines = rejectedLines;
+        this.lastCommittedLine = lastCommittedLine;
+        this.failureMessage = failureMessage;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public void setAcceptedCount(int acceptedCount) {
+        this.acceptedCount = acceptedCount;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public void setRejectedCount(int rejectedCount) {
+        this.rejectedCount = rejectedCount;
+    }
+
+    public List<BatchItemStatusDTO> getRejectedLines() {
+        return rejectedLines;
+    }
+
+    public void setRejectedLines(List<BatchItemStatusDTO> rejectedLines) {
+        this.rejectedLines = rejectedLines;
+    }
+
+    public int getLastCommittedLine() {
+        return lastCommittedLine;
+    }
+
+    public void setLastCommittedLine(int lastCommittedLine) {
+        this.lastCommittedLine = lastCommittedLine;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public void setFailureMessage(String failureMessage) {
+        this.failureMessage = failureMessage;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "NdjsonImportSummaryDTO{" +
+                "acceptedCount=" + acceptedCount +
+                ", rejectedCount=" + rejectedCount +
+                ", rejectedLines=" + rejectedLines +
+                ", lastCommittedLine=" + lastCommittedLine +
+                ", failureMessage='" + failureMessage + '\'' +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
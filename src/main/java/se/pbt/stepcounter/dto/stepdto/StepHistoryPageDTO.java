@@ -0,0 +1,37 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import se.pbt.stepcounter.model.Step;
+
+import java.util.List;
+
+@Schema(description = "DTO class that holds one page of the stored steps of a user, newest first")
+public class StepHistoryPageDTO {
+
+    @Schema(description = "ID of the user", required = true)
+    private final String userId;
+
+    @Schema(description = "The steps of the page, ordered by start time and ID, newest first", required = true)
+    private final List<Step> steps;
+
+    @Schema(description = "Cursor to pass as 'after' to read the next page, or null if this is the last page")
+    private final String nextCursor;
+
+    public StepHistoryPageDTO(String userId, List<Step> steps, String nextCursor) {
+        this.userId = userId;
+        this.steps = steps;
+        this.nextCursor = nextCursor;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
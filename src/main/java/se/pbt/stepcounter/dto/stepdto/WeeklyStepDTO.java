@@ -1,24 +1,31 @@
 package se.pbt.stepcounter.dto.stepdto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 
-import javax.validation.constraints.NotNull;
-import javax.validation.constraints.Size;
-import java.util.ArrayList;
-
+/**
+ * The step counts are held in an array indexed by week number, so slot 0 is always 0 and weeks 1 to 53 have a slot
+ * each. Slot 53 is only filled with ISO weeks, since aligned weeks count the last days of a year to week 52 and end
+ * there. The array is written to JSON as it is by {@link WeeklyStepDTOSerializer}.
+ */
 @Schema(description = "DTO class that holds weekly step data")
+@JsonSerialize(using = WeeklyStepDTOSerializer.class)
 public class WeeklyStepDTO {
+
+    /**
+     * The number of slots in the weekly step counts, one per week of an ISO year with 53 weeks and the unused slot 0
+     */
+    public static final int WEEK_SLOTS = 54;
+
     @Schema(description = "ID of the user", required = true)
     private final String userId;
 
-    @Schema(description = "Weekly step counts", required = true)
-    @NotNull(message = "The 'weeklySteps' array must not be null")
-    @Size(min = 52, max = 52, message = "The 'weeklySteps' array must have exactly 52 slots")
-    private final ArrayList<Integer> weeklySteps;
+    @Schema(description = "Weekly step counts, indexed by week number. Slot 53 is only used with ISO weeks", required = true)
+    private final int[] weeklySteps;
 
     public WeeklyStepDTO(
             @Schema(description = "User ID", required = true) String userId,
-            @Schema(description = "Weekly step counts", required = true) ArrayList<Integer> weeklySteps) {
+            @Schema(description = "Weekly step counts, indexed by week number", required = true) int[] weeklySteps) {
         this.userId = userId;
         this.weeklySteps = weeklySteps;
     }
@@ -27,8 +34,7 @@ public String getUserId() {
         return userId;
     }
 
-    public ArrayList<Integer> getWeeklySteps() {
+    public int[] getWeeklySteps() {
         return weeklySteps;
     }
 }
-
@@ -0,0 +1,33 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link WeeklyStepDTO} with its weekly step counts written straight from the array, without boxing them.
+ * The field names are encoded once, when the class is loaded.
+ */
+public class WeeklyStepDTOSerializer extends StdSerializer<WeeklyStepDTO> {
+
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString WEEKLY_STEPS = new SerializedString("weeklySteps");
+
+    public WeeklyStepDTOSerializer() {
+        super(WeeklyStepDTO.class);
+    }
+
+    @Override
+    public void serialize(WeeklyStepDTO weeklyStepDTO, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        var weeklySteps = weeklyStepDTO.getWeeklySteps();
+        generator.writeStartObject();
+        generator.writeFieldName(USER_ID);
+        generator.writeString(weeklyStepDTO.getUserId());
+        generator.writeFieldName(WEEKLY_STEPS);
+        generator.writeArray(weeklySteps, 0, weeklySteps.length);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,110 @@
+package se.pbt.stepcounter.dto.stepdto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "DTO class that holds the weekly and monthly step counts of a year, with its total and best periods")
+public class YearlyStepSummaryDTO {
+
+    @Schema(description = "ID of the user", required = true)
+    private final String userId;
+
+    @Schema(description = "The year of the summary", required = true)
+    private final int year;
+
+    @Schema(description = "Step count of each week, indexed by week number, so slot 0 is always 0", required = true)
+    private final int[] weeklySteps;
+
+    @Schema(description = "Step count of each month, where index 0 holds January", required = true)
+    private final int[] monthlySteps;
+
+    @Schema(description = "Total step count of the year", required = true)
+    private final long yearlyStepCount;
+
+    @Schema(description = "Number of the week with the most steps, or 0 if the year has no steps")
+    private final int bestWeek;
+
+    @Schema(description = "Step count of the best week")
+    private final int bestWeekStepCount;
+
+    @Schema(description = "Number of the month with the most steps, or 0 if the year has no steps")
+    private final int bestMonth;
+
+    @Schema(description = "Step count of the best month")
+    private final int bestMonthStepCount;
+
+    /**
+     * Creates a summary from the step counts of the weeks and months of a year. The total is the sum of the months,
+     * since weeks at the start and end of a year can hold days of the neighbouring years. The earliest period wins a
+     * tie for best week or month.
+     *
+     * @param userId the ID of the user
+     * @param year the year of the summary
+     * @param weeklySteps the step count of each week, indexed by week number as in {@link WeeklyStepDTO}
+     * @param monthlySteps the step count of each month, where index 0 holds January
+     */
+    public YearlyStepSummaryDTO(String userId, int year, int[] weeklySteps, int[] monthlySteps) {
+        this.userId = userId;
+        this.year = year;
+        this.weeklySteps = weeklySteps;
+        this.monthlySteps = monthlySteps;
+        var bestWeekIndex = indexOfMax(weeklySteps);
+        var bestMonthIndex = indexOfMax(monthlySteps);
+        this.bestWeek = Math.max(bestWeekIndex, 0);
+        this.bestWeekStepCount = bestWeekIndex < 0 ? 0 : weeklySteps[bestWeekIndex];
+        this.bestMonth = bestMonthIndex + 1;
+        this.bestMonthStepCount = bestMonthIndex < 0 ? 0 : monthlySteps[bestMonthIndex];
+        long total = 0;
+        for (int stepCount : monthlySteps) {
+            total += stepCount;
+        }
+        this.yearlyStepCount = total;
+    }
+
+    private static int indexOfMax(int[] stepCounts) {
+        var maxIndex = -1;
+        var max = 0;
+        for (int index = 0; index < stepCounts.length; index++) {
+            if (stepCounts[index] > max) {
+                max = stepCounts[index];
+                maxIndex = index;
+            }
+        }
+        return maxIndex;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int[] getWeeklySteps() {
+        return weeklySteps;
+    }
+
+    public int[] getMonthlySteps() {
+        return monthlySteps;
+    }
+
+    public long getYearlyStepCount() {
+        return yearlyStepCount;
+    }
+
+    public int getBestWeek() {
+        return bestWeek;
+    }
+
+    public int getBestWeekStepCount() {
+        return bestWeekStepCount;
+    }
+
+    public int getBestMonth() {
+        return bestMonth;
+    }
+
+    public int getBestMonthStepCount() {
+        return bestMonthStepCount;
+    }
+}
@@ -0,0 +1,31 @@
+package se.pbt.stepcounter.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The IngestQueueFullException is thrown when step data can not be queued for asynchronous processing because the
+ * queue is full. The client should retry after the given number of seconds.
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class IngestQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public IngestQueueFullException(long retryAfterSeconds) {
+        this("Ingest queue is full, retry later", retryAfterSeconds);
+    }
+
+    public IngestQueueFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return HttpStatus.SERVICE_UNAVAILABLE;
+    }
+}
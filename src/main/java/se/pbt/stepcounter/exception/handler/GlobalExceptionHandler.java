@@ -1,11 +1,13 @@
 package se.pbt.stepcounter.exception.handler;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
+import se.pbt.stepcounter.exception.IngestQueueFullException;
 import se.pbt.stepcounter.exception.InvalidStepDataException;
 import se.pbt.stepcounter.exception.InvalidUserIdException;
 import se.pbt.stepcounter.exception.NotFoundException;
@@ -57,6 +59,17 @@ public ResponseEntity<ErrorResponse<?>> handleUserIdValueException(InvalidUserId
 		);
 	}
 
+	@ExceptionHandler(IngestQueueFullException.class)
+	public ResponseEntity<ErrorResponse<?>> handleIngestQueueFullException(IngestQueueFullException exception) {
+		var errorResponse = new ErrorResponse<>(
+				HttpStatus.SERVICE_UNAVAILABLE.value(),
+				exception.getMessage(),
+				System.currentTimeMillis());
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()))
+				.body(errorResponse);
+	}
+
 	@ExceptionHandler(NullPointerException.class)
 	@ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
 	public ResponseEntity<ErrorResponse<?>> handleNullPointerException(NullPointerException exception) {
@@ -0,0 +1,194 @@
+package se.pbt.stepcounter.mapper;
+
+import se.pbt.stepcounter.builder.StepDTOBuilder;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Decodes the compact binary upload format, one sample at a time. The reader works like a cursor: each call to
+ * {@link #next()} decodes the next sample into primitive fields of the reader, so decoding allocates nothing per
+ * sample.
+ * <p>
+ * The format, where varint is an unsigned LEB128 integer and zigzag a signed integer mapped to a varint:
+ * <pre>
+ * header:  magic 'S' 'C', version 1, zone id length (varint), zone id (UTF-8), sample count (varint)
+ * sample:  start (zigzag, epoch seconds, relative to the start of the previous sample or to 0 for the first),
+ *          end (zigzag, seconds after start), upload (zigzag, seconds after end), step count (varint)
+ * </pre>
+ *
+ * @see BinaryStepWriter
+ */
+public class BinaryStepReader {
+
+    /**
+     * Content type of the binary upload format
+     */
+    public static final String MEDIA_TYPE = "application/x-stepcounter-steps";
+
+    static final int MAGIC_FIRST = 'S';
+    static final int MAGIC_SECOND = 'C';
+    static final int VERSION = 1;
+    private static final int MAX_ZONE_ID_LENGTH = 64;
+
+    private final InputStream inputStream;
+    private final ZoneId zone;
+    private final ZoneDayConverter zoneDayConverter;
+    private final int sampleCount;
+    private int samplesRead;
+
+    private long startEpochSecond;
+    private long endEpochSecond;
+    private long uploadEpochSecond;
+    private int stepCount;
+
+    /**
+     * Creates a reader and decodes the header of the upload.
+     *
+     * @param inputStream the input holding the upload
+     * @throws IOException if the input can not be read
+     * @throws InvalidStepDataException if the header is malformed
+     */
+    public BinaryStepReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream instanceof BufferedInputStream ? inputStream : new BufferedInputStream(inputStream);
+        if (readByte() != MAGIC_FIRST || readByte() != MAGIC_SECOND)
+            throw new InvalidStepDataException("Binary step data must start with 'SC'");
+        var version = readByte();
+        if (version != VERSION)
+            throw new InvalidStepDataException("Unsupported binary step data version: " + version);
+        var zoneIdLength = readVarInt();
+        if (zoneIdLength < 1 || zoneIdLength > MAX_ZONE_ID_LENGTH)
+            throw new InvalidStepDataException("Zone id length must be between 1 and " + MAX_ZONE_ID_LENGTH);
+        var zoneIdBytes = new byte[zoneIdLength];
+        if (this.inputStream.readNBytes(zoneIdBytes, 0, zoneIdLength) != zoneIdLength)
+            throw new InvalidStepDataException("Binary step data ended unexpectedly");
+        try {
+            this.zone = ZoneId.of(new String(zoneIdBytes, StandardCharsets.UTF_8));
+        } catch (DateTimeException exception) {
+            throw new InvalidStepDataException("Unknown zone id in binary step data", exception);
+        }
+        this.zoneDayConverter = new ZoneDayConverter(zone);
+        this.sampleCount = readVarInt();
+    }
+
+    /**
+     * Decodes the next sample.
+     *
+     * @return true if a sample was decoded, false if all samples have been read
+     * @throws IOException if the input can not be read
+     * @throws InvalidStepDataException if the sample is malformed
+     */
+    public boolean next() throws IOException {
+        if (samplesRead == sampleCount)
+            return false;
+        try {
+            startEpochSecond = Math.addExact(startEpochSecond, readZigZag());
+            endEpochSecond = Math.addExact(startEpochSecond, readZigZag());
+            uploadEpochSecond = Math.addExact(endEpochSecond, readZigZag());
+        } catch (ArithmeticException exception) {
+            throw new InvalidStepDataException("Time value out of range in binary step data", exception);
+        }
+        if (!isInstant(startEpochSecond) || !isInstant(endEpochSecond) || !isInstant(uploadEpochSecond))
+            throw new InvalidStepDataException("Time value out of range in binary step data");
+        stepCount = readVarInt();
+        samplesRead++;
+        return true;
+    }
+
+    /**
+     * @return the zone the time fields of all samples belong to
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return the number of samples the upload holds
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getStartEpochSecond() {
+        return startEpochSecond;
+    }
+
+    public long getEndEpochSecond() {
+        return endEpochSecond;
+    }
+
+    public long getUploadEpochSecond() {
+        return uploadEpochSecond;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Calculates the calendar day the current sample starts on in the zone of the upload.
+     *
+     * @return the day, counted in days from 1970-01-01
+     */
+    public long getStartEpochDay() {
+        return zoneDayConverter.toEpochDay(startEpochSecond);
+    }
+
+    /**
+     * Creates a {@link StepDTO} object holding the current sample.
+     *
+     * @param userId the ID of the user the sample belongs to
+     * @return the created {@link StepDTO} object
+     */
+    public StepDTO toStepDTO(String userId) {
+        return new StepDTOBuilder()
+                .withUserId(userId)
+                .withStepCount(stepCount)
+                .withStartTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(startEpochSecond), zone))
+                .withEndTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(endEpochSecond), zone))
+                .withUploadTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(uploadEpochSecond), zone))
+                .build();
+    }
+
+    private static boolean isInstant(long epochSecond) {
+        return epochSecond >= Instant.MIN.getEpochSecond() && epochSecond <= Instant.MAX.getEpochSecond();
+    }
+
+    private int readByte() throws IOException {
+        var value = inputStream.read();
+        if (value < 0)
+            throw new InvalidStepDataException("Binary step data ended unexpectedly");
+        return value;
+    }
+
+    private int readVarInt() throws IOException {
+        var value = readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE)
+            throw new InvalidStepDataException("Value out of range in binary step data");
+        return (int) value;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            var currentByte = readByte();
+            value |= (long) (currentByte & 0x7F) << shift;
+            if ((currentByte & 0x80) == 0)
+                return value;
+        }
+        throw new InvalidStepDataException("Malformed varint in binary step data");
+    }
+
+    private long readZigZag() throws IOException {
+        var value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
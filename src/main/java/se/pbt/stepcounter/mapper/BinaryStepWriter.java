@@ -0,0 +1,60 @@
+package se.pbt.stepcounter.mapper;
+
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Encodes step data in the compact binary upload format read by {@link BinaryStepReader}. Serves as the reference
+ * implementation of the format for clients. Time fields are sent as whole seconds.
+ */
+public final class BinaryStepWriter {
+
+    private BinaryStepWriter() {
+    }
+
+    /**
+     * Encodes a list of {@link StepDTO} objects, in the given order.
+     *
+     * @param zone the zone the receiver should place the samples in
+     * @param stepDTOList the {@link StepDTO} objects to encode
+     * @return the encoded upload
+     */
+    public static byte[] encode(ZoneId zone, List<StepDTO> stepDTOList) {
+        var output = new ByteArrayOutputStream(16 + stepDTOList.size() * 8);
+        output.write(BinaryStepReader.MAGIC_FIRST);
+        output.write(BinaryStepReader.MAGIC_SECOND);
+        output.write(BinaryStepReader.VERSION);
+        var zoneId = zone.getId().getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, zoneId.length);
+        output.write(zoneId, 0, zoneId.length);
+        writeVarLong(output, stepDTOList.size());
+        long previousStart = 0;
+        for (StepDTO stepDTO : stepDTOList) {
+            var start = stepDTO.getStartTime().toEpochSecond();
+            var end = stepDTO.getEndTime().toEpochSecond();
+            var upload = stepDTO.getUploadTime().toEpochSecond();
+            writeZigZag(output, start - previousStart);
+            writeZigZag(output, end - start);
+            writeZigZag(output, upload - end);
+            writeVarLong(output, stepDTO.getStepCount());
+            previousStart = start;
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static void writeZigZag(ByteArrayOutputStream output, long value) {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+}
@@ -0,0 +1,155 @@
+package se.pbt.stepcounter.mapper;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+
+/**
+ * Precomputed calendar buckets of every day from {@link #FIRST_DAY} to {@link #LAST_DAY}, indexed by epoch day.
+ * A lookup gives the year, week, month and day of week of a day packed into one int, so finding the buckets of
+ * step data is an array read instead of date arithmetic, and allocates nothing. The fields are read from the
+ * packed value with the static getters. Days outside the table are calculated when asked for.
+ * <p>
+ * A table follows one {@link WeekDefinition}. With the ISO definition the year of a week can differ from the
+ * calendar year of the day at the turn of the year, which is why the week has a year of its own.
+ */
+public final class CalendarBucketTable {
+
+    /**
+     * The ways a year can be split into weeks
+     */
+    public enum WeekDefinition {
+        /**
+         * Week 1 holds January 1-7, week 2 January 8-14 and so on, with the last one or two days of the year counted
+         * to week 52. This is how weeks have always been counted by {@link DateHelper#getWeek(ZonedDateTime)}.
+         */
+        ALIGNED,
+        /**
+         * ISO-8601 weeks, running Monday to Sunday, where week 1 is the week holding the first Thursday of the year
+         */
+        ISO
+    }
+
+    public static final LocalDate FIRST_DAY = LocalDate.of(1970, 1, 1);
+    public static final LocalDate LAST_DAY = LocalDate.of(2099, 12, 31);
+
+    public static final CalendarBucketTable ALIGNED = new CalendarBucketTable(WeekDefinition.ALIGNED);
+    public static final CalendarBucketTable ISO = new CalendarBucketTable(WeekDefinition.ISO);
+
+    // Layout of a packed bucket, from the lowest bit: day of week (3 bits), month (4 bits), week (6 bits),
+    // year and week year as offsets from BASE_YEAR (9 bits each)
+    private static final int BASE_YEAR = 1900;
+    private static final int MAX_YEAR = BASE_YEAR + 511;
+    private static final int MONTH_SHIFT = 3;
+    private static final int WEEK_SHIFT = 7;
+    private static final int YEAR_SHIFT = 13;
+    private static final int WEEK_YEAR_SHIFT = 22;
+
+    private final WeekDefinition weekDefinition;
+    private final long firstEpochDay;
+    private final int[] buckets;
+
+    private CalendarBucketTable(WeekDefinition weekDefinition) {
+        this.weekDefinition = weekDefinition;
+        this.firstEpochDay = FIRST_DAY.toEpochDay();
+        this.buckets = new int[(int) (LAST_DAY.toEpochDay() - firstEpochDay + 1)];
+        var date = FIRST_DAY;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = calculate(date);
+            date = date.plusDays(1);
+        }
+    }
+
+    /**
+     * Gets the table of a week definition.
+     *
+     * @param weekDefinition the week definition
+     * @return the table following the week definition
+     */
+    public static CalendarBucketTable of(WeekDefinition weekDefinition) {
+        return weekDefinition == WeekDefinition.ISO ? ISO : ALIGNED;
+    }
+
+    public WeekDefinition getWeekDefinition() {
+        return weekDefinition;
+    }
+
+    /**
+     * Looks up the buckets of a day.
+     *
+     * @param epochDay the day, counted in days from 1970-01-01
+     * @return the packed buckets of the day
+     * @throws IllegalArgumentException if the year of the day is outside the years a bucket can hold
+     */
+    public int lookup(long epochDay) {
+        var index = epochDay - firstEpochDay;
+        if (index >= 0 && index < buckets.length)
+            return buckets[(int) index];
+        return calculate(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * Looks up the buckets of the day a time falls on, in the zone of the time.
+     *
+     * @param time the time
+     * @return the packed buckets of the day
+     */
+    public int lookup(ZonedDateTime time) {
+        return lookup(time.toLocalDate().toEpochDay());
+    }
+
+    /**
+     * @return the calendar year of a packed bucket
+     */
+    public static int getYear(int bucket) {
+        return ((bucket >>> YEAR_SHIFT) & 0x1FF) + BASE_YEAR;
+    }
+
+    /**
+     * @return the year the week of a packed bucket belongs to
+     */
+    public static int getWeekYear(int bucket) {
+        return ((bucket >>> WEEK_YEAR_SHIFT) & 0x1FF) + BASE_YEAR;
+    }
+
+    /**
+     * @return the week of a packed bucket, from 1 to 52 for aligned weeks and from 1 to 53 for ISO weeks
+     */
+    public static int getWeek(int bucket) {
+        return (bucket >>> WEEK_SHIFT) & 0x3F;
+    }
+
+    /**
+     * @return the month of a packed bucket, from 1 to 12
+     */
+    public static int getMonth(int bucket) {
+        return (bucket >>> MONTH_SHIFT) & 0xF;
+    }
+
+    /**
+     * @return the day of week of a packed bucket, from 1 (Monday) to 7 (Sunday)
+     */
+    public static int getDayOfWeek(int bucket) {
+        return bucket & 0x7;
+    }
+
+    private int calculate(LocalDate date) {
+        int week;
+        int weekYear;
+        if (weekDefinition == WeekDefinition.ISO) {
+            week = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            weekYear = date.get(IsoFields.WEEK_BASED_YEAR);
+        } else {
+            week = Math.min(date.get(ChronoField.ALIGNED_WEEK_OF_YEAR), 52);
+            weekYear = date.getYear();
+        }
+        if (date.getYear() < BASE_YEAR || weekYear < BASE_YEAR || date.getYear() > MAX_YEAR || weekYear > MAX_YEAR)
+            throw new IllegalArgumentException("Year must be between " + BASE_YEAR + " and " + MAX_YEAR);
+        return (weekYear - BASE_YEAR) << WEEK_YEAR_SHIFT
+                | (date.getYear() - BASE_YEAR) << YEAR_SHIFT
+                | week << WEEK_SHIFT
+                | date.getMonthValue() << MONTH_SHIFT
+                | date.getDayOfWeek().getValue();
+    }
+}
@@ -1,9 +1,7 @@
 package se.pbt.stepcounter.mapper;
 
 import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAdjusters;
 
 /**
@@ -14,7 +12,7 @@ public class DateHelper {
 
     /**
      * Returns the week number of the year in which the input LocalDateTime falls. If the input is null,
-     * the method returns 0.
+     * the method returns 0. Weeks are aligned to January 1st and looked up in the {@link CalendarBucketTable}.
      *
      * @param time a LocalDateTime object representing the date for which to find the week number
      * @return the week number of the year in which the date falls
@@ -23,9 +21,7 @@ public static int getWeek(ZonedDateTime time) {
         if (time == null) {
             return 0;
         }
-        var date = LocalDate.ofYearDay(time.getYear(), time.getDayOfYear());
-        var weekNumber = date.get(ChronoField.ALIGNED_WEEK_OF_YEAR);
-        return Math.min(weekNumber, 52);
+        return CalendarBucketTable.getWeek(CalendarBucketTable.ALIGNED.lookup(time));
     }
 
     /**
@@ -0,0 +1,81 @@
+package se.pbt.stepcounter.mapper;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a JSON array of {@link StepDTO} objects one element at a time with the Jackson streaming parser, so a
+ * request body of any size can be processed without holding all of its elements in memory.
+ * Also reads single {@link StepDTO} objects, such as the lines of a newline-delimited upload.
+ */
+@Component
+public class StepDTOStreamReader {
+
+    private final ObjectReader stepDTOReader;
+
+    /**
+     * Constructor for StepDTOStreamReader class.
+     *
+     * @param objectMapper the {@link ObjectMapper} configured for the application, used to bind each element
+     */
+    public StepDTOStreamReader(final ObjectMapper objectMapper) {
+        this.stepDTOReader = objectMapper.readerFor(StepDTO.class);
+    }
+
+    /**
+     * Creates an iterator that parses the next {@link StepDTO} object from the input each time it is advanced.
+     * Malformed input is reported as an {@link InvalidStepDataException} when the iterator reaches it.
+     *
+     * @param inputStream the input holding a JSON array of {@link StepDTO} objects
+     * @return an iterator over the parsed {@link StepDTO} objects
+     * @throws IOException if the input can not be read
+     */
+    public Iterator<StepDTO> readStepDTOs(InputStream inputStream) throws IOException {
+        MappingIterator<StepDTO> values = stepDTOReader.readValues(inputStream);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return values.hasNextValue();
+                } catch (IOException exception) {
+                    throw new InvalidStepDataException("Malformed step data: " + exception.getMessage(), exception);
+                }
+            }
+
+            @Override
+            public StepDTO next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    return values.nextValue();
+                } catch (IOException exception) {
+                    throw new InvalidStepDataException("Malformed step data: " + exception.getMessage(), exception);
+                }
+            }
+        };
+    }
+
+    /**
+     * Parses a single {@link StepDTO} object from its JSON text.
+     *
+     * @param json the JSON text of the object
+     * @return the parsed {@link StepDTO} object
+     * @throws InvalidStepDataException if the text is not a valid {@link StepDTO} object
+     */
+    public StepDTO readStepDTO(String json) {
+        try {
+            return stepDTOReader.readValue(json);
+        } catch (IOException exception) {
+            throw new InvalidStepDataException("Malformed step data: " + exception.getMessage(), exception);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package se.pbt.stepcounter.mapper;
+
+import se.pbt.stepcounter.model.Step;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * The position in the step history of a user after which the next page starts: the start time and ID of the last
+ * step of the previous page. The history is ordered by start time and ID, newest first, so the next page holds the
+ * steps that sort after this position.
+ * The cursor is handed to clients as an opaque URL-safe string, holding the epoch seconds, nanoseconds and ID.
+ */
+public final class StepHistoryCursor {
+
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Instant startTime;
+    private final long id;
+
+    /**
+     * Constructor for StepHistoryCursor class.
+     *
+     * @param startTime the start time of the last step of the previous page
+     * @param id the ID of the last step of the previous page
+     */
+    public StepHistoryCursor(Instant startTime, long id) {
+        this.startTime = startTime;
+        this.id = id;
+    }
+
+    /**
+     * Creates the cursor pointing past a step.
+     *
+     * @param step the last step of a page
+     * @return the cursor of the page after it
+     */
+    public static StepHistoryCursor after(Step step) {
+        return new StepHistoryCursor(step.getStartTime().toInstant(), step.getId());
+    }
+
+    /**
+     * Reads a cursor from the string handed to a client.
+     *
+     * @param encoded the string made by {@link #encode()}
+     * @return the cursor
+     * @throws IllegalArgumentException if the string is not a cursor
+     */
+    public static StepHistoryCursor decode(String encoded) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid history cursor: " + encoded);
+        }
+        if (bytes.length != ENCODED_BYTES)
+            throw new IllegalArgumentException("Invalid history cursor: " + encoded);
+        var buffer = ByteBuffer.wrap(bytes);
+        var epochSecond = buffer.getLong();
+        var nano = buffer.getInt();
+        if (nano < 0 || nano > 999_999_999)
+            throw new IllegalArgumentException("Invalid history cursor: " + encoded);
+        Instant startTime;
+        try {
+            startTime = Instant.ofEpochSecond(epochSecond, nano);
+        } catch (DateTimeException exception) {
+            throw new IllegalArgumentException("Invalid history cursor: " + encoded);
+        }
+        return new StepHistoryCursor(startTime, buffer.getLong());
+    }
+
+    /**
+     * Writes the cursor as the string handed to clients.
+     *
+     * @return the URL-safe Base64 form of the cursor, without padding
+     */
+    public String encode() {
+        var buffer = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(startTime.getEpochSecond())
+                .putInt(startTime.getNano())
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,73 @@
+package se.pbt.stepcounter.mapper;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+/**
+ * Finds the calendar day an instant falls on in a zone, from its epoch seconds. The offset of the zone is kept
+ * together with the period between the transitions it is valid for, and only looked up again for an instant outside
+ * that period, so converting the instants of step data, which mostly fall close to each other, allocates nothing.
+ * A converter can be shared between threads.
+ */
+public final class ZoneDayConverter {
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private final ZoneId zone;
+    private final ZoneRules zoneRules;
+    private volatile OffsetPeriod offsetPeriod;
+
+    /**
+     * Constructor for ZoneDayConverter class.
+     *
+     * @param zone the zone days are counted in
+     */
+    public ZoneDayConverter(ZoneId zone) {
+        this.zone = zone;
+        this.zoneRules = zone.getRules();
+        this.offsetPeriod = zoneRules.isFixedOffset()
+                ? new OffsetPeriod(zoneRules.getOffset(Instant.EPOCH).getTotalSeconds(), Long.MIN_VALUE, Long.MAX_VALUE)
+                : findOffsetPeriod(0);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Calculates the calendar day an instant falls on in the zone.
+     *
+     * @param epochSecond the instant, in seconds from 1970-01-01T00:00:00Z
+     * @return the day, counted in days from 1970-01-01
+     */
+    public long toEpochDay(long epochSecond) {
+        var period = offsetPeriod;
+        if (epochSecond < period.validFrom || epochSecond >= period.validUntil) {
+            period = findOffsetPeriod(epochSecond);
+            offsetPeriod = period;
+        }
+        return Math.floorDiv(epochSecond + period.offsetSeconds, SECONDS_PER_DAY);
+    }
+
+    private OffsetPeriod findOffsetPeriod(long epochSecond) {
+        var instant = Instant.ofEpochSecond(epochSecond);
+        var previousTransition = zoneRules.previousTransition(instant.plusSeconds(1));
+        var nextTransition = zoneRules.nextTransition(instant);
+        return new OffsetPeriod(zoneRules.getOffset(instant).getTotalSeconds(),
+                previousTransition == null ? Long.MIN_VALUE : previousTransition.toEpochSecond(),
+                nextTransition == null ? Long.MAX_VALUE : nextTransition.toEpochSecond());
+    }
+
+    private static final class OffsetPeriod {
+        private final int offsetSeconds;
+        private final long validFrom;
+        private final long validUntil;
+
+        private OffsetPeriod(int offsetSeconds, long validFrom, long validUntil) {
+            this.offsetSeconds = offsetSeconds;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+    }
+}
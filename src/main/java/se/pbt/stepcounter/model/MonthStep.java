@@ -8,14 +8,16 @@
 
 @Entity
 @DynamicUpdate
-@Table(name = "monthstep")
+@Table(name = "monthstep",
+        uniqueConstraints = @UniqueConstraint(name = "uq_monthstep_user_year_month", columnNames = {"user_id", "year", "month"}))
 public class MonthStep {
 
     /**
      * Entity monthstep table
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "monthstep_seq")
+    @SequenceGenerator(name = "monthstep_seq", sequenceName = "monthstep_seq", allocationSize = 50)
     @Schema(description = "The database generated monthStep ID")
     private long id;
 
@@ -7,7 +7,10 @@
 
 
 @Entity
-@Table(name = "step")
+@Table(name = "step",
+        indexes = {
+                @Index(name = "idx_step_user_start_time", columnList = "user_id, start_time DESC"),
+                @Index(name = "idx_step_user_uploaded", columnList = "user_id, uploaded")})
 @Schema(description = "All details about the step entity. ")
 public class Step {
 
@@ -16,7 +19,8 @@ public class Step {
      */
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "step_seq")
+    @SequenceGenerator(name = "step_seq", sequenceName = "step_seq", allocationSize = 50)
     @Schema(description = "The database generated step ID")
     private long id;
 
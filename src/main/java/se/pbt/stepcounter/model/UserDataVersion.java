@@ -0,0 +1,50 @@
+package se.pbt.stepcounter.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+
+@Entity
+@Table(name = "user_data_version")
+public class UserDataVersion {
+
+    /**
+     * Entity user_data_version table, holding a number that is increased every time step data of a user is written
+     */
+    @Id
+    @Column(name = "user_id")
+    @Schema(description = "User Id")
+    private String userId;
+
+    @Column(name = "version", nullable = false)
+    @Schema(description = "Version of the step data of the user")
+    private long version;
+
+    public UserDataVersion() {
+    }
+
+    public UserDataVersion(String userId, long version) {
+        this.userId = userId;
+        this.version = version;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
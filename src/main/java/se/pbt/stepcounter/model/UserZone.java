@@ -0,0 +1,50 @@
+package se.pbt.stepcounter.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+
+@Entity
+@Table(name = "user_zone")
+public class UserZone {
+
+    /**
+     * Entity user_zone table, holding the time zone the step data of a user is counted to days, weeks and months in
+     */
+    @Id
+    @Column(name = "user_id")
+    @Schema(description = "User Id")
+    private String userId;
+
+    @Column(name = "zone_id", nullable = false)
+    @Schema(description = "Time zone ID, such as Europe/Stockholm")
+    private String zoneId;
+
+    public UserZone() {
+    }
+
+    public UserZone(String userId, String zoneId) {
+        this.userId = userId;
+        this.zoneId = zoneId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getZoneId() {
+        return zoneId;
+    }
+
+    public void setZoneId(String zoneId) {
+        this.zoneId = zoneId;
+    }
+}
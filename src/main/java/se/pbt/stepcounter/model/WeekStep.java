@@ -6,7 +6,8 @@
 
 
 @Entity
-@Table(name = "weekstep")
+@Table(name = "weekstep",
+        uniqueConstraints = @UniqueConstraint(name = "uq_weekstep_user_year_week", columnNames = {"user_id", "year", "week"}))
 public class WeekStep {
 
     /**
@@ -14,7 +15,8 @@ public class WeekStep {
      */
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "weekstep_seq")
+    @SequenceGenerator(name = "weekstep_seq", sequenceName = "weekstep_seq", allocationSize = 50)
     @Schema(description = "The database generated weekStep ID")
     private long id;
 
@@ -0,0 +1,260 @@
+package se.pbt.stepcounter.repository;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Base class for the native upserts and per-period reads used by the week-step and month-step repositories, whose
+ * upserts the user data version and user zone repositories share.
+ * PostgreSQL gets an {@code INSERT ... ON CONFLICT} statement and H2, used in tests, the equivalent {@code MERGE}
+ * statement. The database is resolved when the repository is created. Any other database, such as the SQL Server of
+ * the prod profile, is not sent statements written for another one, but gets a portable fallback through JPA, which
+ * updates the row if it exists and persists a new one otherwise. That fallback is safe only while the writes of a
+ * user are serialized by the per-user lock of a single instance, which holds as long as the write endpoints are only
+ * served by the dev profile.
+ * Both variants depend on the unique (user_id, year, week|month) constraints of the aggregate tables, or the user_id
+ * primary key of the data versions and zones. The aggregates take new IDs from the same pooled sequence as Hibernate.
+ * A single value is used as ID, which is always inside the block of IDs that value reserves, so it can not collide
+ * with IDs handed out by Hibernate. Since each value reserves a whole block, it is only drawn for rows that are
+ * inserted: {@code MERGE} evaluates the ID in its insert branch only, and on PostgreSQL, where {@code ON CONFLICT}
+ * evaluates it for every row, the existing rows are updated by a plain {@code UPDATE} first.
+ * Unlike {@code ON CONFLICT}, {@code MERGE} can fail with a unique constraint violation when two transactions insert
+ * the same new row at the same time. The statements that failed that way are run again, and then find the row.
+ *
+ * @param <T> the aggregate entity carrying the user, period and steps to add, the user ID of a data version or the
+ *            zone of a user
+ */
+abstract class AggregateUpsertSupport<T> {
+
+    private static final String POSTGRESQL = "PostgreSQL";
+    private static final String H2 = "H2";
+    private static final String INTEGRITY_VIOLATION_STATE_CLASS = "23";
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregateUpsertSupport.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private boolean postgres;
+
+    private boolean portable;
+
+    /**
+     * @return the {@code INSERT ... ON CONFLICT} statement used on PostgreSQL
+     */
+    protected abstract String postgresUpsert();
+
+    /**
+     * @return the {@code MERGE} statement used on H2
+     */
+    protected abstract String mergeUpsert();
+
+    /**
+     * @return the {@code UPDATE} statement run on PostgreSQL before {@link #postgresUpsert()}, taking the same
+     *         parameters, or null if the upsert draws no ID and is run alone
+     */
+    protected String postgresUpdate() {
+        return null;
+    }
+
+    /**
+     * Adds the aggregate through JPA on databases without a native upsert: updates the existing row, or persists a
+     * new one if there is none.
+     *
+     * @param entityManager the entity manager of the current transaction
+     * @param aggregate the aggregate whose step count should be added
+     * @return the number of rows written, 1 if the row was written
+     */
+    protected abstract int portableUpsert(EntityManager entityManager, T aggregate);
+
+    /**
+     * Binds user ID, year, period and step count of the aggregate to the upsert statement.
+     *
+     * @param statement the prepared upsert statement
+     * @param aggregate the aggregate holding the values to bind
+     * @throws SQLException if a value can not be bound
+     */
+    protected abstract void bind(PreparedStatement statement, T aggregate) throws SQLException;
+
+    /**
+     * Upserts all aggregates as one JDBC batch on the connection of the current transaction, or one at a time through
+     * {@link #portableUpsert(EntityManager, Object)} on a database without a native upsert.
+     *
+     * @param aggregates the aggregates whose step counts should be added
+     * @return the update counts of the batch
+     */
+    protected int[] upsert(Collection<T> aggregates) {
+        if (aggregates.isEmpty()) {
+            return new int[0];
+        }
+        if (portable)
+            return upsertPortably(aggregates);
+        var postgresDatabase = postgres;
+        var sql = postgresDatabase ? postgresUpsert() : mergeUpsert();
+        var pending = new ArrayList<T>(aggregates);
+        if (postgresDatabase && postgresUpdate() != null)
+            return updateThenUpsert(pending);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement(sql)) {
+                for (T aggregate : pending) {
+                    bind(statement, aggregate);
+                    statement.addBatch();
+                }
+                try {
+                    return statement.executeBatch();
+                } catch (BatchUpdateException exception) {
+                    if (postgresDatabase || !isIntegrityViolation(exception))
+                        throw exception;
+                    return rerunFailedMerges(statement, pending, exception);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds to the existing rows with a batch of updates, and upserts only the aggregates no row was updated for, so
+     * the ID sequence is only drawn from for new rows. A row inserted by a concurrent transaction in between is still
+     * added to by the {@code ON CONFLICT} clause of the upsert.
+     */
+    private int[] updateThenUpsert(List<T> aggregates) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            var result = executeBatch(connection, postgresUpdate(), aggregates);
+            var missingIndexes = new ArrayList<Integer>();
+            var missingAggregates = new ArrayList<T>();
+            for (int index = 0; index < result.length; index++) {
+                if (result[index] == 0) {
+                    missingIndexes.add(index);
+                    missingAggregates.add(aggregates.get(index));
+                }
+            }
+            if (missingAggregates.isEmpty())
+                return result;
+            var insertCounts = executeBatch(connection, postgresUpsert(), missingAggregates);
+            for (int index = 0; index < insertCounts.length; index++)
+                result[missingIndexes.get(index)] = insertCounts[index];
+            return result;
+        });
+    }
+
+    private int[] upsertPortably(Collection<T> aggregates) {
+        var result = new int[aggregates.size()];
+        var index = 0;
+        for (T aggregate : aggregates) {
+            result[index++] = portableUpsert(entityManager, aggregate);
+            // Persisted rows are written at once, so a later aggregate of the same row updates it
+            entityManager.flush();
+        }
+        return result;
+    }
+
+    private int[] executeBatch(Connection connection, String sql, List<T> aggregates) throws SQLException {
+        try (var statement = connection.prepareStatement(sql)) {
+            for (T aggregate : aggregates) {
+                bind(statement, aggregate);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * Reads the step counts of all periods of a user and year into an array, with one statement that the unique
+     * (user_id, year, week|month) constraint serves as an index range scan. Period 1 is held at
+     * {@code firstPeriodIndex} and the following periods after it. Periods outside 1 to {@code periods} are left out.
+     *
+     * @param query the query selecting period and steps, taking user ID and year as parameters
+     * @param userId the ID of the user
+     * @param year the year to read
+     * @param periods the number of periods in a year
+     * @param firstPeriodIndex the index of period 1 in the returned array
+     * @return the step count of each period, 0 for periods without a row
+     */
+    protected int[] readStepCountsPerPeriod(String query, String userId, int year, int periods, int firstPeriodIndex) {
+        var stepCountPerPeriod = new int[firstPeriodIndex + periods];
+        // Pending changes are written first, as Hibernate does before a query of its own
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (var statement = connection.prepareStatement(query)) {
+                statement.setString(1, userId);
+                statement.setInt(2, year);
+                try (var resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        var period = resultSet.getInt(1);
+                        if (period >= 1 && period <= periods)
+                            stepCountPerPeriod[firstPeriodIndex + period - 1] += resultSet.getInt(2);
+                    }
+                }
+            }
+        });
+        return stepCountPerPeriod;
+    }
+
+    /**
+     * Runs the statements of a failed {@code MERGE} batch that did not succeed again, one at a time, while they keep
+     * failing on a row inserted by a concurrent transaction.
+     */
+    private int[] rerunFailedMerges(PreparedStatement statement, List<T> aggregates, BatchUpdateException exception)
+            throws SQLException {
+        var updateCounts = exception.getUpdateCounts();
+        var result = new int[aggregates.size()];
+        for (int index = 0; index < aggregates.size(); index++) {
+            var succeeded = index < updateCounts.length && updateCounts[index] != Statement.EXECUTE_FAILED;
+            result[index] = succeeded ? updateCounts[index] : mergeSingle(statement, aggregates.get(index));
+        }
+        return result;
+    }
+
+    private int mergeSingle(PreparedStatement statement, T aggregate) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            bind(statement, aggregate);
+            try {
+                return statement.executeUpdate();
+            } catch (SQLException exception) {
+                if (attempt >= MAX_MERGE_ATTEMPTS || !isIntegrityViolation(exception))
+                    throw exception;
+            }
+        }
+    }
+
+    private static boolean isIntegrityViolation(SQLException exception) {
+        var sqlState = exception.getSQLState();
+        return sqlState != null && sqlState.startsWith(INTEGRITY_VIOLATION_STATE_CLASS);
+    }
+
+    /**
+     * Resolves whether the database is PostgreSQL, H2 or one that gets the portable fallback, from the product name
+     * the driver reports.
+     *
+     * @throws SQLException if no connection can be opened
+     */
+    @PostConstruct
+    void resolveDatabase() throws SQLException {
+        String productName;
+        try (var connection = dataSource.getConnection()) {
+            productName = connection.getMetaData().getDatabaseProductName();
+        }
+        postgres = POSTGRESQL.equals(productName);
+        portable = !postgres && !H2.equals(productName);
+        if (portable)
+            LOGGER.info("{} uses the portable upserts of {}", getClass().getSimpleName(), productName);
+    }
+}
@@ -3,11 +3,15 @@
 import se.pbt.stepcounter.model.MonthStep;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for interacting with the {@link MonthStep} entity in the database.
@@ -17,7 +21,7 @@
  *
  */
 @Repository
-public interface MonthStepRepository extends JpaRepository<MonthStep, Long> {
+public interface MonthStepRepository extends JpaRepository<MonthStep, Long>, MonthStepRepositoryCustom {
 
     /**
      * Find user by user id, year and month
@@ -46,11 +50,45 @@ public interface MonthStepRepository extends JpaRepository<MonthStep, Long> {
     Optional<Integer> getStepCountByUserIdYearAndMonth(@Param("userId") String userId, @Param("year") int year, @Param("month") int month);
 
 
+    /**
+     * Steps from month-step table of each of the given users for a year and month, in a single query
+     *
+     * @param userIds The user IDs to search for
+     * @param year    Actual year
+     * @param month   Actual month
+     * @return A list of user ID and step count pairs, for the users that have a row for the month
+     */
+    @Query("SELECT m.userId, m.stepCount " +
+            "FROM MonthStep m " +
+            "WHERE m.userId IN :userIds " +
+            "AND m.year = :year " +
+            "AND m.month = :month")
+    List<Object[]> getStepCountsByUserIdsYearAndMonth(@Param("userIds") Collection<String> userIds, @Param("year") int year, @Param("month") int month);
+
     Optional<MonthStep> findTopByUserIdOrderByIdDesc(String userId);
 
     List<MonthStep> findByUserIdAndYear(String userId, int year);
-}
-
-
 
+    /**
+     * Streams all stored MonthStep rows, read from the database in batches of the fetch size instead of all at once.
+     * Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @return A stream of all {@link MonthStep} rows
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT m FROM MonthStep m")
+    Stream<MonthStep> streamAll();
 
+    /**
+     * Streams the stored MonthStep rows of a user, read from the database in batches of the fetch size instead of all
+     * at once. Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @param userId The user ID to search for
+     * @return A stream of the {@link MonthStep} rows of the user
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT m FROM MonthStep m WHERE m.userId = :userId")
+    Stream<MonthStep> streamByUserId(@Param("userId") String userId);
+}
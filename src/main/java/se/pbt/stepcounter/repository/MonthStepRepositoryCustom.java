@@ -0,0 +1,40 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.MonthStep;
+
+import java.util.Collection;
+
+/**
+ * Custom repository methods for the {@link MonthStep} entity that can not be expressed as derived or JPQL queries.
+ */
+public interface MonthStepRepositoryCustom {
+
+    /**
+     * Adds steps to the month-step row of the given user, year and month in a single statement.
+     * The row is created if it does not exist, otherwise the step count is added to the stored value.
+     *
+     * @param userId A user ID
+     * @param year The year of the month
+     * @param month The month to add the steps to
+     * @param stepCount The number of steps to add
+     * @return The number of rows affected
+     */
+    int addStepsToMonth(String userId, int year, int month, int stepCount);
+
+    /**
+     * Adds the step count of each {@link MonthStep} to the matching month-step row, sent as one JDBC batch.
+     * The objects are used as carriers of user ID, year, month and steps to add and are not persisted themselves.
+     *
+     * @param monthSteps The month steps holding the step counts to add
+     */
+    void addStepsToMonths(Collection<MonthStep> monthSteps);
+
+    /**
+     * Reads the step count of every month of a year for the given user with a single query.
+     *
+     * @param userId A user ID
+     * @param year The year to read
+     * @return An array of 12 step counts, where index 0 holds January, and 0 for months without a row
+     */
+    int[] getStepCountPerMonth(String userId, int year);
+}
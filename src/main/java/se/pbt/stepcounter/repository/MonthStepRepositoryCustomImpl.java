@@ -0,0 +1,102 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.MonthStep;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Native upsert and JDBC read implementation of {@link MonthStepRepositoryCustom}.
+ */
+class MonthStepRepositoryCustomImpl extends AggregateUpsertSupport<MonthStep> implements MonthStepRepositoryCustom {
+
+    private static final int MONTHS_PER_YEAR = 12;
+
+    private static final String SELECT_STEPS_PER_MONTH =
+            "SELECT month, steps FROM monthstep WHERE user_id = ? AND year = ?";
+
+    private static final String POSTGRES_UPDATE =
+            "UPDATE monthstep m SET steps = m.steps + s.steps " +
+            "FROM (SELECT CAST(? AS VARCHAR(255)) AS user_id, CAST(? AS INT) AS year, " +
+            "CAST(? AS INT) AS month, CAST(? AS INT) AS steps) s " +
+            "WHERE m.user_id = s.user_id AND m.year = s.year AND m.month = s.month";
+
+    private static final String POSTGRES_UPSERT =
+            "INSERT INTO monthstep (id, user_id, year, month, steps) " +
+            "VALUES (nextval('monthstep_seq'), ?, ?, ?, ?) " +
+            "ON CONFLICT (user_id, year, month) " +
+            "DO UPDATE SET steps = monthstep.steps + EXCLUDED.steps";
+
+    private static final String MERGE_UPSERT =
+            "MERGE INTO monthstep m " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS user_id, CAST(? AS INT) AS year, " +
+            "CAST(? AS INT) AS month, CAST(? AS INT) AS steps) s " +
+            "ON (m.user_id = s.user_id AND m.year = s.year AND m.month = s.month) " +
+            "WHEN MATCHED THEN UPDATE SET steps = m.steps + s.steps " +
+            "WHEN NOT MATCHED THEN INSERT (id, user_id, year, month, steps) " +
+            "VALUES (NEXT VALUE FOR monthstep_seq, s.user_id, s.year, s.month, s.steps)";
+
+    private static final String JPQL_ADD_STEPS =
+            "UPDATE MonthStep m SET m.stepCount = m.stepCount + :steps " +
+            "WHERE m.userId = :userId AND m.year = :year AND m.month = :month";
+
+    @Override
+    @Transactional
+    public int addStepsToMonth(String userId, int year, int month, int stepCount) {
+        return upsert(List.of(new MonthStep(userId, month, year, stepCount)))[0];
+    }
+
+    @Override
+    @Transactional
+    public void addStepsToMonths(Collection<MonthStep> monthSteps) {
+        upsert(monthSteps);
+    }
+
+    @Override
+    @Transactional
+    public int[] getStepCountPerMonth(String userId, int year) {
+        return readStepCountsPerPeriod(SELECT_STEPS_PER_MONTH, userId, year, MONTHS_PER_YEAR, 0);
+    }
+
+    @Override
+    protected String postgresUpdate() {
+        return POSTGRES_UPDATE;
+    }
+
+    @Override
+    protected String postgresUpsert() {
+        return POSTGRES_UPSERT;
+    }
+
+    @Override
+    protected String mergeUpsert() {
+        return MERGE_UPSERT;
+    }
+
+    @Override
+    protected int portableUpsert(EntityManager entityManager, MonthStep monthStep) {
+        var updated = entityManager.createQuery(JPQL_ADD_STEPS)
+                .setParameter("steps", monthStep.getStepCount())
+                .setParameter("userId", monthStep.getUserId())
+                .setParameter("year", monthStep.getYear())
+                .setParameter("month", monthStep.getMonth())
+                .executeUpdate();
+        if (updated > 0)
+            return updated;
+        entityManager.persist(new MonthStep(monthStep.getUserId(), monthStep.getMonth(), monthStep.getYear(),
+                monthStep.getStepCount()));
+        return 1;
+    }
+
+    @Override
+    protected void bind(PreparedStatement statement, MonthStep monthStep) throws SQLException {
+        statement.setString(1, monthStep.getUserId());
+        statement.setInt(2, monthStep.getYear());
+        statement.setInt(3, monthStep.getMonth());
+        statement.setInt(4, monthStep.getStepCount());
+    }
+}
@@ -2,17 +2,22 @@
 
 import se.pbt.stepcounter.dto.stepdto.StepDateDTO;
 import se.pbt.stepcounter.model.Step;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import javax.transaction.Transactional;
 import java.sql.Timestamp;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for managing {@link Step} entities in the database.
@@ -22,7 +27,7 @@
  *
  */
 @Repository
-public interface StepRepository extends JpaRepository<Step, Long> {
+public interface StepRepository extends JpaRepository<Step, Long>, StepRepositoryCustom {
 
     /**
      * Deletes all data from the step table.
@@ -80,6 +85,94 @@ public interface StepRepository extends JpaRepository<Step, Long> {
     Optional<Integer> getStepCountByUserIdAndDateRange(@Param("userId") String userId, @Param("startTime") ZonedDateTime startTime, @Param("endTime") ZonedDateTime endTime);
 
     Optional<Step> findFirstByUserIdOrderByStartTimeDesc(String userId);
-}
 
+    /**
+     * Retrieves the most recently started step of each of the given users in a single query.
+     * Users without steps are not part of the result.
+     *
+     * @param userIds The user IDs to search for
+     * @return A list with the latest {@link Step} of each user that has stored steps
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    @Query("SELECT s FROM Step s " +
+            "WHERE s.userId IN :userIds " +
+            "AND s.startTime = (SELECT MAX(l.startTime) FROM Step l WHERE l.userId = s.userId)")
+    List<Step> findLatestStepsByUserIds(@Param("userIds") Collection<String> userIds);
+
+    /**
+     * Retrieves the steps of the given users that start within a range of start times, in a single query that the
+     * index on user_id and start_time serves with one range scan per user.
+     *
+     * @param userIds The user IDs to search for
+     * @param from The earliest start time, inclusive
+     * @param to The latest start time, exclusive
+     * @return A list with the steps of the users that start within the range
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    @Query("SELECT s FROM Step s " +
+            "WHERE s.userId IN :userIds " +
+            "AND s.startTime >= :from " +
+            "AND s.startTime < :to")
+    List<Step> findStepsByUserIdsAndStartTimeRange(@Param("userIds") Collection<String> userIds,
+                                                   @Param("from") ZonedDateTime from, @Param("to") ZonedDateTime to);
+
+    /**
+     * Retrieves the first page of the step history of a user, ordered by start time and ID, newest first.
+     * The page size is taken from the given {@link Pageable}, which must ask for the first page so no OFFSET is used.
+     *
+     * @param userId The user ID to search for
+     * @param pageable The page size
+     * @return A list with at most the page size of the users newest steps
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    @Query("SELECT s FROM Step s " +
+            "WHERE s.userId = :userId " +
+            "ORDER BY s.startTime DESC, s.id DESC")
+    List<Step> findStepHistory(@Param("userId") String userId, Pageable pageable);
+
+    /**
+     * Retrieves the page of the step history of a user that follows a given step, ordered by start time and ID,
+     * newest first. The page starts right after the given position by seeking in the index on user_id and
+     * start_time, so a deep page costs the same as the first one. Only steps sharing a start time are ordered by ID
+     * after being read from the index.
+     * The condition on start time alone is implied by the one after it, and is there so the database can bound the
+     * index range scan with it.
+     *
+     * @param userId The user ID to search for
+     * @param startTime The start time of the last step of the previous page
+     * @param id The ID of the last step of the previous page
+     * @param pageable The page size
+     * @return A list with at most the page size of the users steps that sort after the given position
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+    @Query("SELECT s FROM Step s " +
+            "WHERE s.userId = :userId " +
+            "AND s.startTime <= :startTime " +
+            "AND (s.startTime < :startTime OR s.id < :id) " +
+            "ORDER BY s.startTime DESC, s.id DESC")
+    List<Step> findStepHistoryAfter(@Param("userId") String userId, @Param("startTime") ZonedDateTime startTime,
+                                    @Param("id") long id, Pageable pageable);
 
+    /**
+     * Streams all stored Step rows, read from the database in batches of the fetch size instead of all at once.
+     * Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @return A stream of all {@link Step} rows
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT s FROM Step s")
+    Stream<Step> streamAll();
+
+    /**
+     * Streams the stored Step rows of a user, read from the database in batches of the fetch size instead of all
+     * at once. Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @param userId The user ID to search for
+     * @return A stream of the {@link Step} rows of the user
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT s FROM Step s WHERE s.userId = :userId")
+    Stream<Step> streamByUserId(@Param("userId") String userId);
+}
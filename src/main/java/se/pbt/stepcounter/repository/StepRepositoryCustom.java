@@ -0,0 +1,32 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.Step;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Custom repository methods for writing many {@link Step} entities with JDBC batching, and for aggregations that
+ * are read straight into primitive values.
+ * New steps are inserted with {@link org.springframework.data.repository.CrudRepository#saveAll(Iterable)},
+ * which Hibernate batches since IDs come from a pooled sequence.
+ */
+public interface StepRepositoryCustom {
+
+    /**
+     * Updates step count, end time and upload time of all given, already stored, steps as one JDBC batch.
+     *
+     * @param steps The steps to update, identified by their ID
+     */
+    void updateSteps(Collection<Step> steps);
+
+    /**
+     * Sums the step count of a user per day over a run of consecutive days, in one query that only reads the rows
+     * starting within those days. A step is counted to the day its start time falls in.
+     *
+     * @param userId The user ID to sum the steps of
+     * @param dayBoundaries The start of each day followed by the end of the last day, in ascending order
+     * @return The step count of each day, with one value less than the number of boundaries
+     */
+    int[] sumStepCountPerDay(String userId, Instant[] dayBoundaries);
+}
@@ -0,0 +1,91 @@
+package se.pbt.stepcounter.repository;
+
+import org.hibernate.Session;
+import se.pbt.stepcounter.model.Step;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * JDBC implementation of {@link StepRepositoryCustom}.
+ */
+class StepRepositoryCustomImpl implements StepRepositoryCustom {
+
+    private static final String UPDATE_STEP =
+            "UPDATE step SET step_count = ?, end_time = ?, uploaded = ? WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void updateSteps(Collection<Step> steps) {
+        if (steps.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (var statement = connection.prepareStatement(UPDATE_STEP)) {
+                for (Step step : steps) {
+                    statement.setInt(1, step.getStepCount());
+                    statement.setTimestamp(2, Timestamp.from(step.getEndTime().toInstant()));
+                    statement.setTimestamp(3, Timestamp.from(step.getUploadTime().toInstant()));
+                    statement.setLong(4, step.getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * The days are summed with one conditional SUM per day instead of a GROUP BY on the date, since the days are
+     * those of the users zone and not of the database, and the range condition on user_id and start_time lets the
+     * database use an index instead of reading the whole history of the user.
+     */
+    @Override
+    @Transactional
+    public int[] sumStepCountPerDay(String userId, Instant[] dayBoundaries) {
+        var days = dayBoundaries.length - 1;
+        var stepCountPerDay = new int[days];
+        if (days < 1) {
+            return stepCountPerDay;
+        }
+        // Pending changes are written first, as Hibernate does before a query of its own
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (var statement = connection.prepareStatement(sumStepCountPerDayQuery(days))) {
+                var parameterIndex = 1;
+                for (int day = 0; day < days; day++) {
+                    statement.setTimestamp(parameterIndex++, Timestamp.from(dayBoundaries[day]));
+                    statement.setTimestamp(parameterIndex++, Timestamp.from(dayBoundaries[day + 1]));
+                }
+                statement.setString(parameterIndex++, userId);
+                statement.setTimestamp(parameterIndex++, Timestamp.from(dayBoundaries[0]));
+                statement.setTimestamp(parameterIndex, Timestamp.from(dayBoundaries[days]));
+                try (var resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        for (int day = 0; day < days; day++) {
+                            stepCountPerDay[day] = resultSet.getInt(day + 1);
+                        }
+                    }
+                }
+            }
+        });
+        return stepCountPerDay;
+    }
+
+    static String sumStepCountPerDayQuery(int days) {
+        var query = new StringBuilder("SELECT ");
+        for (int day = 0; day < days; day++) {
+            if (day > 0) {
+                query.append(", ");
+            }
+            query.append("COALESCE(SUM(CASE WHEN start_time >= ? AND start_time < ? THEN step_count END), 0)");
+        }
+        return query.append(" FROM step WHERE user_id = ? AND start_time >= ? AND start_time < ?").toString();
+    }
+}
@@ -0,0 +1,27 @@
+package se.pbt.stepcounter.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import se.pbt.stepcounter.model.UserDataVersion;
+
+import javax.transaction.Transactional;
+
+/**
+ * Repository for interacting with the {@link UserDataVersion} entity in the database.
+ * This class extends {@link JpaRepository}, with the user ID as the primary key.
+ */
+@Repository
+public interface UserDataVersionRepository extends JpaRepository<UserDataVersion, String>, UserDataVersionRepositoryCustom {
+
+    /**
+     * Increases the data version of every user by one.
+     *
+     * @return The number of rows affected
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserDataVersion v SET v.version = v.version + 1")
+    int increaseAllVersions();
+}
@@ -0,0 +1,19 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.UserDataVersion;
+
+import java.util.Collection;
+
+/**
+ * Custom repository methods for the {@link UserDataVersion} entity that can not be expressed as derived or JPQL queries.
+ */
+public interface UserDataVersionRepositoryCustom {
+
+    /**
+     * Increases the data version of each of the given users by one in a single JDBC batch.
+     * The row of a user is created with version 1 if it does not exist.
+     *
+     * @param userIds The IDs of the users
+     */
+    void increaseVersions(Collection<String> userIds);
+}
@@ -0,0 +1,63 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.UserDataVersion;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Native upsert implementation of {@link UserDataVersionRepositoryCustom}.
+ */
+class UserDataVersionRepositoryCustomImpl extends AggregateUpsertSupport<String> implements UserDataVersionRepositoryCustom {
+
+    private static final String POSTGRES_UPSERT =
+            "INSERT INTO user_data_version (user_id, version) " +
+            "VALUES (?, 1) " +
+            "ON CONFLICT (user_id) " +
+            "DO UPDATE SET version = user_data_version.version + 1";
+
+    private static final String MERGE_UPSERT =
+            "MERGE INTO user_data_version v " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS user_id) s " +
+            "ON (v.user_id = s.user_id) " +
+            "WHEN MATCHED THEN UPDATE SET version = v.version + 1 " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, version) VALUES (s.user_id, 1)";
+
+    private static final String JPQL_INCREASE_VERSION =
+            "UPDATE UserDataVersion v SET v.version = v.version + 1 WHERE v.userId = :userId";
+
+    @Override
+    @Transactional
+    public void increaseVersions(Collection<String> userIds) {
+        upsert(userIds);
+    }
+
+    @Override
+    protected String postgresUpsert() {
+        return POSTGRES_UPSERT;
+    }
+
+    @Override
+    protected String mergeUpsert() {
+        return MERGE_UPSERT;
+    }
+
+    @Override
+    protected int portableUpsert(EntityManager entityManager, String userId) {
+        var updated = entityManager.createQuery(JPQL_INCREASE_VERSION)
+                .setParameter("userId", userId)
+                .executeUpdate();
+        if (updated > 0)
+            return updated;
+        entityManager.persist(new UserDataVersion(userId, 1));
+        return 1;
+    }
+
+    @Override
+    protected void bind(PreparedStatement statement, String userId) throws SQLException {
+        statement.setString(1, userId);
+    }
+}
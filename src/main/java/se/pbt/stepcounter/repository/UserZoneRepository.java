@@ -0,0 +1,13 @@
+package se.pbt.stepcounter.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import se.pbt.stepcounter.model.UserZone;
+
+/**
+ * Repository for interacting with the {@link UserZone} entity in the database.
+ * This class extends {@link JpaRepository}, with the user ID as the primary key.
+ */
+@Repository
+public interface UserZoneRepository extends JpaRepository<UserZone, String>, UserZoneRepositoryCustom {
+}
@@ -0,0 +1,17 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.UserZone;
+
+/**
+ * Custom repository methods for the {@link UserZone} entity that can not be expressed as derived or JPQL queries.
+ */
+public interface UserZoneRepositoryCustom {
+
+    /**
+     * Stores the zone of a user unless the user already has one, in a single statement that can not fail when
+     * another transaction stores a zone for the same user at the same time.
+     *
+     * @param userZone The user ID and zone to store
+     */
+    void addIfAbsent(UserZone userZone);
+}
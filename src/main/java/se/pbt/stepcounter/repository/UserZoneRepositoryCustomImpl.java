@@ -0,0 +1,56 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.UserZone;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Native insert-if-absent implementation of {@link UserZoneRepositoryCustom}.
+ */
+class UserZoneRepositoryCustomImpl extends AggregateUpsertSupport<UserZone> implements UserZoneRepositoryCustom {
+
+    private static final String POSTGRES_UPSERT =
+            "INSERT INTO user_zone (user_id, zone_id) " +
+            "VALUES (?, ?) " +
+            "ON CONFLICT (user_id) DO NOTHING";
+
+    private static final String MERGE_UPSERT =
+            "MERGE INTO user_zone z " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS user_id, CAST(? AS VARCHAR(64)) AS zone_id) s " +
+            "ON (z.user_id = s.user_id) " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, zone_id) VALUES (s.user_id, s.zone_id)";
+
+    @Override
+    @Transactional
+    public void addIfAbsent(UserZone userZone) {
+        upsert(List.of(userZone));
+    }
+
+    @Override
+    protected String postgresUpsert() {
+        return POSTGRES_UPSERT;
+    }
+
+    @Override
+    protected String mergeUpsert() {
+        return MERGE_UPSERT;
+    }
+
+    @Override
+    protected int portableUpsert(EntityManager entityManager, UserZone userZone) {
+        if (entityManager.find(UserZone.class, userZone.getUserId()) != null)
+            return 0;
+        entityManager.persist(new UserZone(userZone.getUserId(), userZone.getZoneId()));
+        return 1;
+    }
+
+    @Override
+    protected void bind(PreparedStatement statement, UserZone userZone) throws SQLException {
+        statement.setString(1, userZone.getUserId());
+        statement.setString(2, userZone.getZoneId());
+    }
+}
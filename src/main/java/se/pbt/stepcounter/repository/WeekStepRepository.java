@@ -3,11 +3,15 @@
 import se.pbt.stepcounter.model.WeekStep;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for interacting with the {@link WeekStep} entity in the database.
@@ -17,7 +21,7 @@
  *
  */
 @Repository
-public interface WeekStepRepository extends JpaRepository<WeekStep, Long> {
+public interface WeekStepRepository extends JpaRepository<WeekStep, Long>, WeekStepRepositoryCustom {
 
     /**
      * Retrieve week-step entity with the given user id from the given year and week
@@ -47,5 +51,43 @@ public interface WeekStepRepository extends JpaRepository<WeekStep, Long> {
     Optional<Integer> getStepCountByUserIdYearAndWeek(@Param("userId") String userId, @Param("year") int year, @Param("week") int week);
 
 
+    /**
+     * Retrieve the number of steps taken in the given year and week by each of the given users, in a single query
+     *
+     * @param userIds The user IDs to search for
+     * @param year    The year from which to retrieve the data
+     * @param week    The week from which to retrieve the data
+     * @return        A list of user ID and step count pairs, for the users that have a row for the week
+     */
+    @Query( "SELECT w.userId, w.stepCount " +
+            "FROM WeekStep w " +
+            "WHERE w.userId IN :userIds " +
+            "AND w.year = :year " +
+            "AND w.week = :week")
+    List<Object[]> getStepCountsByUserIdsYearAndWeek(@Param("userIds") Collection<String> userIds, @Param("year") int year, @Param("week") int week);
+
     Optional<WeekStep> findTopByUserIdOrderByIdDesc(String userId);
+
+    /**
+     * Streams all stored WeekStep rows, read from the database in batches of the fetch size instead of all at once.
+     * Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @return A stream of all {@link WeekStep} rows
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT w FROM WeekStep w")
+    Stream<WeekStep> streamAll();
+
+    /**
+     * Streams the stored WeekStep rows of a user, read from the database in batches of the fetch size instead of all
+     * at once. Must be called inside a transaction, and the stream must be closed after use.
+     *
+     * @param userId The user ID to search for
+     * @return A stream of the {@link WeekStep} rows of the user
+     */
+    @QueryHints({@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("SELECT w FROM WeekStep w WHERE w.userId = :userId")
+    Stream<WeekStep> streamByUserId(@Param("userId") String userId);
 }
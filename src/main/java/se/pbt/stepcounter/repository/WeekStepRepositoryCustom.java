@@ -0,0 +1,40 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.WeekStep;
+
+import java.util.Collection;
+
+/**
+ * Custom repository methods for the {@link WeekStep} entity that can not be expressed as derived or JPQL queries.
+ */
+public interface WeekStepRepositoryCustom {
+
+    /**
+     * Adds steps to the week-step row of the given user, year and week in a single statement.
+     * The row is created if it does not exist, otherwise the step count is added to the stored value.
+     *
+     * @param userId A user ID
+     * @param year The year of the week
+     * @param week The week to add the steps to
+     * @param stepCount The number of steps to add
+     * @return The number of rows affected
+     */
+    int addStepsToWeek(String userId, int year, int week, int stepCount);
+
+    /**
+     * Adds the step count of each {@link WeekStep} to the matching week-step row, sent as one JDBC batch.
+     * The objects are used as carriers of user ID, year, week and steps to add and are not persisted themselves.
+     *
+     * @param weekSteps The week steps holding the step counts to add
+     */
+    void addStepsToWeeks(Collection<WeekStep> weekSteps);
+
+    /**
+     * Reads the step count of every week of a year for the given user with a single query.
+     *
+     * @param userId A user ID
+     * @param year The year to read
+     * @return An array of step counts indexed by week number, with the unused slot 0, and 0 for weeks without a row
+     */
+    int[] getStepCountPerWeek(String userId, int year);
+}
@@ -0,0 +1,102 @@
+package se.pbt.stepcounter.repository;
+
+import se.pbt.stepcounter.model.WeekStep;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Native upsert and JDBC read implementation of {@link WeekStepRepositoryCustom}.
+ */
+class WeekStepRepositoryCustomImpl extends AggregateUpsertSupport<WeekStep> implements WeekStepRepositoryCustom {
+
+    private static final int WEEKS_PER_YEAR = 53;
+
+    private static final String SELECT_STEPS_PER_WEEK =
+            "SELECT week, steps FROM weekstep WHERE user_id = ? AND year = ?";
+
+    private static final String POSTGRES_UPDATE =
+            "UPDATE weekstep w SET steps = w.steps + s.steps " +
+            "FROM (SELECT CAST(? AS VARCHAR(255)) AS user_id, CAST(? AS INT) AS year, " +
+            "CAST(? AS INT) AS week, CAST(? AS INT) AS steps) s " +
+            "WHERE w.user_id = s.user_id AND w.year = s.year AND w.week = s.week";
+
+    private static final String POSTGRES_UPSERT =
+            "INSERT INTO weekstep (id, user_id, year, week, steps) " +
+            "VALUES (nextval('weekstep_seq'), ?, ?, ?, ?) " +
+            "ON CONFLICT (user_id, year, week) " +
+            "DO UPDATE SET steps = weekstep.steps + EXCLUDED.steps";
+
+    private static final String MERGE_UPSERT =
+            "MERGE INTO weekstep w " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS user_id, CAST(? AS INT) AS year, " +
+            "CAST(? AS INT) AS week, CAST(? AS INT) AS steps) s " +
+            "ON (w.user_id = s.user_id AND w.year = s.year AND w.week = s.week) " +
+            "WHEN MATCHED THEN UPDATE SET steps = w.steps + s.steps " +
+            "WHEN NOT MATCHED THEN INSERT (id, user_id, year, week, steps) " +
+            "VALUES (NEXT VALUE FOR weekstep_seq, s.user_id, s.year, s.week, s.steps)";
+
+    private static final String JPQL_ADD_STEPS =
+            "UPDATE WeekStep w SET w.stepCount = w.stepCount + :steps " +
+            "WHERE w.userId = :userId AND w.year = :year AND w.week = :week";
+
+    @Override
+    @Transactional
+    public int addStepsToWeek(String userId, int year, int week, int stepCount) {
+        return upsert(List.of(new WeekStep(userId, week, year, stepCount)))[0];
+    }
+
+    @Override
+    @Transactional
+    public void addStepsToWeeks(Collection<WeekStep> weekSteps) {
+        upsert(weekSteps);
+    }
+
+    @Override
+    @Transactional
+    public int[] getStepCountPerWeek(String userId, int year) {
+        return readStepCountsPerPeriod(SELECT_STEPS_PER_WEEK, userId, year, WEEKS_PER_YEAR, 1);
+    }
+
+    @Override
+    protected String postgresUpdate() {
+        return POSTGRES_UPDATE;
+    }
+
+    @Override
+    protected String postgresUpsert() {
+        return POSTGRES_UPSERT;
+    }
+
+    @Override
+    protected String mergeUpsert() {
+        return MERGE_UPSERT;
+    }
+
+    @Override
+    protected int portableUpsert(EntityManager entityManager, WeekStep weekStep) {
+        var updated = entityManager.createQuery(JPQL_ADD_STEPS)
+                .setParameter("steps", weekStep.getStepCount())
+                .setParameter("userId", weekStep.getUserId())
+                .setParameter("year", weekStep.getYear())
+                .setParameter("week", weekStep.getWeek())
+                .executeUpdate();
+        if (updated > 0)
+            return updated;
+        entityManager.persist(new WeekStep(weekStep.getUserId(), weekStep.getWeek(), weekStep.getYear(),
+                weekStep.getStepCount()));
+        return 1;
+    }
+
+    @Override
+    protected void bind(PreparedStatement statement, WeekStep weekStep) throws SQLException {
+        statement.setString(1, weekStep.getUserId());
+        statement.setInt(2, weekStep.getYear());
+        statement.setInt(3, weekStep.getWeek());
+        statement.setInt(4, weekStep.getStepCount());
+    }
+}
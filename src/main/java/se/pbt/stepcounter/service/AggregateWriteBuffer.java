@@ -0,0 +1,429 @@
+package se.pbt.stepcounter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.cache.AggregateStepCache;
+import se.pbt.stepcounter.cache.UserDataVersionRegistry;
+import se.pbt.stepcounter.model.MonthStep;
+import se.pbt.stepcounter.model.WeekStep;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes step count increments to the {@link WeekStep} and {@link MonthStep} tables.
+ * By default every increment is written straight through as an upsert. With write-behind enabled, increments for the
+ * same user and week or month are instead added together in memory and flushed as one batched upsert every
+ * flush interval, as soon as the number of pending rows reaches the configured maximum, and on shutdown.
+ * Reads through this class add the pending increments to the stored value, so a user always sees their own uploads.
+ * Stored values are read through the {@link AggregateStepCache}, and the cached entries of a row are removed whenever
+ * an increment is written to it, straight through or by a flush.
+ */
+@Component
+public class AggregateWriteBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregateWriteBuffer.class);
+
+    private final WeekStepRepository weekStepRepository;
+    private final MonthStepRepository monthStepRepository;
+    private final AggregateStepCache aggregateStepCache;
+    private final UserDataVersionRegistry userDataVersionRegistry;
+    private final boolean writeBehindEnabled;
+    private final int maxPendingEntries;
+
+    private final ConcurrentHashMap<AggregateKey, Integer> pendingWeekSteps = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<AggregateKey, Integer> pendingMonthSteps = new ConcurrentHashMap<>();
+    /**
+     * Held for reading while a stored value and the pending increments are read together, and for writing while a
+     * flush moves increments from memory to the database, so a read never misses or counts an increment twice.
+     */
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /**
+     * Constructor for AggregateWriteBuffer class.
+     *
+     * @param weekStepRepository the repository the week increments are written to
+     * @param monthStepRepository the repository the month increments are written to
+     * @param aggregateStepCache the cache the stored values are read through
+     * @param userDataVersionRegistry the data versions increased for the users whose increments are flushed
+     * @param writeBehindEnabled true to buffer increments in memory, false to write them straight through
+     * @param maxPendingEntries the number of pending rows that triggers a flush before the interval has passed
+     */
+    public AggregateWriteBuffer(final WeekStepRepository weekStepRepository,
+                                final MonthStepRepository monthStepRepository,
+                                final AggregateStepCache aggregateStepCache,
+                                final UserDataVersionRegistry userDataVersionRegistry,
+                                @Value("${stepcounter.aggregate.write-behind.enabled:false}") final boolean writeBehindEnabled,
+                                @Value("${stepcounter.aggregate.write-behind.max-entries:1000}") final int maxPendingEntries) {
+        this.weekStepRepository = weekStepRepository;
+        this.monthStepRepository = monthStepRepository;
+        this.aggregateStepCache = aggregateStepCache;
+        this.userDataVersionRegistry = userDataVersionRegistry;
+        this.writeBehindEnabled = writeBehindEnabled;
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * Adds steps to the week of a user.
+     */
+    public void addStepsToWeek(String userId, int year, int week, int stepCount) {
+        if (writeBehindEnabled)
+            addStepsToWeeks(List.of(new WeekStep(userId, week, year, stepCount)));
+        else {
+            weekStepRepository.addStepsToWeek(userId, year, week, stepCount);
+            aggregateStepCache.invalidateWeek(userId, year, week);
+        }
+    }
+
+    /**
+     * Adds steps to the month of a user.
+     */
+    public void addStepsToMonth(String userId, int year, int month, int stepCount) {
+        if (writeBehindEnabled)
+            addStepsToMonths(List.of(new MonthStep(userId, month, year, stepCount)));
+        else {
+            monthStepRepository.addStepsToMonth(userId, year, month, stepCount);
+            aggregateStepCache.invalidateMonth(userId, year, month);
+        }
+    }
+
+    /**
+     * Adds the step count of each {@link WeekStep} object to the stored week of its user.
+     * When write-behind is enabled and a transaction is active, the increments are buffered once it commits.
+     */
+    public void addStepsToWeeks(Collection<WeekStep> weekSteps) {
+        if (!writeBehindEnabled) {
+            weekStepRepository.addStepsToWeeks(weekSteps);
+            invalidateWeeks(weekSteps);
+            return;
+        }
+        var increments = new ArrayList<WeekStep>(weekSteps);
+        runAfterCommit(() -> {
+            bufferWeekSteps(increments);
+            requestFlushIfFull();
+        });
+    }
+
+    /**
+     * Adds the step count of each {@link MonthStep} object to the stored month of its user.
+     * When write-behind is enabled and a transaction is active, the increments are buffered once it commits.
+     */
+    public void addStepsToMonths(Collection<MonthStep> monthSteps) {
+        if (!writeBehindEnabled) {
+            monthStepRepository.addStepsToMonths(monthSteps);
+            invalidateMonths(monthSteps);
+            return;
+        }
+        var increments = new ArrayList<MonthStep>(monthSteps);
+        runAfterCommit(() -> {
+            bufferMonthSteps(increments);
+            requestFlushIfFull();
+        });
+    }
+
+    /**
+     * Retrieves the step count of a user for a week, including increments that have not been flushed yet.
+     *
+     * @return the stored step count plus pending increments, or 0 if there is neither
+     */
+    public int getStepCountForWeek(String userId, int year, int week) {
+        if (!writeBehindEnabled)
+            return aggregateStepCache.getStepCountForWeek(userId, year, week);
+        flushLock.readLock().lock();
+        try {
+            var storedStepCount = aggregateStepCache.getStepCountForWeek(userId, year, week);
+            return storedStepCount + pendingWeekSteps.getOrDefault(new AggregateKey(userId, year, week), 0);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the step count of a user for a month, including increments that have not been flushed yet.
+     *
+     * @return the stored step count plus pending increments, or 0 if there is neither
+     */
+    public int getStepCountForMonth(String userId, int year, int month) {
+        if (!writeBehindEnabled)
+            return aggregateStepCache.getStepCountForMonth(userId, year, month);
+        flushLock.readLock().lock();
+        try {
+            var storedStepCount = aggregateStepCache.getStepCountForMonth(userId, year, month);
+            return storedStepCount + pendingMonthSteps.getOrDefault(new AggregateKey(userId, year, month), 0);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the step count of every week of a year for a user with one query, including increments that have
+     * not been flushed yet.
+     *
+     * @return an array of step counts indexed by week number, with the unused slot 0
+     */
+    public int[] getStepCountPerWeek(String userId, int year) {
+        if (!writeBehindEnabled)
+            return weekStepRepository.getStepCountPerWeek(userId, year);
+        flushLock.readLock().lock();
+        try {
+            var stepCountPerWeek = weekStepRepository.getStepCountPerWeek(userId, year);
+            addPendingIncrements(pendingWeekSteps, userId, year, stepCountPerWeek, 1);
+            return stepCountPerWeek;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the step count of every month of a year for a user with one query, including increments that have
+     * not been flushed yet.
+     *
+     * @return an array of 12 step counts, where index 0 holds January
+     */
+    public int[] getStepCountPerMonth(String userId, int year) {
+        if (!writeBehindEnabled)
+            return monthStepRepository.getStepCountPerMonth(userId, year);
+        flushLock.readLock().lock();
+        try {
+            var stepCountPerMonth = monthStepRepository.getStepCountPerMonth(userId, year);
+            addPendingIncrements(pendingMonthSteps, userId, year, stepCountPerMonth, 0);
+            return stepCountPerMonth;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the step count of a week for each of the given users with one query, including increments that have
+     * not been flushed yet.
+     *
+     * @return the step count of each user that has stored or pending steps for the week
+     */
+    public Map<String, Integer> getStepCountsForWeek(Collection<String> userIds, int year, int week) {
+        if (!writeBehindEnabled)
+            return toStepCountByUser(weekStepRepository.getStepCountsByUserIdsYearAndWeek(userIds, year, week));
+        flushLock.readLock().lock();
+        try {
+            var stepCountByUser = toStepCountByUser(weekStepRepository.getStepCountsByUserIdsYearAndWeek(userIds, year, week));
+            addPendingIncrements(pendingWeekSteps, userIds, year, week, stepCountByUser);
+            return stepCountByUser;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the step count of a month for each of the given users with one query, including increments that
+     * have not been flushed yet.
+     *
+     * @return the step count of each user that has stored or pending steps for the month
+     */
+    public Map<String, Integer> getStepCountsForMonth(Collection<String> userIds, int year, int month) {
+        if (!writeBehindEnabled)
+            return toStepCountByUser(monthStepRepository.getStepCountsByUserIdsYearAndMonth(userIds, year, month));
+        flushLock.readLock().lock();
+        try {
+            var stepCountByUser = toStepCountByUser(monthStepRepository.getStepCountsByUserIdsYearAndMonth(userIds, year, month));
+            addPendingIncrements(pendingMonthSteps, userIds, year, month, stepCountByUser);
+            return stepCountByUser;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all pending increments to the database as one batched upsert per table.
+     * Runs every flush interval. If the upsert fails, the increments are put back and retried on the next flush.
+     */
+    @Scheduled(fixedDelayString = "${stepcounter.aggregate.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        flushRequested.set(false);
+        if (pendingWeekSteps.isEmpty() && pendingMonthSteps.isEmpty())
+            return;
+        flushLock.writeLock().lock();
+        try {
+            var weekSteps = new ArrayList<WeekStep>();
+            drain(pendingWeekSteps).forEach((key, stepCount) ->
+                    weekSteps.add(new WeekStep(key.userId, key.period, key.year, stepCount)));
+            var monthSteps = new ArrayList<MonthStep>();
+            drain(pendingMonthSteps).forEach((key, stepCount) ->
+                    monthSteps.add(new MonthStep(key.userId, key.period, key.year, stepCount)));
+            writeOrRestore(weekSteps, monthSteps);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the pending increments that are left when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+    }
+
+    private void writeOrRestore(List<WeekStep> weekSteps, List<MonthStep> monthSteps) {
+        var writtenUserIds = new HashSet<String>();
+        try {
+            weekStepRepository.addStepsToWeeks(weekSteps);
+            invalidateWeeks(weekSteps);
+            weekSteps.forEach(weekStep -> writtenUserIds.add(weekStep.getUserId()));
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Could not flush {} week step increments, retrying on next flush", weekSteps.size(), exception);
+            bufferWeekSteps(weekSteps);
+        }
+        try {
+            monthStepRepository.addStepsToMonths(monthSteps);
+            invalidateMonths(monthSteps);
+            monthSteps.forEach(monthStep -> writtenUserIds.add(monthStep.getUserId()));
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Could not flush {} month step increments, retrying on next flush", monthSteps.size(), exception);
+            bufferMonthSteps(monthSteps);
+        }
+        // The lists of weeks and months read the stored rows only, so they change when the increments are written
+        try {
+            userDataVersionRegistry.increaseVersions(writtenUserIds);
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Could not increase the data version of {} users after a flush", writtenUserIds.size(), exception);
+        }
+    }
+
+    /**
+     * Adds the pending increments of a user and year to their periods, where period 1 is held at
+     * {@code firstPeriodIndex}. The pending map is bounded by the flush threshold, so scanning it is cheaper than a
+     * lookup per period.
+     */
+    private static void addPendingIncrements(Map<AggregateKey, Integer> pending, String userId, int year,
+                                             int[] stepCountPerPeriod, int firstPeriodIndex) {
+        pending.forEach((key, stepCount) -> {
+            var index = firstPeriodIndex + key.period - 1;
+            if (key.year == year && key.period >= 1 && index < stepCountPerPeriod.length && key.userId.equals(userId))
+                stepCountPerPeriod[index] += stepCount;
+        });
+    }
+
+    private static Map<String, Integer> toStepCountByUser(List<Object[]> rows) {
+        var stepCountByUser = new HashMap<String, Integer>(rows.size() * 2);
+        for (Object[] row : rows)
+            stepCountByUser.put((String) row[0], (Integer) row[1]);
+        return stepCountByUser;
+    }
+
+    private static void addPendingIncrements(Map<AggregateKey, Integer> pending, Collection<String> userIds, int year,
+                                             int period, Map<String, Integer> stepCountByUser) {
+        if (pending.isEmpty())
+            return;
+        for (String userId : userIds) {
+            var stepCount = pending.get(new AggregateKey(userId, year, period));
+            if (stepCount != null)
+                stepCountByUser.merge(userId, stepCount, Integer::sum);
+        }
+    }
+
+    private void invalidateWeeks(Collection<WeekStep> weekSteps) {
+        weekSteps.forEach(weekStep -> aggregateStepCache.invalidateWeek(weekStep.getUserId(), weekStep.getYear(), weekStep.getWeek()));
+    }
+
+    private void invalidateMonths(Collection<MonthStep> monthSteps) {
+        monthSteps.forEach(monthStep -> aggregateStepCache.invalidateMonth(monthStep.getUserId(), monthStep.getYear(), monthStep.getMonth()));
+    }
+
+    private void bufferWeekSteps(Collection<WeekStep> weekSteps) {
+        weekSteps.forEach(weekStep -> pendingWeekSteps.merge(
+                new AggregateKey(weekStep.getUserId(), weekStep.getYear(), weekStep.getWeek()),
+                weekStep.getStepCount(), Integer::sum));
+    }
+
+    private void bufferMonthSteps(Collection<MonthStep> monthSteps) {
+        monthSteps.forEach(monthStep -> pendingMonthSteps.merge(
+                new AggregateKey(monthStep.getUserId(), monthStep.getYear(), monthStep.getMonth()),
+                monthStep.getStepCount(), Integer::sum));
+    }
+
+    /**
+     * Removes every entry of the map one key at a time, so increments merged in concurrently are either part of the
+     * result or left in the map for the next flush.
+     */
+    private static Map<AggregateKey, Integer> drain(ConcurrentHashMap<AggregateKey, Integer> pending) {
+        var drained = new HashMap<AggregateKey, Integer>();
+        for (AggregateKey key : pending.keySet()) {
+            var stepCount = pending.remove(key);
+            if (stepCount != null)
+                drained.put(key, stepCount);
+        }
+        return drained;
+    }
+
+    private void requestFlushIfFull() {
+        if (pendingWeekSteps.size() + pendingMonthSteps.size() >= maxPendingEntries
+                && flushRequested.compareAndSet(false, true)
+                && !flushExecutor.isShutdown()) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Identifies a week or month row of a user.
+     */
+    private static final class AggregateKey {
+        private final String userId;
+        private final int year;
+        private final int period;
+
+        private AggregateKey(String userId, int year, int period) {
+            this.userId = userId;
+            this.year = year;
+            this.period = period;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof AggregateKey))
+                return false;
+            var key = (AggregateKey) other;
+            return year == key.year && period == key.period && userId.equals(key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, year, period);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package se.pbt.stepcounter.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.pbt.stepcounter.cache.UserZoneRegistry;
+import se.pbt.stepcounter.mapper.CalendarBucketTable;
+import se.pbt.stepcounter.mapper.CalendarBucketTable.WeekDefinition;
+import se.pbt.stepcounter.mapper.ZoneDayConverter;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Finds the year, week and month step data is counted to, using the {@link CalendarBucketTable} of the configured
+ * week definition. The definition defaults to the aligned weeks the stored week totals have always used, and can be
+ * switched to ISO weeks once the stored totals have been migrated.
+ * Step data of a user is counted to the day it falls on in the zone of the user, kept by the {@link UserZoneRegistry},
+ * so data sent with another offset, and reads made on a server in another zone, land in the same buckets.
+ */
+@Component
+public class CalendarBucketService {
+
+    private final CalendarBucketTable calendarBucketTable;
+    private final UserZoneRegistry userZoneRegistry;
+
+    /**
+     * Constructor for CalendarBucketService class.
+     *
+     * @param userZoneRegistry the {@link UserZoneRegistry} holding the zone of each user
+     * @param weekDefinition the definition of the weeks step data is counted to
+     */
+    public CalendarBucketService(final UserZoneRegistry userZoneRegistry,
+                                 @Value("${stepcounter.calendar.week-definition:ALIGNED}") final WeekDefinition weekDefinition) {
+        this.userZoneRegistry = userZoneRegistry;
+        this.calendarBucketTable = CalendarBucketTable.of(weekDefinition);
+    }
+
+    public WeekDefinition getWeekDefinition() {
+        return calendarBucketTable.getWeekDefinition();
+    }
+
+    /**
+     * Looks up the buckets of the day a time falls on, in the zone of the time.
+     * The fields are read with the static getters of {@link CalendarBucketTable}.
+     *
+     * @param time the time
+     * @return the packed buckets of the day
+     */
+    public int bucketOf(ZonedDateTime time) {
+        return calendarBucketTable.lookup(time);
+    }
+
+    /**
+     * Looks up the buckets of the day a time falls on in the zone of a user.
+     *
+     * @param userId the ID of the user
+     * @param time the time
+     * @return the packed buckets of the day
+     */
+    public int bucketOf(String userId, ZonedDateTime time) {
+        return calendarBucketTable.lookup(userZoneRegistry.getZone(userId).toEpochDay(time.toEpochSecond()));
+    }
+
+    /**
+     * Finds the current day in the zone of a user.
+     *
+     * @param userId the ID of the user
+     * @return the day, counted in days from 1970-01-01
+     */
+    public long currentEpochDayOf(String userId) {
+        return userZoneRegistry.getZone(userId).toEpochDay(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Gets the zone step data of a user is counted in.
+     *
+     * @param userId the ID of the user
+     * @return the {@link ZoneDayConverter} of the users zone
+     */
+    public ZoneDayConverter zoneOf(String userId) {
+        return userZoneRegistry.getZone(userId);
+    }
+
+    /**
+     * Gets the zone step data of a user is counted in, making the zone of the uploaded data the users zone if the
+     * user has none yet.
+     *
+     * @param userId the ID of the user
+     * @param uploadZone the zone of the uploaded data
+     * @return the {@link ZoneDayConverter} of the users zone
+     */
+    public ZoneDayConverter registerZone(String userId, ZoneId uploadZone) {
+        return userZoneRegistry.registerIfAbsent(userId, uploadZone);
+    }
+
+    /**
+     * Looks up the buckets of a day.
+     *
+     * @param epochDay the day, counted in days from 1970-01-01
+     * @return the packed buckets of the day
+     */
+    public int bucketOf(long epochDay) {
+        return calendarBucketTable.lookup(epochDay);
+    }
+}
@@ -0,0 +1,142 @@
+package se.pbt.stepcounter.service;
+
+import se.pbt.stepcounter.builder.StepDTOBuilder;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.mapper.ZoneDayConverter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Gathers the samples of an upload into one total per calendar day, so that data covering several days is stored
+ * in the day, week and month each sample belongs to. Only one running total is kept per day, however many samples
+ * are added, and the times are kept as epoch seconds so adding a sample to a day allocates nothing.
+ * Days are counted in the zone of the user, not in the offset each sample happens to carry.
+ */
+class DailyStepAggregator {
+
+    private final ZoneDayConverter zoneDayConverter;
+    private final Map<Long, DayTotal> dayTotals = new TreeMap<>();
+    // Samples mostly arrive in order, so the day of the previous sample is checked before the map
+    private long lastEpochDay;
+    private DayTotal lastDayTotal;
+
+    /**
+     * Constructor for DailyStepAggregator class.
+     *
+     * @param zoneDayConverter the {@link ZoneDayConverter} of the zone of the user
+     */
+    DailyStepAggregator(ZoneDayConverter zoneDayConverter) {
+        this.zoneDayConverter = zoneDayConverter;
+    }
+
+    /**
+     * Adds a sample to the total of the day it starts on.
+     *
+     * @param stepDTO the {@link StepDTO} object holding the sample
+     */
+    void add(StepDTO stepDTO) {
+        var startTime = stepDTO.getStartTime();
+        var endTime = stepDTO.getEndTime();
+        var uploadTime = stepDTO.getUploadTime();
+        dayTotal(zoneDayConverter.toEpochDay(startTime.toEpochSecond())).add(stepDTO.getStepCount(),
+                startTime.toEpochSecond(), startTime.getNano(), startTime.getZone(),
+                endTime.toEpochSecond(), endTime.getNano(), endTime.getZone(),
+                uploadTime.toEpochSecond(), uploadTime.getNano(), uploadTime.getZone());
+    }
+
+    /**
+     * Adds a sample given as epoch seconds to the total of the day it starts on.
+     *
+     * @param epochDay the day the sample starts on in the zone of the user, counted in days from 1970-01-01
+     * @param zone the zone of the time fields
+     * @param stepCount the step count of the sample
+     * @param startEpochSecond the start time of the sample
+     * @param endEpochSecond the end time of the sample
+     * @param uploadEpochSecond the upload time of the sample
+     */
+    void add(long epochDay, ZoneId zone, int stepCount, long startEpochSecond, long endEpochSecond, long uploadEpochSecond) {
+        dayTotal(epochDay).add(stepCount,
+                startEpochSecond, 0, zone,
+                endEpochSecond, 0, zone,
+                uploadEpochSecond, 0, zone);
+    }
+
+    /**
+     * Creates one {@link StepDTO} object per day, with the start time of the earliest sample and the end and upload
+     * time of the latest sample of that day, and the sum of their step counts.
+     *
+     * @param userId the ID of the user the samples belong to
+     * @return the totals of each day, in order of day
+     */
+    List<StepDTO> toStepDTOs(String userId) {
+        var stepDTOList = new ArrayList<StepDTO>(dayTotals.size());
+        for (DayTotal dayTotal : dayTotals.values()) {
+            stepDTOList.add(new StepDTOBuilder()
+                    .withUserId(userId)
+                    .withStepCount(dayTotal.stepCount)
+                    .withStartTime(toZonedDateTime(dayTotal.startEpochSecond, dayTotal.startNano, dayTotal.startZone))
+                    .withEndTime(toZonedDateTime(dayTotal.endEpochSecond, dayTotal.endNano, dayTotal.endZone))
+                    .withUploadTime(toZonedDateTime(dayTotal.uploadEpochSecond, dayTotal.uploadNano, dayTotal.uploadZone))
+                    .build());
+        }
+        return stepDTOList;
+    }
+
+    private DayTotal dayTotal(long epochDay) {
+        if (lastDayTotal == null || lastEpochDay != epochDay) {
+            lastDayTotal = dayTotals.computeIfAbsent(epochDay, day -> new DayTotal());
+            lastEpochDay = epochDay;
+        }
+        return lastDayTotal;
+    }
+
+    private static ZonedDateTime toZonedDateTime(long epochSecond, int nano, ZoneId zone) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), zone);
+    }
+
+    private static class DayTotal {
+        private boolean empty = true;
+        private int stepCount;
+        private long startEpochSecond;
+        private int startNano;
+        private ZoneId startZone;
+        private long endEpochSecond;
+        private int endNano;
+        private ZoneId endZone;
+        private long uploadEpochSecond;
+        private int uploadNano;
+        private ZoneId uploadZone;
+
+        private void add(int stepCount,
+                         long startEpochSecond, int startNano, ZoneId startZone,
+                         long endEpochSecond, int endNano, ZoneId endZone,
+                         long uploadEpochSecond, int uploadNano, ZoneId uploadZone) {
+            this.stepCount += stepCount;
+            if (empty || isBefore(startEpochSecond, startNano, this.startEpochSecond, this.startNano)) {
+                this.startEpochSecond = startEpochSecond;
+                this.startNano = startNano;
+                this.startZone = startZone;
+            }
+            // The upload time follows the sample with the latest end time
+            if (empty || isBefore(this.endEpochSecond, this.endNano, endEpochSecond, endNano)) {
+                this.endEpochSecond = endEpochSecond;
+                this.endNano = endNano;
+                this.endZone = endZone;
+                this.uploadEpochSecond = uploadEpochSecond;
+                this.uploadNano = uploadNano;
+                this.uploadZone = uploadZone;
+            }
+            empty = false;
+        }
+
+        private static boolean isBefore(long epochSecond, int nano, long otherEpochSecond, int otherNano) {
+            return epochSecond < otherEpochSecond || (epochSecond == otherEpochSecond && nano < otherNano);
+        }
+    }
+}
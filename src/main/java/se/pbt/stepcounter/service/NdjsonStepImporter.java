@@ -0,0 +1,175 @@
+package se.pbt.stepcounter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.dto.stepdto.NdjsonImportSummaryDTO;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.mapper.StepDTOStreamReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports newline-delimited step data, one {@link StepDTO} object per line, for any number of users.
+ * The lines are read as a stream and stored in chunks of a fixed size, each chunk in its own transaction through
+ * {@link StepService#addStepsForMultipleUsers(List)}, so memory use does not grow with the size of the upload.
+ * A line that can not be parsed, is longer than the maximum line length or fails validation only rejects itself.
+ * Only the allowed length of a line is held in memory, however long the line is.
+ */
+@Component
+public class NdjsonStepImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdjsonStepImporter.class);
+
+    private final StepService stepService;
+    private final StepDTOStreamReader stepDTOStreamReader;
+    private final int chunkSize;
+    private final int maxReportedRejections;
+    private final int maxLineLength;
+
+    /**
+     * Constructor for NdjsonStepImporter class.
+     *
+     * @param stepService the {@link StepService} used to store the data
+     * @param stepDTOStreamReader the {@link StepDTOStreamReader} used to parse each line
+     * @param chunkSize the number of lines stored in each transaction
+     * @param maxReportedRejections the maximum number of rejected lines listed in the summary
+     * @param maxLineLength the maximum number of characters of a line, not counting the line break
+     */
+    public NdjsonStepImporter(final StepService stepService,
+                              final StepDTOStreamReader stepDTOStreamReader,
+                              @Value("${stepcounter.ingest.ndjson.chunk-size:500}") final int chunkSize,
+                              @Value("${stepcounter.ingest.ndjson.max-reported-rejections:1000}") final int maxReportedRejections,
+                              @Value("${stepcounter.ingest.ndjson.max-line-length:4096}") final int maxLineLength) {
+        this.stepService = stepService;
+        this.stepDTOStreamReader = stepDTOStreamReader;
+        this.chunkSize = chunkSize;
+        this.maxReportedRejections = maxReportedRejections;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Reads and stores all lines of the input. Blank lines are skipped.
+     * If the database fails to store a chunk, the import stops there: the chunks stored before stay stored, and the
+     * summary reports the failure and the last line whose outcome is final, so the upload can be resumed after it.
+     *
+     * @param inputStream the input holding one {@link StepDTO} object per line, encoded in UTF-8
+     * @return a summary of the accepted and rejected lines
+     * @throws IOException if the input can not be read
+     */
+    public NdjsonImportSummaryDTO importSteps(InputStream inputStream) throws IOException {
+        var startTime = System.nanoTime();
+        var summary = new Summary();
+        var chunk = new ArrayList<StepDTO>(chunkSize);
+        var chunkLineNumbers = new int[chunkSize];
+        var reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        var line = new StringBuilder();
+        var lineNumber = 0;
+        int lineLength;
+        while ((lineLength = readLine(reader, line)) != -1) {
+            lineNumber++;
+            if (lineLength > maxLineLength) {
+                summary.reject(lineNumber, null, "Line is longer than " + maxLineLength + " characters");
+                continue;
+            }
+            var text = line.toString();
+            if (text.trim().isEmpty())
+                continue;
+            try {
+                chunkLineNumbers[chunk.size()] = lineNumber;
+                chunk.add(stepDTOStreamReader.readStepDTO(text));
+            } catch (InvalidStepDataException exception) {
+                summary.reject(lineNumber, null, exception.getMessage());
+                continue;
+            }
+            if (chunk.size() == chunkSize) {
+                if (!storeChunk(chunk, chunkLineNumbers, summary))
+                    return summary.toDTO(startTime);
+                summary.lastCommittedLine = lineNumber;
+                chunk.clear();
+            }
+        }
+        if (storeChunk(chunk, chunkLineNumbers, summary))
+            summary.lastCommittedLine = lineNumber;
+        return summary.toDTO(startTime);
+    }
+
+    /**
+     * Reads the next line into the given builder, keeping at most the maximum line length of it. Carriage returns
+     * are left out, so both LF and CRLF line breaks end a line.
+     *
+     * @return the number of characters of the whole line, or -1 at the end of the input
+     */
+    private int readLine(Reader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        var length = 0;
+        int character;
+        while ((character = reader.read()) != -1 && character != '\n') {
+            if (character == '\r')
+                continue;
+            if (length++ < maxLineLength)
+                line.append((char) character);
+        }
+        return character == -1 && length == 0 ? -1 : length;
+    }
+
+    /**
+     * Stores a chunk in its own transaction and counts the outcome of its lines.
+     *
+     * @return true if the chunk was stored, false if the database failed to store it
+     */
+    private boolean storeChunk(List<StepDTO> chunk, int[] chunkLineNumbers, Summary summary) {
+        if (chunk.isEmpty())
+            return true;
+        List<BatchItemStatusDTO> itemStatuses;
+        try {
+            itemStatuses = stepService.addStepsForMultipleUsers(chunk);
+        } catch (DataAccessException | TransactionException exception) {
+            LOGGER.warn("Could not store the chunk of NDJSON lines {} to {}, stopping the import",
+                    chunkLineNumbers[0], chunkLineNumbers[chunk.size() - 1], exception);
+            summary.failureMessage = "Could not store lines " + chunkLineNumbers[0] + " to "
+                    + chunkLineNumbers[chunk.size() - 1] + ": " + exception.getMessage();
+            return false;
+        }
+        for (BatchItemStatusDTO itemStatus : itemStatuses) {
+            if (itemStatus.getStatus() == BatchItemStatusDTO.Status.ACCEPTED)
+                summary.acceptedCount++;
+            else
+                summary.reject(chunkLineNumbers[itemStatus.getIndex()], itemStatus.getUserId(), itemStatus.getMessage());
+        }
+        return true;
+    }
+
+    private class Summary {
+        private int acceptedCount;
+        private int rejectedCount;
+        private final List<BatchItemStatusDTO> rejectedLines = new ArrayList<>();
+        private int lastCommittedLine;
+        private String failureMessage;
+
+        private void reject(int lineNumber, String userId, String message) {
+            rejectedCount++;
+            if (rejectedLines.size() < maxReportedRejections)
+                rejectedLines.add(BatchItemStatusDTO.rejected(lineNumber, userId, message));
+        }
+
+        private NdjsonImportSummaryDTO toDTO(long startTime) {
+            var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            return new NdjsonImportSummaryDTO(acceptedCount, rejectedCount, rejectedLines, lastCommittedLine,
+                    failureMessage, elapsedMillis);
+        }
+    }
+}
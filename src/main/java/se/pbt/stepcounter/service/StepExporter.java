@@ -0,0 +1,239 @@
+package se.pbt.stepcounter.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.pbt.stepcounter.model.MonthStep;
+import se.pbt.stepcounter.model.Step;
+import se.pbt.stepcounter.model.WeekStep;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.StepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the stored step, week-step or month-step rows of one user or of all users, as newline-delimited JSON or
+ * as CSV, optionally gzipped.
+ * The rows are streamed from the database in a read-only transaction, with a fetch size so the driver reads them in
+ * batches, and the persistence context is cleared at a fixed interval, so memory use does not grow with the size of
+ * the export. Each row is written to the output as soon as it is read.
+ */
+@Component
+public class StepExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The tables that can be exported
+     */
+    public enum Table { STEP, WEEK_STEP, MONTH_STEP }
+
+    /**
+     * The formats rows can be written in
+     */
+    public enum Format { NDJSON, CSV }
+
+    private final StepRepository stepRepository;
+    private final WeekStepRepository weekStepRepository;
+    private final MonthStepRepository monthStepRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter objectWriter;
+    private final int clearInterval;
+
+    /**
+     * Constructor for StepExporter class.
+     *
+     * @param stepRepository the {@link StepRepository} step rows are read from
+     * @param weekStepRepository the {@link WeekStepRepository} week-step rows are read from
+     * @param monthStepRepository the {@link MonthStepRepository} month-step rows are read from
+     * @param entityManager the {@link EntityManager} whose persistence context is cleared while exporting
+     * @param transactionManager the {@link PlatformTransactionManager} the read-only transactions are run with
+     * @param objectMapper the {@link ObjectMapper} configured for the application, used to write JSON rows
+     * @param clearInterval the number of rows read between each clear of the persistence context
+     */
+    public StepExporter(final StepRepository stepRepository,
+                        final WeekStepRepository weekStepRepository,
+                        final MonthStepRepository monthStepRepository,
+                        final EntityManager entityManager,
+                        final PlatformTransactionManager transactionManager,
+                        final ObjectMapper objectMapper,
+                        @Value("${stepcounter.export.clear-interval:1000}") final int clearInterval) {
+        this.stepRepository = stepRepository;
+        this.weekStepRepository = weekStepRepository;
+        this.monthStepRepository = monthStepRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.clearInterval = clearInterval;
+    }
+
+    /**
+     * Writes all rows of a table, for one user or for all users, to an output. The output is not closed.
+     *
+     * @param table the table to export
+     * @param userId the ID of the user to export the rows of, or null for the rows of all users
+     * @param format the format to write the rows in
+     * @param gzip whether to gzip the output
+     * @param outputStream the output to write to
+     * @return the number of rows written
+     * @throws IOException if the output can not be written
+     */
+    public long export(Table table, String userId, Format format, boolean gzip, OutputStream outputStream) throws IOException {
+        var gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+        var output = gzip ? gzipOutputStream : outputStream;
+        long rowCount;
+        try {
+            rowCount = transactionTemplate.execute(status -> {
+                try (var rows = openRows(table, userId)) {
+                    return format == Format.NDJSON ? writeNdjson(rows.iterator(), output)
+                            : writeCsv(table, rows.iterator(), output);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        if (gzip)
+            gzipOutputStream.finish();
+        outputStream.flush();
+        return rowCount;
+    }
+
+    private Stream<?> openRows(Table table, String userId) {
+        switch (table) {
+            case STEP:
+                return userId == null ? stepRepository.streamAll() : stepRepository.streamByUserId(userId);
+            case WEEK_STEP:
+                return userId == null ? weekStepRepository.streamAll() : weekStepRepository.streamByUserId(userId);
+            case MONTH_STEP:
+                return userId == null ? monthStepRepository.streamAll() : monthStepRepository.streamByUserId(userId);
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private long writeNdjson(Iterator<?> rows, OutputStream output) throws IOException {
+        long rowCount = 0;
+        try (JsonGenerator generator = objectWriter.getFactory().createGenerator(output)) {
+            // The rows are separated by the newlines written below instead of the default space
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            while (rows.hasNext()) {
+                objectWriter.writeValue(generator, rows.next());
+                generator.writeRaw('\n');
+                clearPeriodically(++rowCount);
+            }
+        }
+        return rowCount;
+    }
+
+    private long writeCsv(Table table, Iterator<?> rows, OutputStream output) throws IOException {
+        long rowCount = 0;
+        var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write(csvHeader(table));
+        writer.write('\n');
+        while (rows.hasNext()) {
+            writeCsvRow(rows.next(), writer);
+            writer.write('\n');
+            clearPeriodically(++rowCount);
+        }
+        writer.flush();
+        return rowCount;
+    }
+
+    private void clearPeriodically(long rowCount) {
+        if (rowCount % clearInterval == 0)
+            entityManager.clear();
+    }
+
+    private static String csvHeader(Table table) {
+        switch (table) {
+            case STEP:
+                return "id,userId,stepCount,startTime,endTime,uploadTime";
+            case WEEK_STEP:
+                return "id,userId,year,week,stepCount";
+            default:
+                return "id,userId,year,month,stepCount";
+        }
+    }
+
+    private static void writeCsvRow(Object row, Writer writer) throws IOException {
+        if (row instanceof Step) {
+            var step = (Step) row;
+            writer.write(Long.toString(step.getId()));
+            writer.write(',');
+            writeCsvText(step.getUserId(), writer);
+            writer.write(',');
+            writer.write(Integer.toString(step.getStepCount()));
+            writer.write(',');
+            writeCsvTime(step.getStartTime(), writer);
+            writer.write(',');
+            writeCsvTime(step.getEndTime(), writer);
+            writer.write(',');
+            writeCsvTime(step.getUploadTime(), writer);
+        } else if (row instanceof WeekStep) {
+            var weekStep = (WeekStep) row;
+            writer.write(Long.toString(weekStep.getId()));
+            writer.write(',');
+            writeCsvText(weekStep.getUserId(), writer);
+            writer.write(',');
+            writer.write(Integer.toString(weekStep.getYear()));
+            writer.write(',');
+            writer.write(Integer.toString(weekStep.getWeek()));
+            writer.write(',');
+            writer.write(Integer.toString(weekStep.getStepCount()));
+        } else {
+            var monthStep = (MonthStep) row;
+            writer.write(Long.toString(monthStep.getId()));
+            writer.write(',');
+            writeCsvText(monthStep.getUserId(), writer);
+            writer.write(',');
+            writer.write(Integer.toString(monthStep.getYear()));
+            writer.write(',');
+            writer.write(Integer.toString(monthStep.getMonth()));
+            writer.write(',');
+            writer.write(Integer.toString(monthStep.getStepCount()));
+        }
+    }
+
+    /**
+     * Writes a text field, quoted with inner quotes doubled if it holds a separator, a quote or a line break.
+     */
+    private static void writeCsvText(String text, Writer writer) throws IOException {
+        if (text == null)
+            return;
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeCsvTime(ZonedDateTime time, Writer writer) throws IOException {
+        if (time != null)
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME.formatTo(time, writer);
+    }
+}
@@ -0,0 +1,156 @@
+package se.pbt.stepcounter.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.pbt.stepcounter.dto.stepdto.IngestReceiptDTO;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.IngestQueueFullException;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue for step data that is stored asynchronously by a dedicated pool of worker threads, so uploads do
+ * not hold a request thread while the database is busy. The data is validated before it is queued, and every queued
+ * upload gets a receipt that can be used to look up its processing status for a limited time.
+ * Publishes the queue depth, the time from queueing to completion and the number of rejected uploads as metrics.
+ */
+@Component
+public class StepIngestQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StepIngestQueue.class);
+
+    private final StepService stepService;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, IngestReceiptDTO> receipts;
+    private final long retryAfterSeconds;
+    private final Timer drainLatency;
+    private final Counter rejectedUploads;
+
+    /**
+     * Constructor for StepIngestQueue class.
+     *
+     * @param stepService the {@link StepService} used to store the queued data
+     * @param meterRegistry the {@link MeterRegistry} the queue metrics are registered with
+     * @param workers the number of threads storing queued data
+     * @param capacity the maximum number of uploads waiting in the queue
+     * @param retryAfterSeconds the number of seconds a client is asked to wait when the queue is full
+     * @param receiptRetentionMinutes the number of minutes a receipt can be looked up after it was last updated
+     * @param receiptMaximumSize the maximum number of receipts kept, after which the least recently used are dropped
+     */
+    public StepIngestQueue(final StepService stepService,
+                           final MeterRegistry meterRegistry,
+                           @Value("${stepcounter.ingest.workers:4}") final int workers,
+                           @Value("${stepcounter.ingest.queue-capacity:1000}") final int capacity,
+                           @Value("${stepcounter.ingest.retry-after-seconds:5}") final long retryAfterSeconds,
+                           @Value("${stepcounter.ingest.receipt-retention-minutes:60}") final long receiptRetentionMinutes,
+                           @Value("${stepcounter.ingest.receipt-maximum-size:100000}") final long receiptMaximumSize) {
+        this.stepService = stepService;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                new ThreadFactoryBuilder().setNameFormat("step-ingest-%d").build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.receipts = CacheBuilder.newBuilder()
+                .expireAfterWrite(receiptRetentionMinutes, TimeUnit.MINUTES)
+                .maximumSize(receiptMaximumSize)
+                .build();
+        Gauge.builder("stepcounter.ingest.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Number of uploads waiting to be stored")
+                .register(meterRegistry);
+        this.drainLatency = Timer.builder("stepcounter.ingest.drain.latency")
+                .description("Time from an upload being queued until it is stored")
+                .register(meterRegistry);
+        this.rejectedUploads = Counter.builder("stepcounter.ingest.rejected")
+                .description("Number of uploads rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Validates a single {@link StepDTO} object, including that it belongs to the user, and queues it to be stored
+     * for the user.
+     *
+     * @param userId the ID of the user
+     * @param stepDTO a {@link StepDTO} object containing the new data
+     * @return a receipt for the queued upload
+     */
+    public IngestReceiptDTO submitSingleStep(String userId, StepDTO stepDTO) {
+        stepService.validateSingleStepData(userId, stepDTO);
+        return enqueue(userId, () -> stepService.addSingleStepForUser(userId, stepDTO));
+    }
+
+    /**
+     * Validates a list of {@link StepDTO} objects and queues them to be stored for the user.
+     *
+     * @param userId the ID of the user
+     * @param stepDTOList a list of {@link StepDTO} objects containing the new data
+     * @return a receipt for the queued upload
+     */
+    public IngestReceiptDTO submitMultipleSteps(String userId, List<StepDTO> stepDTOList) {
+        stepService.validateStepData(userId, stepDTOList);
+        return enqueue(userId, () -> stepService.addMultipleStepsForUser(userId, stepDTOList));
+    }
+
+    /**
+     * Retrieves the processing status of a queued upload.
+     *
+     * @param receiptId the id of the receipt returned when the upload was queued
+     * @return the receipt holding the current status, or an empty Optional if it is unknown or has expired
+     */
+    public Optional<IngestReceiptDTO> getReceipt(String receiptId) {
+        return Optional.ofNullable(receipts.getIfPresent(receiptId));
+    }
+
+    /**
+     * Stops accepting uploads and waits for the queued ones to be stored.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+            LOGGER.warn("Ingest queue shut down with {} uploads left unprocessed", executor.getQueue().size());
+    }
+
+    private IngestReceiptDTO enqueue(String userId, Runnable upload) {
+        var receiptId = UUID.randomUUID().toString();
+        var receipt = new IngestReceiptDTO(receiptId, userId, IngestReceiptDTO.Status.QUEUED, null);
+        receipts.put(receiptId, receipt);
+        var queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> process(receiptId, userId, upload, queuedAt));
+        } catch (RejectedExecutionException exception) {
+            receipts.invalidate(receiptId);
+            rejectedUploads.increment();
+            throw new IngestQueueFullException(retryAfterSeconds);
+        }
+        return receipt;
+    }
+
+    private void process(String receiptId, String userId, Runnable upload, long queuedAt) {
+        receipts.put(receiptId, new IngestReceiptDTO(receiptId, userId, IngestReceiptDTO.Status.PROCESSING, null));
+        try {
+            upload.run();
+            receipts.put(receiptId, new IngestReceiptDTO(receiptId, userId, IngestReceiptDTO.Status.COMPLETED, null));
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Queued upload {} for user {} failed", receiptId, userId, exception);
+            receipts.put(receiptId, new IngestReceiptDTO(receiptId, userId, IngestReceiptDTO.Status.FAILED, exception.getMessage()));
+        } finally {
+            drainLatency.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -1,56 +1,120 @@
 package se.pbt.stepcounter.service;
 
+import com.google.common.collect.Lists;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import se.pbt.stepcounter.builder.StepDTOBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.pbt.stepcounter.cache.AggregateStepCache;
+import se.pbt.stepcounter.cache.LatestStepCache;
+import se.pbt.stepcounter.cache.UserDataVersionRegistry;
+import se.pbt.stepcounter.cache.UploadDeduplicationCache;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.dto.stepdto.BatchStepCountRequestDTO;
 import se.pbt.stepcounter.dto.stepdto.DailyWeekStepDTO;
 import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.dto.stepdto.StepHistoryPageDTO;
 import se.pbt.stepcounter.dto.stepdto.WeeklyStepDTO;
-import se.pbt.stepcounter.exception.NotFoundException;
+import se.pbt.stepcounter.dto.stepdto.YearlyStepSummaryDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
 import se.pbt.stepcounter.exception.InvalidUserIdException;
-import se.pbt.stepcounter.exception.ValidationFailedException;
-import se.pbt.stepcounter.mapper.DateHelper;
+import se.pbt.stepcounter.mapper.BinaryStepReader;
+import se.pbt.stepcounter.mapper.CalendarBucketTable;
+import se.pbt.stepcounter.mapper.StepHistoryCursor;
 import se.pbt.stepcounter.mapper.StepMapper;
+import se.pbt.stepcounter.mapper.ZoneDayConverter;
 import se.pbt.stepcounter.model.MonthStep;
 import se.pbt.stepcounter.model.Step;
 import se.pbt.stepcounter.model.WeekStep;
 import se.pbt.stepcounter.repository.MonthStepRepository;
 import se.pbt.stepcounter.repository.StepRepository;
 import se.pbt.stepcounter.repository.WeekStepRepository;
+import se.pbt.stepcounter.validator.StepDataViolation;
 import se.pbt.stepcounter.validator.boostappvalidator.StepValidator;
 
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 
 @Service
 public class StepService {
 
+    /**
+     * Maximum number of user IDs sent in a single IN-list query
+     */
+    private static final int USER_ID_CHUNK_SIZE = 1000;
+
+    /**
+     * Maximum number of steps returned in one page of a users step history
+     */
+    public static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
     private final StepRepository stepRepository;
     private final WeekStepRepository weekStepRepository;
     private final MonthStepRepository monthStepRepository;
     private final StepValidator stepValidator;
+    private final LatestStepCache latestStepCache;
+    private final AggregateWriteBuffer aggregateWriteBuffer;
+    private final StripedUserLock stripedUserLock;
+    private final UploadDeduplicationCache uploadDeduplicationCache;
+    private final CalendarBucketService calendarBucketService;
+    private final AggregateStepCache aggregateStepCache;
+    private final UserDataVersionRegistry userDataVersionRegistry;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * Constructor for StepService class.
      */
     public StepService(final StepRepository stepRepository,
                        final MonthStepRepository monthStepRepository,
-                       final WeekStepRepository weekStepRepository) {
+                       final WeekStepRepository weekStepRepository,
+                       final LatestStepCache latestStepCache,
+                       final AggregateWriteBuffer aggregateWriteBuffer,
+                       final StripedUserLock stripedUserLock,
+                       final UploadDeduplicationCache uploadDeduplicationCache,
+                       final CalendarBucketService calendarBucketService,
+                       final AggregateStepCache aggregateStepCache,
+                       final UserDataVersionRegistry userDataVersionRegistry,
+                       final PlatformTransactionManager transactionManager) {
         this.stepRepository = stepRepository;
         this.monthStepRepository = monthStepRepository;
         this.weekStepRepository = weekStepRepository;
-        this.stepValidator = new StepValidator(stepRepository);
+        this.stepValidator = new StepValidator();
+        this.latestStepCache = latestStepCache;
+        this.aggregateWriteBuffer = aggregateWriteBuffer;
+        this.stripedUserLock = stripedUserLock;
+        this.uploadDeduplicationCache = uploadDeduplicationCache;
+        this.calendarBucketService = calendarBucketService;
+        this.aggregateStepCache = aggregateStepCache;
+        this.userDataVersionRegistry = userDataVersionRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Deletes all records from the step table.
-     * This method relies on the StepRepository to perform the deletion.
+     * This method relies on the StepRepository to perform the deletion, and empties the cache of latest steps, the
+     * cache of week and month totals and the store of recent uploads. The data version of every user is increased.
      */
     public void deleteStepTable() {
         stepRepository.deleteAllFromStep();
+        userDataVersionRegistry.increaseAllVersions();
+        latestStepCache.invalidateAll();
+        aggregateStepCache.invalidateAll();
+        uploadDeduplicationCache.invalidateAll();
     }
 
     /**
@@ -61,61 +125,358 @@ public void deleteStepTable() {
      * @return the users most recently stored {@link Step} object
      */
     public Step addSingleStepForUser(String userId, StepDTO stepDTO) {
+        return addSingleStepForUser(userId, stepDTO, null);
+    }
+
+    /**
+     * Adds Step-data to a specified user and stores it in the database, after checking the data for bad values.
+     * An upload with the same idempotency key, or with the same content if no key is given, as an upload made within
+     * the deduplication window is not stored again. The {@link Step} object of the earlier upload is returned instead.
+     *
+     * @param userId the ID of the user
+     * @param stepDTO a {@link StepDTO} object containing the new data
+     * @param idempotencyKey the key the client sent to identify the upload, or null
+     * @return the users most recently stored {@link Step} object
+     * @throws InvalidUserIdException if the data is invalid or belongs to another user than the given one
+     */
+    public Step addSingleStepForUser(String userId, StepDTO stepDTO, String idempotencyKey) {
+        validateSingleStepData(userId, stepDTO);
+        // New Step objects are created and saved/updated to each table in database,
+        // while no other upload for the same user is being written
+        var uploadKey = UploadDeduplicationCache.keyOf(userId, idempotencyKey, stepDTO);
+        return stripedUserLock.runLocked(userId, () -> uploadDeduplicationCache.getPrevious(uploadKey)
+                .orElseGet(() -> {
+                    var storedStep = saveToAllTables(stepDTO);
+                    uploadDeduplicationCache.remember(uploadKey, storedStep);
+                    return storedStep;
+                }));
+    }
+
+    /**
+     * Checks a single {@link StepDTO} object with the same rules as
+     * {@link #addSingleStepForUser(String, StepDTO, String)}, without storing it. Used to reject bad data before it
+     * is queued for asynchronous processing.
+     *
+     * @param userId the ID of the user
+     * @param stepDTO a {@link StepDTO} object containing the new data
+     * @throws InvalidUserIdException if the data is invalid or belongs to another user than the given one
+     */
+    public void validateSingleStepData(String userId, StepDTO stepDTO) {
         // Checks all fields for null or bad data
         if (userId == null || !stepValidator.stepDataIsValid(stepDTO))
             throw new InvalidUserIdException("User ID cannot be null or empty");
-            // Otherwise new Step objects are created and saved/updated to each table in database
-        else {
-            return saveToAllTables(stepDTO);
-        }
+        // The upload is deduplicated, locked and stored under one user, so the data must not name another one
+        if (!userId.equals(stepDTO.getUserId()))
+            throw new InvalidUserIdException("User ID of the step data does not match the user ID of the request");
     }
 
     /**
-     * Add Step-data to a specified user in form of a list, and stores it in the database after checking for bad values
+     * Add Step-data to a specified user in form of a list, and stores it in the database after checking for bad values.
+     * The data is gathered into one total per calendar day, so data covering several days is stored in the day, week
+     * and month it belongs to. All rows are written in one transaction with JDBC batching.
      *
      * @param userId the ID of the user
      * @param stepDTOList a list of {@link StepDTO} objects containing the new data
      * @return the users most recently stored {@link Step} object
      */
+    @Transactional
     public Step addMultipleStepsForUser(String userId, List<StepDTO> stepDTOList) {
         // Checks all fields for null or bad data
         if (userId == null || !stepValidator.stepDataIsValid(stepDTOList)) {
             throw new InvalidUserIdException("User ID cannot be null or empty");
         }
         else {
-            // If valid, gathers the data into a single StepDTO object that gets added to database
-            var gatheredData = gatherStepDataForUser(stepDTOList, userId);
-            return addSingleStepForUser(userId, gatheredData);
+            // If valid, gathers the data into one StepDTO object per day of the users zone that get added to database
+            var zoneDayConverter = calendarBucketService.registerZone(userId, stepDTOList.get(0).getStartTime().getZone());
+            var dailyStepAggregator = new DailyStepAggregator(zoneDayConverter);
+            stepDTOList.forEach(dailyStepAggregator::add);
+            return saveDailyStepData(userId, dailyStepAggregator);
         }
     }
 
     /**
-     * This method takes in a list of {@link StepDTO} objects and a userId and returns a new {@link StepDTO} object with the
-     * aggregated step data for that user.
+     * Add Step-data to a specified user from a sequence of {@link StepDTO} objects that is read while it is processed.
+     * Each object is checked with the same rules as {@link #addMultipleStepsForUser(String, List)} as soon as it
+     * arrives, and only one running total per calendar day is kept, so memory use does not grow with the number of
+     * objects.
+     * The sequence is read before any transaction is opened, so a slow upload does not hold a database connection;
+     * only the daily totals are written in a transaction. The zone of the first object becomes the zone of the user
+     * as soon as it has been checked, if the user has none yet.
      *
-     * @param stepDTOList a list containing {@link StepDTO} objects a particular user
-     * @param userId the id of the user
-     * @return a {@link StepDTO} object containing the users aggregated step data
-     */
-    private StepDTO gatherStepDataForUser(List<StepDTO> stepDTOList, String userId) {
-        // Sorts the list by endTime and collects to a list. 'Oldest' endTime at index 0
-        var sortedList =sortDTOListByEndTime(stepDTOList);
-        // Gets the total sum of the stepCount of the objects in the list
-        var totalStepCount = sortedList.stream()
-                .mapToInt(StepDTO::getStepCount)
-                .sum();
-        var startTime = sortedList.get(0).getStartTime();
-        var endTime = sortedList.get(sortedList.size() - 1 ).getEndTime();
-        var uploadTime = sortedList.get(sortedList.size() -1 ).getUploadTime();
-        // Creates and returns new StepCTO with startTime of the oldest object and endTime of the newest object
-        // and sum of all objects stepCount
-        return new StepDTOBuilder()
-                .withUserId(userId)
-                .withStepCount(totalStepCount)
-                .withStartTime(startTime)
-                .withEndTime(endTime)
-                .withUploadTime(uploadTime)
-                .build();
+     * @param userId the ID of the user
+     * @param stepDTOs the {@link StepDTO} objects containing the new data
+     * @return the users most recently stored {@link Step} object
+     */
+    public Step addStreamedStepsForUser(String userId, Iterator<StepDTO> stepDTOs) {
+        if (userId == null)
+            throw new InvalidUserIdException("User ID cannot be null or empty");
+        DailyStepAggregator dailyStepAggregator = null;
+        while (stepDTOs.hasNext()) {
+            var stepDTO = stepDTOs.next();
+            var violations = stepValidator.findViolations(stepDTO);
+            if (violations != StepDataViolation.NONE)
+                throw stepValidator.toException(violations, stepDTO);
+            if (dailyStepAggregator == null)
+                dailyStepAggregator = new DailyStepAggregator(
+                        calendarBucketService.registerZone(userId, stepDTO.getStartTime().getZone()));
+            dailyStepAggregator.add(stepDTO);
+        }
+        if (dailyStepAggregator == null)
+            throw new InvalidStepDataException("List holding new data cant be empty");
+        var dailyStepData = dailyStepAggregator;
+        return transactionTemplate.execute(status -> saveDailyStepData(userId, dailyStepData));
+    }
+
+    /**
+     * Add Step-data to a specified user from an upload in the compact binary format. Each sample is checked with the
+     * same rules as {@link #addMultipleStepsForUser(String, List)} and gathered into one total per calendar day in the
+     * zone of the user, without creating an object per sample. The zone of the upload becomes the zone of the user
+     * as soon as the first sample has been checked, if the user has none yet.
+     * The upload is decoded before any transaction is opened, so a slow upload does not hold a database connection;
+     * only the daily totals are written in a transaction.
+     *
+     * @param userId the ID of the user
+     * @param binaryStepReader the {@link BinaryStepReader} positioned before the first sample
+     * @return the users most recently stored {@link Step} object
+     * @throws IOException if the upload can not be read
+     */
+    public Step addBinaryStepsForUser(String userId, BinaryStepReader binaryStepReader) throws IOException {
+        if (userId == null)
+            throw new InvalidUserIdException("User ID cannot be null or empty");
+        var zone = binaryStepReader.getZone();
+        ZoneDayConverter zoneDayConverter = null;
+        DailyStepAggregator dailyStepAggregator = null;
+        while (binaryStepReader.next()) {
+            var startEpochSecond = binaryStepReader.getStartEpochSecond();
+            var endEpochSecond = binaryStepReader.getEndEpochSecond();
+            var uploadEpochSecond = binaryStepReader.getUploadEpochSecond();
+            var violations = stepValidator.findViolations(binaryStepReader.getStepCount(),
+                    startEpochSecond, endEpochSecond, uploadEpochSecond);
+            if (violations != StepDataViolation.NONE)
+                throw StepDataViolation.toException(violations, null);
+            if (dailyStepAggregator == null) {
+                zoneDayConverter = calendarBucketService.registerZone(userId, zone);
+                dailyStepAggregator = new DailyStepAggregator(zoneDayConverter);
+            }
+            dailyStepAggregator.add(zoneDayConverter.toEpochDay(startEpochSecond), zone, binaryStepReader.getStepCount(),
+                    startEpochSecond, endEpochSecond, uploadEpochSecond);
+        }
+        if (dailyStepAggregator == null)
+            throw new InvalidStepDataException("List holding new data cant be empty");
+        var dailyStepData = dailyStepAggregator;
+        return transactionTemplate.execute(status -> saveDailyStepData(userId, dailyStepData));
+    }
+
+    /**
+     * Writes the daily totals of a user to all tables in the current transaction, while no other upload for the
+     * same user is being written.
+     *
+     * @return the users most recently stored {@link Step} object
+     */
+    private Step saveDailyStepData(String userId, DailyStepAggregator dailyStepAggregator) {
+        stripedUserLock.lockUntilTransactionCompletes(List.of(userId));
+        var dataByUser = new LinkedHashMap<String, List<StepDTO>>();
+        dataByUser.put(userId, dailyStepAggregator.toStepDTOs(userId));
+        return saveBatchToAllTables(dataByUser).get(userId);
+    }
+
+    /**
+     * Checks step data of a user with the same rules as {@link #addMultipleStepsForUser(String, List)}, without
+     * storing it. Used to reject bad data before it is queued for asynchronous processing.
+     *
+     * @param userId the ID of the user
+     * @param stepDTOList a list of {@link StepDTO} objects containing the new data
+     */
+    public void validateStepData(String userId, List<StepDTO> stepDTOList) {
+        if (userId == null || !stepValidator.stepDataIsValid(stepDTOList))
+            throw new InvalidUserIdException("User ID cannot be null or empty");
+    }
+
+    /**
+     * Adds step data for any number of users in one batch. Every item is validated on its own so that a bad item
+     * only rejects itself. The valid items are grouped per user and written to all tables with JDBC batching.
+     *
+     * @param stepDTOList a list of {@link StepDTO} objects, each holding the ID of the user it belongs to
+     * @return the status of each item, in the same order as the input list
+     */
+    @Transactional
+    public List<BatchItemStatusDTO> addStepsForMultipleUsers(List<StepDTO> stepDTOList) {
+        if (stepDTOList == null)
+            throw new InvalidStepDataException("List holding new data cant be null");
+        var statuses = new ArrayList<BatchItemStatusDTO>(stepDTOList.size());
+        var validDataByUser = new LinkedHashMap<String, List<StepDTO>>();
+        for (int index = 0; index < stepDTOList.size(); index++) {
+            var stepDTO = stepDTOList.get(index);
+            var rejectionMessage = getRejectionMessage(stepDTO);
+            if (rejectionMessage == null) {
+                validDataByUser.computeIfAbsent(stepDTO.getUserId(), userId -> new ArrayList<>()).add(stepDTO);
+                statuses.add(BatchItemStatusDTO.accepted(index, stepDTO.getUserId()));
+            } else {
+                statuses.add(BatchItemStatusDTO.rejected(index, stepDTO == null ? null : stepDTO.getUserId(), rejectionMessage));
+            }
+        }
+        // Uploads for the same users wait until this batch is committed
+        stripedUserLock.lockUntilTransactionCompletes(validDataByUser.keySet());
+        saveBatchToAllTables(validDataByUser);
+        return statuses;
+    }
+
+    /**
+     * Validates a single item of a batch upload with the same rules as the single-user endpoints.
+     *
+     * @param stepDTO the {@link StepDTO} object to validate
+     * @return the reason the item is invalid, or null if it is valid
+     */
+    private String getRejectionMessage(StepDTO stepDTO) {
+        var violations = stepValidator.findViolations(stepDTO);
+        return violations == StepDataViolation.NONE ? null : StepDataViolation.toMessage(violations);
+    }
+
+    /**
+     * Writes validated step data of several users to all tables. The data of each user is applied in order of
+     * start time, as one total per day of the users zone: data for a day that already has a stored step updates that
+     * step and adds only the difference to the week and month, so an upload repeating days that are already stored,
+     * such as an overlapping backfill, is not counted twice. The stored steps of the uploaded days are read with one
+     * range query per chunk of users, and the resulting rows are sent as one JDBC batch per statement instead of one
+     * round trip per item.
+     *
+     * @param dataByUser the valid {@link StepDTO} objects of each user
+     * @return the most recent {@link Step} object of each user after the data has been applied
+     */
+    private Map<String, Step> saveBatchToAllTables(Map<String, List<StepDTO>> dataByUser) {
+        if (dataByUser.isEmpty())
+            return Collections.emptyMap();
+        // Latest steps are taken from the cache, and only the users missing from it are queried
+        var latestStepByUser = new HashMap<>(latestStepCache.getAllPresent(dataByUser.keySet()));
+        var uncachedUserIds = new ArrayList<>(dataByUser.keySet());
+        uncachedUserIds.removeAll(latestStepByUser.keySet());
+        for (List<String> userIds : Lists.partition(uncachedUserIds, USER_ID_CHUNK_SIZE)) {
+            stepRepository.findLatestStepsByUserIds(userIds)
+                    .forEach(step -> latestStepByUser.merge(step.getUserId(), step,
+                            (first, second) -> first.getId() > second.getId() ? first : second));
+        }
+        var zoneDayConverterByUser = new HashMap<String, ZoneDayConverter>();
+        dataByUser.forEach((userId, userData) -> {
+            userData.sort(Comparator.comparing(StepDTO::getStartTime));
+            zoneDayConverterByUser.put(userId,
+                    calendarBucketService.registerZone(userId, userData.get(0).getStartTime().getZone()));
+        });
+        var storedStepsByUser = findStoredStepsOfUploadedDays(dataByUser, zoneDayConverterByUser);
+        var newSteps = new ArrayList<Step>();
+        var updatedSteps = new LinkedHashSet<Step>();
+        var weekStepsToAdd = new LinkedHashMap<String, WeekStep>();
+        var monthStepsToAdd = new LinkedHashMap<String, MonthStep>();
+        var latestStepsToCache = new LinkedHashMap<String, Step>();
+
+        dataByUser.forEach((userId, userData) -> {
+            var zoneDayConverter = zoneDayConverterByUser.get(userId);
+            var storedStepByDay = storedStepsByUser.getOrDefault(userId, Collections.emptyMap());
+            var newStepByDay = new HashMap<Long, Step>();
+            var latestStep = latestStepByUser.get(userId);
+            // The latest step is updated through the same object as the stored step of its day, if that was read
+            if (latestStep != null)
+                latestStep = storedStepByDay.getOrDefault(
+                        zoneDayConverter.toEpochDay(latestStep.getStartTime().toEpochSecond()), latestStep);
+            for (StepDTO stepDTO : userData) {
+                int stepCountIncrease;
+                // Same rule as saveToAllTables: data from a day that already has a step updates that step
+                var epochDay = zoneDayConverter.toEpochDay(stepDTO.getStartTime().toEpochSecond());
+                var storedStep = storedStepByDay.get(epochDay);
+                var dayStep = newStepByDay.getOrDefault(epochDay, storedStep);
+                if (dayStep != null) {
+                    // A lower day total than the stored one is an older upload arriving late and changes nothing
+                    if (stepDTO.getStepCount() < dayStep.getStepCount())
+                        continue;
+                    stepCountIncrease = stepDTO.getStepCount() - dayStep.getStepCount();
+                    dayStep.setStepCount(stepDTO.getStepCount());
+                    dayStep.setEndTime(stepDTO.getEndTime());
+                    dayStep.setUploadTime(stepDTO.getUploadTime());
+                    if (dayStep == storedStep)
+                        updatedSteps.add(dayStep);
+                } else {
+                    var newStep = StepMapper.mapper.stepDtoToStep(stepDTO);
+                    newSteps.add(newStep);
+                    newStepByDay.put(epochDay, newStep);
+                    stepCountIncrease = stepDTO.getStepCount();
+                    if (latestStep == null || !newStep.getStartTime().isBefore(latestStep.getStartTime()))
+                        latestStep = newStep;
+                }
+                var bucket = calendarBucketService.bucketOf(epochDay);
+                addToWeekStep(weekStepsToAdd, userId, bucket, stepCountIncrease);
+                addToMonthStep(monthStepsToAdd, userId, bucket, stepCountIncrease);
+            }
+            latestStepsToCache.put(userId, latestStep);
+        });
+
+        stepRepository.saveAll(newSteps);
+        stepRepository.updateSteps(updatedSteps);
+        aggregateWriteBuffer.addStepsToWeeks(weekStepsToAdd.values());
+        aggregateWriteBuffer.addStepsToMonths(monthStepsToAdd.values());
+        latestStepsToCache.values().forEach(latestStepCache::update);
+        userDataVersionRegistry.increaseVersions(dataByUser.keySet());
+        return latestStepsToCache;
+    }
+
+    /**
+     * Checks if new data starts on the same day of the users zone as the users most recent {@link Step} object, in
+     * which case that step is updated instead of a new one being created.
+     */
+    private static boolean isSameDay(ZoneDayConverter zoneDayConverter, Step latestStep, long epochDay) {
+        return zoneDayConverter.toEpochDay(latestStep.getStartTime().toEpochSecond()) == epochDay;
+    }
+
+    /**
+     * Reads the stored steps of the days the data of each user falls on, with one query per chunk of users over the
+     * range of start times from the first to the last uploaded day of any of them.
+     *
+     * @return the stored {@link Step} of each user by day of the users zone. Of several steps stored for the same
+     *         day, the one with the highest step count is kept.
+     */
+    private Map<String, Map<Long, Step>> findStoredStepsOfUploadedDays(Map<String, List<StepDTO>> dataByUser,
+                                                                     Map<String, ZoneDayConverter> zoneDayConverterByUser) {
+        Instant from = null;
+        Instant to = null;
+        for (var userData : dataByUser.entrySet()) {
+            var zoneDayConverter = zoneDayConverterByUser.get(userData.getKey());
+            var steps = userData.getValue();
+            // The data of each user is sorted by start time, so its first and last step hold its first and last day
+            var firstDay = zoneDayConverter.toEpochDay(steps.get(0).getStartTime().toEpochSecond());
+            var lastDay = zoneDayConverter.toEpochDay(steps.get(steps.size() - 1).getStartTime().toEpochSecond());
+            var userFrom = LocalDate.ofEpochDay(firstDay).atStartOfDay(zoneDayConverter.getZone()).toInstant();
+            var userTo = LocalDate.ofEpochDay(lastDay + 1).atStartOfDay(zoneDayConverter.getZone()).toInstant();
+            from = from == null || userFrom.isBefore(from) ? userFrom : from;
+            to = to == null || userTo.isAfter(to) ? userTo : to;
+        }
+        var storedStepsByUser = new HashMap<String, Map<Long, Step>>();
+        for (List<String> userIds : Lists.partition(new ArrayList<>(dataByUser.keySet()), USER_ID_CHUNK_SIZE)) {
+            stepRepository.findStepsByUserIdsAndStartTimeRange(userIds, from.atZone(ZoneOffset.UTC), to.atZone(ZoneOffset.UTC))
+                    .forEach(step -> storedStepsByUser.computeIfAbsent(step.getUserId(), userId -> new HashMap<>())
+                            .merge(zoneDayConverterByUser.get(step.getUserId()).toEpochDay(step.getStartTime().toEpochSecond()),
+                                    step, (first, second) -> first.getStepCount() >= second.getStepCount() ? first : second));
+        }
+        return storedStepsByUser;
+    }
+
+    /**
+     * Adds the step count to the pending {@link WeekStep} of the week the data belongs to.
+     */
+    private static void addToWeekStep(Map<String, WeekStep> weekSteps, String userId, int bucket, int stepCount) {
+        var year = CalendarBucketTable.getWeekYear(bucket);
+        var week = CalendarBucketTable.getWeek(bucket);
+        var weekStep = weekSteps.computeIfAbsent(year + ":" + week + ":" + userId,
+                key -> new WeekStep(userId, week, year, 0));
+        weekStep.setStepCount(weekStep.getStepCount() + stepCount);
+    }
+
+    /**
+     * Adds the step count to the pending {@link MonthStep} of the month the data belongs to.
+     */
+    private static void addToMonthStep(Map<String, MonthStep> monthSteps, String userId, int bucket, int stepCount) {
+        var year = CalendarBucketTable.getYear(bucket);
+        var month = CalendarBucketTable.getMonth(bucket);
+        var monthStep = monthSteps.computeIfAbsent(year + ":" + month + ":" + userId,
+                key -> new MonthStep(userId, month, year, 0));
+        monthStep.setStepCount(monthStep.getStepCount() + stepCount);
     }
 
     /**
@@ -130,16 +491,48 @@ public List<StepDTO> sortDTOListByEndTime(List<StepDTO> stepDTOList) {
     }
 
     /**
-     * Retrieve the most recently stored {@link Step} object for the specified user from the database
+     * Retrieve the most recently stored {@link Step} object for the specified user, from the cache if present and
+     * from the database otherwise
      *
      * @param userId the ID of the user
      * @return the users most recently stored {@link Step} object
      */
     public Step getLatestStepByStartTimeFromUser(String userId) {
-        return stepRepository.findFirstByUserIdOrderByStartTimeDesc(userId)
+        return latestStepCache.get(userId)
                 .orElseThrow(() -> new InvalidUserIdException(userId));
     }
 
+    /**
+     * Retrieves one page of the stored steps of a user, ordered by start time and ID, newest first.
+     * Pages are read with keyset pagination: each page starts right after the last step of the previous one, found
+     * through the index on user_id and start_time, so reading a deep page costs the same as the first one.
+     * One step more than the page size is read to find out whether there is a next page.
+     *
+     * @param userId the ID of the user
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @param limit the number of steps of the page, capped at {@value #MAX_HISTORY_PAGE_SIZE}
+     * @return a {@link StepHistoryPageDTO} with the steps of the page and the cursor of the next page, if any
+     * @throws IllegalArgumentException if the limit is less than 1 or the cursor is not valid
+     */
+    public StepHistoryPageDTO getStepHistory(String userId, String after, int limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be at least 1");
+        var pageSize = Math.min(limit, MAX_HISTORY_PAGE_SIZE);
+        var pageable = PageRequest.of(0, pageSize + 1);
+        List<Step> steps;
+        if (after == null) {
+            steps = stepRepository.findStepHistory(userId, pageable);
+        } else {
+            var cursor = StepHistoryCursor.decode(after);
+            steps = stepRepository.findStepHistoryAfter(userId,
+                    ZonedDateTime.ofInstant(cursor.getStartTime(), ZoneOffset.UTC), cursor.getId(), pageable);
+        }
+        if (steps.size() <= pageSize)
+            return new StepHistoryPageDTO(userId, steps, null);
+        var page = steps.subList(0, pageSize);
+        return new StepHistoryPageDTO(userId, page, StepHistoryCursor.after(page.get(pageSize - 1)).encode());
+    }
+
     /**
      * Retrieve the stepCount for a given user, year and month.
      *
@@ -149,8 +542,73 @@ public Step getLatestStepByStartTimeFromUser(String userId) {
      * @return the users total stepCount for the requested month
      */
     public Integer getStepCountForUserYearAndMonth(String userId, int year, int month) {
-        return monthStepRepository.getStepCountByUserIdYearAndMonth(userId, year, month)
-                .orElse(0);
+        return aggregateWriteBuffer.getStepCountForMonth(userId, year, month);
+    }
+
+    /**
+     * Retrieves the step count of one week or one month for each of the given users. The users are read with one
+     * IN-list query per {@value #USER_ID_CHUNK_SIZE} users instead of one query each.
+     *
+     * @param request a {@link BatchStepCountRequestDTO} holding the users, the year and either a week or a month
+     * @return the step count of each distinct user, in the order of the request, with 0 for users without steps
+     * @throws InvalidUserIdException if the user list or one of its IDs is null
+     * @throws IllegalArgumentException if not exactly one of week and month is given, or the period is out of range
+     */
+    public Map<String, Integer> getStepCountsForUsers(BatchStepCountRequestDTO request) {
+        var week = request.getWeek();
+        var month = request.getMonth();
+        if (request.getUserIds() == null || request.getUserIds().stream().anyMatch(Objects::isNull))
+            throw new InvalidUserIdException("User IDs cannot be null");
+        if ((week == null) == (month == null))
+            throw new IllegalArgumentException("Exactly one of week and month must be given");
+        if (week != null && (week < 1 || week > 53))
+            throw new IllegalArgumentException("Week must be between 1 and 53");
+        if (month != null && (month < 1 || month > 12))
+            throw new IllegalArgumentException("Month must be between 1 and 12");
+
+        var stepCountByUser = new LinkedHashMap<String, Integer>();
+        request.getUserIds().forEach(userId -> stepCountByUser.put(userId, 0));
+        for (List<String> userIds : Lists.partition(new ArrayList<>(stepCountByUser.keySet()), USER_ID_CHUNK_SIZE)) {
+            stepCountByUser.putAll(week != null
+                    ? aggregateWriteBuffer.getStepCountsForWeek(userIds, request.getYear(), week)
+                    : aggregateWriteBuffer.getStepCountsForMonth(userIds, request.getYear(), month));
+        }
+        return stepCountByUser;
+    }
+
+    /**
+     * Summarizes the weeks and months of a year for a user, read as two arrays of step counts with one query each
+     * instead of as week-step and month-step objects.
+     *
+     * @param userId the ID of the user
+     * @param year the requested year
+     * @return a {@link YearlyStepSummaryDTO} with the weekly and monthly step counts, the total and the best periods
+     */
+    public YearlyStepSummaryDTO getYearlyStepSummary(String userId, int year) {
+        var stepCountPerWeek = aggregateWriteBuffer.getStepCountPerWeek(userId, year);
+        var stepCountPerMonth = aggregateWriteBuffer.getStepCountPerMonth(userId, year);
+        return new YearlyStepSummaryDTO(userId, year, stepCountPerWeek, stepCountPerMonth);
+    }
+
+    /**
+     * Retrieves the data version of a user, which is increased by every write of step data for the user.
+     * Reads of the users step data can be answered as unchanged while the version stays the same.
+     *
+     * @param userId the ID of the user
+     * @return the version, or 0 if no data has been written for the user
+     */
+    public long getDataVersion(String userId) {
+        return userDataVersionRegistry.getVersion(userId);
+    }
+
+    /**
+     * Finds the current day in the zone of a user, which decides the week read by {@link #getStepsPerDayForWeek(String)}.
+     *
+     * @param userId the ID of the user
+     * @return the day, counted in days from 1970-01-01
+     */
+    public long getCurrentEpochDay(String userId) {
+        return calendarBucketService.currentEpochDayOf(userId);
     }
 
     /**
@@ -162,8 +620,7 @@ public Integer getStepCountForUserYearAndMonth(String userId, int year, int mont
      * @return the users total stepCount for the requested week
      */
     public Integer getStepCountForUserYearAndWeek(String userId, int year, int week) {
-        return weekStepRepository.getStepCountByUserIdYearAndWeek(userId, year, week)
-                .orElse(0);
+        return aggregateWriteBuffer.getStepCountForWeek(userId, year, week);
     }
 
 
@@ -178,142 +635,134 @@ public Integer getStepCountForUserYearAndWeek(String userId, int year, int week)
      */
     private Step  saveToAllTables(StepDTO stepDTO) {
         Step updatedStep;
+            var zoneDayConverter = calendarBucketService.registerZone(stepDTO.getUserId(), stepDTO.getStartTime().getZone());
+            var epochDay = zoneDayConverter.toEpochDay(stepDTO.getStartTime().toEpochSecond());
+            var bucket = calendarBucketService.bucketOf(epochDay);
+            // Users latest step object, from the cache if present
+            var latestStep = latestStepCache.get(stepDTO.getUserId());
             // If new data is from same day as latest step object, the step is updated
-            if (stepValidator.shouldUpdateStep(stepDTO)) {
-                updatedStep = updateStep(stepDTO);
+            if (latestStep.isPresent() && isSameDay(zoneDayConverter, latestStep.get(), epochDay)) {
+                updatedStep = updateStep(latestStep.get(), stepDTO, bucket);
             }
             else {
                 // If not, new step object is created and the data persisted to all tables
                 updatedStep = stepRepository.save(StepMapper.mapper.stepDtoToStep(stepDTO));
-                addStepDataToWeekStepTable(stepDTO, stepDTO.getStepCount());
-                addStepDataToMonthStepTable(stepDTO, stepDTO.getStepCount());
+                addStepDataToWeekStepTable(stepDTO.getUserId(), bucket, stepDTO.getStepCount());
+                addStepDataToMonthStepTable(stepDTO.getUserId(), bucket, stepDTO.getStepCount());
             }
+        latestStepCache.update(updatedStep);
+        userDataVersionRegistry.increaseVersions(List.of(stepDTO.getUserId()));
         return updatedStep;
     }
 
-    private Step updateStep(StepDTO stepDTO) {
-        Step updatedStep;
-        // Fetch users latest step object from database
-        var latestStepInDB = getLatestStepByStartTimeFromUser(stepDTO.getUserId());
+    private Step updateStep(Step latestStep, StepDTO stepDTO, int bucket) {
+        // A lower day total than the stored one is an older upload arriving late, and must not be added again
+        if (stepDTO.getStepCount() < latestStep.getStepCount())
+            return latestStep;
         // Get the value to be added to the current step object(The DTO-stepCount is always the new total of the day)
-        var stepCountIncrease = Math.abs(latestStepInDB.getStepCount() - stepDTO.getStepCount());
+        var stepCountIncrease = stepDTO.getStepCount() - latestStep.getStepCount();
         // Add stepCount to all tables without creating new objects in database
-        updatedStep = updateStep(latestStepInDB, stepDTO);
-        updateUsersLatestWeekStep(stepDTO.getUserId(), stepCountIncrease);
-        updateUsersLatestMonthStep(stepDTO.getUserId(), stepCountIncrease);
+        var updatedStep = updateStepCount(latestStep, stepDTO);
+        addStepDataToWeekStepTable(stepDTO.getUserId(), bucket, stepCountIncrease);
+        addStepDataToMonthStepTable(stepDTO.getUserId(), bucket, stepCountIncrease);
         return updatedStep;
     }
 
-    private void addStepDataToMonthStepTable(StepDTO stepDTO, int newStepCount) {
-        // Fetch month-step object from same month and year from database
-        var monthStepToUpdate = monthStepRepository.findByUserIdAndYearAndMonth(stepDTO.getUserId(), stepDTO.getStartTime().getYear(), stepDTO.getStartTime().getMonthValue());
-        // If a month-step object from the same month was found it is updated
-        monthStepToUpdate.ifPresentOrElse(monthStep -> {
-                    monthStep.setStepCount(monthStep.getStepCount() + newStepCount);
-                    monthStepRepository.save(monthStep);
-                },
-                // If no month-step from same month and year was found a new object is created and stored in database
-                () -> monthStepRepository.save(StepMapper.mapper.stepDtoToMonthStep(stepDTO)));
+    /**
+     * Adds the step count to the month-step row of the month the data belongs to, creating the row if needed.
+     * Goes through the {@link AggregateWriteBuffer}, which either upserts it at once or buffers it for the next flush.
+     */
+    private void addStepDataToMonthStepTable(String userId, int bucket, int newStepCount) {
+        aggregateWriteBuffer.addStepsToMonth(userId,
+                CalendarBucketTable.getYear(bucket), CalendarBucketTable.getMonth(bucket), newStepCount);
     }
 
-    private void addStepDataToWeekStepTable(StepDTO stepDTO, int newStepCount) {
-        // Fetch week-step object from same week and year from database
-        var weekStepToUpdate = weekStepRepository.findByUserIdAndYearAndWeek(stepDTO.getUserId(), stepDTO.getStartTime().getYear(), DateHelper.getWeek(stepDTO.getStartTime()));
-        // If a week-step object from the same week was found it is updated
-        weekStepToUpdate.ifPresentOrElse(weekStep -> {
-                    weekStep.setStepCount(weekStep.getStepCount() + newStepCount);
-                    weekStepRepository.save(weekStep);
-                },
-                // If no week-step from same week and year was found a new object is created and stored in database
-                () -> weekStepRepository.save(StepMapper.mapper.stepDtoToWeekStep(stepDTO)));
+    /**
+     * Adds the step count to the week-step row of the week the data belongs to, creating the row if needed.
+     * Goes through the {@link AggregateWriteBuffer}, which either upserts it at once or buffers it for the next flush.
+     */
+    private void addStepDataToWeekStepTable(String userId, int bucket, int newStepCount) {
+        aggregateWriteBuffer.addStepsToWeek(userId,
+                CalendarBucketTable.getWeekYear(bucket), CalendarBucketTable.getWeek(bucket), newStepCount);
     }
 
     /**
-     * Retrieves stepCount per day for a specified user the current week.
+     * Retrieves stepCount per day for a specified user the current week, Monday to Sunday. Days and the current week
+     * are those of the users zone. The days are summed by the database over the current week only, so the time taken
+     * does not grow with the history of the user.
      *
      * @param userId the id of a user
      * @return a {@link DailyWeekStepDTO} object containing the daily stepCount
      */
     public DailyWeekStepDTO getStepsPerDayForWeek(String userId) {
         if (userId == null)
-            throw new ValidationFailedException("User id and time must not be null");
-        // Retrieve all Step objects belonging to the user from the step table
-        var stepsFromDatabase = stepRepository.getListOfStepsByUserId(userId)
-                .orElseThrow(() -> new NotFoundException("No steps found in database for user id: " + userId));
-        // Create an ArrayList with 7 slots and the value '0' added to each slot
-        var stepCountsByDay = getDefaultWeekList();
-
-        // Loop through the retrieved Step objects and add the stepCount to the correct index of the list
-        for (Step step : stepsFromDatabase) {
-            // Sets the index the Step object is connected to depending on the startTime of the Step
-            var index = step.getStartTime().getDayOfWeek().getValue() - 1;
-            // Adds the stepCount of the Step object to the index
-            stepCountsByDay.set(index, stepCountsByDay.get(index) + step.getStepCount());
-        }
-        return new DailyWeekStepDTO(userId, DateHelper.getWeek(ZonedDateTime.now()), stepCountsByDay);
-    }
-
-    /**
-     * Creates a List with 7 slots to store integers with '0' as a default value
-     *
-     * @return An integer ArrayList with capacity of 7 slots with the value '0' in each
-     */
-    private static List<Integer> getDefaultWeekList() {
-        return  new ArrayList<>(Collections.nCopies(7, 0));
+            throw new InvalidStepDataException("User id and time must not be null");
+        var zone = calendarBucketService.zoneOf(userId).getZone();
+        var today = calendarBucketService.currentEpochDayOf(userId);
+        var currentBucket = calendarBucketService.bucketOf(today);
+        // The start of each day from Monday to the following Monday, in the zone of the user
+        var monday = today - (CalendarBucketTable.getDayOfWeek(currentBucket) - 1);
+        var dayBoundaries = new Instant[8];
+        for (int day = 0; day < dayBoundaries.length; day++)
+            dayBoundaries[day] = LocalDate.ofEpochDay(monday + day).atStartOfDay(zone).toInstant();
+        var stepCountsByDay = stepRepository.sumStepCountPerDay(userId, dayBoundaries);
+        return new DailyWeekStepDTO(userId, CalendarBucketTable.getWeek(currentBucket), stepCountsByDay);
     }
 
     /**
-     * Retrieves all {@link WeekStep} objects belonging to the user and adds step count values to new list which is returned.
+     * Retrieves all {@link WeekStep} objects belonging to the user and adds their step counts to an array indexed by
+     * week number, which is returned without boxing the values.
      *
      * @param userId The ID of the user
      * @return A {@link WeeklyStepDTO} object containing weekly step count for current year
      */
     public WeeklyStepDTO getStepCountPerWeekForUser(String userId, int year) {
         // Fetch all step objects belonging to user from current year
-        var fetchedWeekStepList = weekStepRepository.findByUserIdAndYear(userId, year);
-        // Create a list with 52 slots of 0
-        ArrayList<Integer> weeklyStepCountList = new ArrayList<>(Collections.nCopies(53, 0));
+        var fetchedWeekStepList = aggregateStepCache.getWeekSteps(userId, year);
+        // Create an array with a slot for each of the 53 weeks and the unused slot 0
+        var weeklyStepCounts = new int[WeeklyStepDTO.WEEK_SLOTS];
 
         // Add step count from week-step objects to corresponding slot in new array
         for (WeekStep weekStep : fetchedWeekStepList) {
             int weekNumber = weekStep.getWeek();
-            int weekStepCount = weekStep.getStepCount();
-            if (weekNumber >= 1 && weekNumber <= 52) {
-                weeklyStepCountList.set(weekNumber, weekStepCount);
+            if (weekNumber >= 1 && weekNumber < WeeklyStepDTO.WEEK_SLOTS) {
+                weeklyStepCounts[weekNumber] = weekStep.getStepCount();
             }
         }
-        return new WeeklyStepDTO(userId, weeklyStepCountList);
+        return new WeeklyStepDTO(userId, weeklyStepCounts);
     }
 
-    private Step updateStep(Step step, StepDTO stepDTO) {
+    /**
+     * Writes the new data to an already stored {@link Step} object with a plain update by id, so the row does not
+     * have to be read back before it is written.
+     */
+    private Step updateStepCount(Step step, StepDTO stepDTO) {
         step.setStepCount(stepDTO.getStepCount());
         step.setEndTime(stepDTO.getEndTime());
         step.setUploadTime(stepDTO.getUploadTime());
-        return stepRepository.save(step);
-    }
-    private void updateUsersLatestMonthStep(String userId, int stepCount) {
-        monthStepRepository.findTopByUserIdOrderByIdDesc(userId)
-                .ifPresent(monthStep -> {
-                    monthStep.setStepCount(monthStep.getStepCount() + stepCount);
-                    monthStepRepository.save(monthStep);
-                });
+        stepRepository.updateSteps(List.of(step));
+        return step;
     }
 
-
-    private void updateUsersLatestWeekStep(String userId, int stepCount) {
-        weekStepRepository.findTopByUserIdOrderByIdDesc(userId)
-                .ifPresent(weekStep -> {
-                    weekStep.setStepCount(weekStep.getStepCount() + stepCount);
-                    weekStepRepository.save(weekStep);
-                });
-    }
-
-
+    /**
+     * Retrieves the {@link WeekStep} objects of a user for a year, from the cache if present.
+     *
+     * @param userId the ID of the user
+     * @param year the requested year
+     * @return an unmodifiable list of the users {@link WeekStep} objects of the year
+     */
     public List<WeekStep> getWeekStepsForUserAndYear(String userId, int year) {
-        return weekStepRepository.findByUserIdAndYear(userId, year);
+        return aggregateStepCache.getWeekSteps(userId, year);
     }
 
+    /**
+     * Retrieves the {@link MonthStep} objects of a user for a year, from the cache if present.
+     *
+     * @param userId the ID of the user
+     * @param year the requested year
+     * @return an unmodifiable list of the users {@link MonthStep} objects of the year
+     */
     public List<MonthStep> getMonthStepsFromYearForUser(String userId, int year) {
-        return monthStepRepository.findByUserIdAndYear(userId, year);
+        return aggregateStepCache.getMonthSteps(userId, year);
     }
 }
@@ -0,0 +1,108 @@
+package se.pbt.stepcounter.service;
+
+import com.google.common.util.concurrent.Striped;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes writes of step data per user. Each user ID maps to one of a fixed number of locks, so uploads for the
+ * same user never run their read-modify-write at the same time, while uploads for other users only wait for each
+ * other when their IDs happen to share a lock.
+ * The time spent waiting for a lock and the number of acquisitions that had to wait are published as metrics.
+ */
+@Component
+public class StripedUserLock {
+
+    private final Striped<Lock> locks;
+    private final Timer lockWait;
+    private final Counter contendedAcquisitions;
+
+    /**
+     * Constructor for StripedUserLock class.
+     *
+     * @param meterRegistry the {@link MeterRegistry} the lock metrics are registered with
+     * @param stripes the number of locks the user IDs are spread over
+     */
+    public StripedUserLock(final MeterRegistry meterRegistry,
+                           @Value("${stepcounter.ingest.lock-stripes:1024}") final int stripes) {
+        this.locks = Striped.lock(stripes);
+        this.lockWait = Timer.builder("stepcounter.ingest.lock.wait")
+                .description("Time spent waiting for the lock of a user before writing step data")
+                .register(meterRegistry);
+        this.contendedAcquisitions = Counter.builder("stepcounter.ingest.lock.contended")
+                .description("Number of user lock acquisitions that had to wait for another upload")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the action while holding the lock of the user.
+     *
+     * @param userId the ID of the user whose data the action writes
+     * @param action the action to run
+     * @return the result of the action
+     */
+    public <T> T runLocked(String userId, Supplier<T> action) {
+        var lock = locks.get(userId);
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the locks of all given users and holds them until the current transaction has completed, so no other
+     * upload for these users can read their data before it is committed or rolled back.
+     * The locks are taken in a fixed order, so two batches sharing users can not deadlock.
+     *
+     * @param userIds the IDs of the users whose data the transaction writes
+     * @throws IllegalStateException if no transaction is active
+     */
+    public void lockUntilTransactionCompletes(Collection<String> userIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            throw new IllegalStateException("User locks can only be held for an active transaction");
+        List<Lock> acquired = new ArrayList<>();
+        try {
+            for (Lock lock : locks.bulkGet(userIds)) {
+                // bulkGet returns the locks sorted, with a shared lock repeated for every user mapped to it
+                if (acquired.isEmpty() || acquired.get(acquired.size() - 1) != lock) {
+                    acquire(lock);
+                    acquired.add(lock);
+                }
+            }
+        } catch (RuntimeException exception) {
+            acquired.forEach(Lock::unlock);
+            throw exception;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                acquired.forEach(Lock::unlock);
+            }
+        });
+    }
+
+    private void acquire(Lock lock) {
+        if (lock.tryLock()) {
+            lockWait.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        contendedAcquisitions.increment();
+        var waitStart = System.nanoTime();
+        lock.lock();
+        lockWait.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+    }
+}
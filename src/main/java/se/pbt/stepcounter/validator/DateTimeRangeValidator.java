@@ -22,4 +22,17 @@ public boolean isValid(StepDTO value, ConstraintValidatorContext context) {
                 && !value.getStartTime().isEqual(value.getEndTime())
                 && !value.getStartTime().isAfter(value.getUploadTime());
     }
+
+    /**
+     * Checks time fields given as epoch seconds with the same rules as {@link #isValid(StepDTO, ConstraintValidatorContext)}:
+     * the start time must be before the end time, which must not be after the upload time.
+     *
+     * @param startEpochSecond the start time
+     * @param endEpochSecond the end time
+     * @param uploadEpochSecond the upload time
+     * @return true if the time fields are in a valid order, false otherwise
+     */
+    public static boolean isValid(long startEpochSecond, long endEpochSecond, long uploadEpochSecond) {
+        return startEpochSecond < endEpochSecond && endEpochSecond <= uploadEpochSecond;
+    }
 }
@@ -0,0 +1,87 @@
+package se.pbt.stepcounter.validator;
+
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.DateTimeValueException;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.exception.InvalidUserIdException;
+import se.pbt.stepcounter.validator.boostappvalidator.StepValidator;
+
+/**
+ * Bit flags for the ways step data can be invalid, combined into an int by
+ * {@link StepValidator#findViolations(StepDTO)}. Checking data this way allocates nothing, and the exception or
+ * message describing a violation is only created when a caller needs to report it.
+ */
+public final class StepDataViolation {
+
+    public static final int NONE = 0;
+    public static final int NULL_DATA = 1;
+    public static final int NULL_USER_ID = 1 << 1;
+    public static final int STEP_COUNT_TOO_LOW = 1 << 2;
+    public static final int NULL_START_TIME = 1 << 3;
+    public static final int NULL_END_TIME = 1 << 4;
+    public static final int NULL_UPLOAD_TIME = 1 << 5;
+    public static final int END_BEFORE_START = 1 << 6;
+    /**
+     * The time fields break the rule of the {@link DateTimeRange} constraint
+     */
+    public static final int TIME_RANGE = 1 << 7;
+
+    /**
+     * All violations checked by {@link StepValidator#stepDataIsValid(StepDTO)}, which leaves the order of the time
+     * fields beyond the end time to the {@link DateTimeRange} constraint
+     */
+    public static final int STEP_VALIDATOR_RULES = NULL_DATA | NULL_USER_ID | STEP_COUNT_TOO_LOW
+            | NULL_START_TIME | NULL_END_TIME | NULL_UPLOAD_TIME | END_BEFORE_START;
+
+    private static final String TIME_RANGE_MESSAGE =
+            "Start time must before end time, which in turn must be before uploaded time";
+
+    private StepDataViolation() {
+    }
+
+    /**
+     * Gives the message describing the first of the given violations, in the order the fields are checked.
+     * The messages are constants, so getting one allocates nothing.
+     *
+     * @param violations the violation flags, not {@link #NONE}
+     * @return the message
+     */
+    public static String toMessage(int violations) {
+        if ((violations & NULL_DATA) != 0)
+            return "Object holding new data cant be null";
+        if ((violations & NULL_USER_ID) != 0)
+            return "User ID cant be null";
+        if ((violations & STEP_COUNT_TOO_LOW) != 0)
+            return "Step count must be greater than 0";
+        if ((violations & NULL_START_TIME) != 0)
+            return "Start time cant be null";
+        if ((violations & NULL_END_TIME) != 0)
+            return "End time cant be null";
+        if ((violations & NULL_UPLOAD_TIME) != 0)
+            return "Upload time cant be null";
+        if ((violations & END_BEFORE_START) != 0)
+            return "Start time must be before end time";
+        return TIME_RANGE_MESSAGE;
+    }
+
+    /**
+     * Creates the exception describing the first of the given violations, with the exception types the validation
+     * has always thrown.
+     *
+     * @param violations the violation flags, not {@link #NONE}
+     * @param details a description of the invalid data added to the message of time field violations, or null
+     * @return the exception to throw
+     */
+    public static RuntimeException toException(int violations, String details) {
+        var message = toMessage(violations);
+        if ((violations & NULL_DATA) != 0)
+            return new InvalidStepDataException(message);
+        if ((violations & NULL_USER_ID) != 0)
+            return new InvalidUserIdException(message);
+        if ((violations & STEP_COUNT_TOO_LOW) != 0)
+            return new IllegalArgumentException(message);
+        if ((violations & END_BEFORE_START) != 0 && details != null)
+            return new DateTimeValueException(message + "\n" + details);
+        return new DateTimeValueException(message);
+    }
+}
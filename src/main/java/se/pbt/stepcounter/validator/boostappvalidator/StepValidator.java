@@ -1,34 +1,19 @@
 package se.pbt.stepcounter.validator.boostappvalidator;
 
 import se.pbt.stepcounter.dto.stepdto.StepDTO;
-import se.pbt.stepcounter.exception.DateTimeValueException;
-import se.pbt.stepcounter.exception.InvalidUserIdException;
-import se.pbt.stepcounter.exception.InvalidStepDataException;
 import se.pbt.stepcounter.model.Step;
-import se.pbt.stepcounter.repository.StepRepository;
-import org.springframework.lang.NonNull;
+import se.pbt.stepcounter.validator.DateTimeRange;
+import se.pbt.stepcounter.validator.StepDataViolation;
 
-import javax.validation.constraints.NotNull;
 import java.util.List;
 
 /**
  * A utility class that validates the data in {@link StepDTO} objects.
  * Uses Optional wrappers to avoid nullPointer exceptions when data is not present.
- * Uses {@link StepRepository} to find Step objects in the database belonging to the same userId as the {@link StepDTO}.
  *
  * @see Step
  */
 public class StepValidator {
-    private final StepRepository repository;
-
-    /**
-     * Constructs a new StepValidator with the given repository.
-     *
-     * @param repository the {@link StepRepository} used for interacting with the database
-     */
-    public StepValidator(StepRepository repository) {
-        this.repository = repository;
-    }
 
     /**
      * Checks if a single {@link StepDTO} object is valid.
@@ -55,62 +40,98 @@ public boolean stepDataIsValid(List<StepDTO> stepDataList) {
     }
 
     /**
-     * Checks if the {@link Step} object should be updated or not
+     * Checks a {@link StepDTO} object against all rules in one pass, including the order of the time fields required
+     * by the {@link DateTimeRange} constraint. Nothing is allocated and nothing is thrown, so invalid data costs no
+     * more to check than valid data.
      *
-     * @param stepData the {@link StepDTO} object holding the new data
-     * @return true if the Step object should be updated, false otherwise
+     * @param stepDto the {@link StepDTO} object to check
+     * @return the {@link StepDataViolation} flags of all rules the object breaks, {@link StepDataViolation#NONE} if valid
      */
-    public boolean shouldUpdateStep(@NonNull StepDTO stepData) {
-        // Fetch the most recently stored Step object for the specified user
-        var existingStep = repository.findFirstByUserIdOrderByStartTimeDesc(stepData.getUserId());
-        // Returns true if a Step is found for the userId with an endTime that is after the startTime of the new data
-        return existingStep.map(step -> step.getStartTime().getDayOfYear() == stepData.getStartTime().getDayOfYear())
-                .orElse(false);
+    public int findViolations(StepDTO stepDto) {
+        if (stepDto == null)
+            return StepDataViolation.NULL_DATA;
+        int violations = StepDataViolation.NONE;
+        if (stepDto.getUserId() == null)
+            violations |= StepDataViolation.NULL_USER_ID;
+        if (stepDto.getStepCount() < 1)
+            violations |= StepDataViolation.STEP_COUNT_TOO_LOW;
+        var startTime = stepDto.getStartTime();
+        var endTime = stepDto.getEndTime();
+        var uploadTime = stepDto.getUploadTime();
+        if (startTime == null)
+            violations |= StepDataViolation.NULL_START_TIME;
+        if (endTime == null)
+            violations |= StepDataViolation.NULL_END_TIME;
+        if (uploadTime == null)
+            violations |= StepDataViolation.NULL_UPLOAD_TIME;
+        if (startTime != null && endTime != null && uploadTime != null)
+            violations |= findTimeViolations(startTime.toEpochSecond(), startTime.getNano(),
+                    endTime.toEpochSecond(), endTime.getNano(),
+                    uploadTime.toEpochSecond(), uploadTime.getNano());
+        return violations;
     }
 
     /**
-     * Checks if the fields of the {@link StepDTO} are null or not and if the time-fields are ok.
-     * The time-fields are seen as ok if startTime is before endTime, and endTime is before uploadTime.
+     * Checks a sample given as primitive values with the same rules as {@link #findViolations(StepDTO)}, for uploads
+     * that are decoded without creating {@link StepDTO} objects.
      *
-     * @param stepDto the {@link StepDTO} object holding the data to validate
-     * @return true if no fields are null and the time-fields are ok, false and throws exception otherwise
+     * @param stepCount the step count of the sample
+     * @param startEpochSecond the start time of the sample
+     * @param endEpochSecond the end time of the sample
+     * @param uploadEpochSecond the upload time of the sample
+     * @return the {@link StepDataViolation} flags of all rules the sample breaks, {@link StepDataViolation#NONE} if valid
      */
-    private boolean stepDtoIsValid(StepDTO stepDto) {
-        return  noFieldsAreNull(stepDto) && timeFieldsAreCorrect(stepDto);
-
+    public int findViolations(int stepCount, long startEpochSecond, long endEpochSecond, long uploadEpochSecond) {
+        int violations = stepCount < 1 ? StepDataViolation.STEP_COUNT_TOO_LOW : StepDataViolation.NONE;
+        return violations | findTimeViolations(startEpochSecond, 0, endEpochSecond, 0, uploadEpochSecond, 0);
     }
 
     /**
-     * Checks if any of the fields in the given {@link StepDTO} object are null.
+     * Creates the exception reporting the first of the given violations of a {@link StepDTO} object.
      *
-     * @param stepDto the {@link StepDTO} object holding the data to check
-     * @return true if fields are null, false and throws exception otherwise
+     * @param violations the {@link StepDataViolation} flags, not {@link StepDataViolation#NONE}
+     * @param stepDto the invalid {@link StepDTO} object
+     * @return the exception to throw
      */
-    private boolean noFieldsAreNull(@NotNull StepDTO stepDto) {
-        if (stepDto == null)
-            throw new InvalidStepDataException("Object holding new data cant be null");
+    public RuntimeException toException(int violations, StepDTO stepDto) {
+        return StepDataViolation.toException(violations,
+                (violations & StepDataViolation.END_BEFORE_START) != 0 ? notValidDTOString(stepDto) : null);
+    }
 
-        // Check each field and throw exception if null value is found
-        if (stepDto.getUserId() == null)
-            throw new InvalidUserIdException("User ID cant be null");
-        else if (stepDto.getStepCount() < 1)
-            throw new IllegalArgumentException("Step count must be greater than 0");
-        else if (stepDto.getStartTime() == null)
-            throw new DateTimeValueException("Start time cant be null");
-        else if (stepDto.getEndTime() == null)
-            throw new DateTimeValueException("End time cant be null");
-        else if (stepDto.getUploadTime() == null)
-            throw new DateTimeValueException("Upload time cant be null");
-        else
-            return true;
+    /**
+     * Compares each pair of time fields once. A start time after the end time breaks both the rule of this class
+     * and the {@link DateTimeRange} constraint; equal start and end times, or an end time after the upload time,
+     * only break the constraint. The start time can only be after the upload time if one of those is broken.
+     */
+    private static int findTimeViolations(long startSecond, int startNano, long endSecond, int endNano,
+                                          long uploadSecond, int uploadNano) {
+        int startComparedToEnd = compare(startSecond, startNano, endSecond, endNano);
+        int violations = StepDataViolation.NONE;
+        if (startComparedToEnd > 0)
+            violations |= StepDataViolation.END_BEFORE_START | StepDataViolation.TIME_RANGE;
+        else if (startComparedToEnd == 0 || compare(endSecond, endNano, uploadSecond, uploadNano) > 0)
+            violations |= StepDataViolation.TIME_RANGE;
+        return violations;
     }
 
-    private boolean timeFieldsAreCorrect(StepDTO stepDto) {
-        if (stepDto.getEndTime().isBefore(stepDto.getStartTime())){
-            throw new DateTimeValueException("Start time must be before end time\n" + notValidDTOString(stepDto));
-        } else {
-            return true;
-        }
+    private static int compare(long second, int nano, long otherSecond, int otherNano) {
+        int comparison = Long.compare(second, otherSecond);
+        return comparison != 0 ? comparison : Integer.compare(nano, otherNano);
+    }
+
+    /**
+     * Checks if the fields of the {@link StepDTO} are null or not and if the time-fields are ok.
+     * The time-fields are seen as ok if startTime is not after endTime. The order of the upload time is left to the
+     * {@link DateTimeRange} constraint.
+     *
+     * @param stepDto the {@link StepDTO} object holding the data to validate
+     * @return true if no fields are null and the time-fields are ok, false and throws exception otherwise
+     */
+    private boolean stepDtoIsValid(StepDTO stepDto) {
+        var violations = findViolations(stepDto) & StepDataViolation.STEP_VALIDATOR_RULES;
+        if (violations != StepDataViolation.NONE)
+            throw toException(violations, stepDto);
+        return true;
     }
 
 
@@ -0,0 +1,82 @@
+package se.pbt.stepcounter.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import se.pbt.stepcounter.mapper.CalendarBucketTable;
+import se.pbt.stepcounter.mapper.DateHelper;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the year, week and month of step data with a lookup in the {@link CalendarBucketTable} with the
+ * calculation {@link DateHelper#getWeek(ZonedDateTime)} did before the table, for a year of hourly samples.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) se.pbt.stepcounter.benchmark.CalendarBucketBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalendarBucketBenchmark {
+
+    private static final int SAMPLES = 24 * 365;
+
+    private ZonedDateTime[] startTimes;
+
+    @Setup
+    public void setUp() {
+        startTimes = new ZonedDateTime[SAMPLES];
+        var start = LocalDateTime.of(2023, 1, 1, 0, 0).atZone(ZoneId.of("Europe/Stockholm"));
+        for (int i = 0; i < SAMPLES; i++)
+            startTimes[i] = start.plusHours(i);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long tableLookup() {
+        long sum = 0;
+        for (ZonedDateTime startTime : startTimes) {
+            var bucket = CalendarBucketTable.ALIGNED.lookup(startTime);
+            sum += CalendarBucketTable.getYear(bucket) + CalendarBucketTable.getWeek(bucket) + CalendarBucketTable.getMonth(bucket);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long previousDateHelper() {
+        long sum = 0;
+        for (ZonedDateTime startTime : startTimes)
+            sum += startTime.getYear() + previousGetWeek(startTime) + startTime.getMonthValue();
+        return sum;
+    }
+
+    /**
+     * The calculation of {@link DateHelper#getWeek(ZonedDateTime)} before the table
+     */
+    private static int previousGetWeek(ZonedDateTime time) {
+        var date = LocalDate.ofYearDay(time.getYear(), time.getDayOfYear());
+        return Math.min(date.get(ChronoField.ALIGNED_WEEK_OF_YEAR), 52);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CalendarBucketBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package se.pbt.stepcounter.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.DateTimeValueException;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.exception.InvalidUserIdException;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+import se.pbt.stepcounter.validator.DateTimeRangeValidator;
+import se.pbt.stepcounter.validator.StepDataViolation;
+import se.pbt.stepcounter.validator.boostappvalidator.StepValidator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass violation check of {@link StepValidator#findViolations(StepDTO)} with the earlier
+ * validation, which threw an exception for each bad field and then ran the {@link DateTimeRangeValidator}.
+ * Both are measured on a valid item and on the kinds of bad items sent by faulty app versions.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) se.pbt.stepcounter.benchmark.StepValidationBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepValidationBenchmark {
+
+    @Param({"VALID", "STEP_COUNT_TOO_LOW", "END_BEFORE_START", "NULL_UPLOAD_TIME", "UPLOADED_BEFORE_END"})
+    public String item;
+
+    private final StepValidator stepValidator = new StepValidator();
+    private final DateTimeRangeValidator dateTimeRangeValidator = new DateTimeRangeValidator();
+    private StepDTO stepDTO;
+
+    @Setup
+    public void setUp() {
+        stepDTO = new TestObjectBuilder(2023).getTestStepDTO();
+        switch (item) {
+            case "STEP_COUNT_TOO_LOW":
+                stepDTO.setStepCount(0);
+                break;
+            case "END_BEFORE_START":
+                stepDTO.setEndTime(stepDTO.getStartTime().minusMinutes(1));
+                break;
+            case "NULL_UPLOAD_TIME":
+                stepDTO.setUploadTime(null);
+                break;
+            case "UPLOADED_BEFORE_END":
+                stepDTO.setUploadTime(stepDTO.getEndTime().minusMinutes(1));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        var violations = stepValidator.findViolations(stepDTO);
+        blackhole.consume(violations == StepDataViolation.NONE ? null : StepDataViolation.toMessage(violations));
+    }
+
+    @Benchmark
+    public void exceptionsThenDateTimeRange(Blackhole blackhole) {
+        blackhole.consume(previousRejectionMessage(stepDTO));
+    }
+
+    /**
+     * The validation of a batch item before the single-pass check: the checks of StepValidator, reporting the first
+     * bad field with an exception, followed by the DateTimeRange rule.
+     */
+    private String previousRejectionMessage(StepDTO stepDto) {
+        try {
+            if (stepDto == null)
+                throw new InvalidStepDataException("Object holding new data cant be null");
+            if (stepDto.getUserId() == null)
+                throw new InvalidUserIdException("User ID cant be null");
+            else if (stepDto.getStepCount() < 1)
+                throw new IllegalArgumentException("Step count must be greater than 0");
+            else if (stepDto.getStartTime() == null)
+                throw new DateTimeValueException("Start time cant be null");
+            else if (stepDto.getEndTime() == null)
+                throw new DateTimeValueException("End time cant be null");
+            else if (stepDto.getUploadTime() == null)
+                throw new DateTimeValueException("Upload time cant be null");
+            if (stepDto.getEndTime().isBefore(stepDto.getStartTime()))
+                throw new DateTimeValueException("Start time must be before end time\n" + stepValidator.notValidDTOString(stepDto));
+        } catch (InvalidStepDataException | InvalidUserIdException | DateTimeValueException | IllegalArgumentException exception) {
+            return exception.getMessage();
+        }
+        return dateTimeRangeValidator.isValid(stepDto, null) ? null
+                : "Start time must before end time, which in turn must be before uploaded time";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StepValidationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package se.pbt.stepcounter.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import se.pbt.stepcounter.dto.stepdto.WeeklyStepDTO;
+import se.pbt.stepcounter.model.WeekStep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building and writing the response of the weekly step count endpoint from a year of {@link WeekStep} objects
+ * as an array of step counts with building and writing it as the list of boxed step counts it was before.
+ * Run with the GC profiler to see the garbage of each request in gc.alloc.rate.norm.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) se.pbt.stepcounter.benchmark.WeeklyStepResponseBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeeklyStepResponseBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
+    private List<WeekStep> weekSteps;
+
+    @Setup
+    public void setUp() {
+        weekSteps = new ArrayList<>();
+        for (int week = 1; week <= 52; week++)
+            weekSteps.add(new WeekStep("benchmarkUser", week, 2023, 40000 + week * 97));
+    }
+
+    @Benchmark
+    public int primitiveArray() throws IOException {
+        var weeklyStepCounts = new int[WeeklyStepDTO.WEEK_SLOTS];
+        for (WeekStep weekStep : weekSteps) {
+            int weekNumber = weekStep.getWeek();
+            if (weekNumber >= 1 && weekNumber < WeeklyStepDTO.WEEK_SLOTS)
+                weeklyStepCounts[weekNumber] = weekStep.getStepCount();
+        }
+        return write(new WeeklyStepDTO("benchmarkUser", weeklyStepCounts));
+    }
+
+    @Benchmark
+    public int previousBoxedList() throws IOException {
+        ArrayList<Integer> weeklyStepCountList = new ArrayList<>(Collections.nCopies(53, 0));
+        for (WeekStep weekStep : weekSteps) {
+            int weekNumber = weekStep.getWeek();
+            int weekStepCount = weekStep.getStepCount();
+            if (weekNumber >= 1 && weekNumber <= 52)
+                weeklyStepCountList.set(weekNumber, weekStepCount);
+        }
+        return write(new PreviousWeeklyStepDTO("benchmarkUser", weeklyStepCountList));
+    }
+
+    private int write(Object response) throws IOException {
+        output.reset();
+        objectMapper.writeValue(output, response);
+        return output.size();
+    }
+
+    /**
+     * The weekly step response before it held an array, written by the default bean serializer
+     */
+    public static class PreviousWeeklyStepDTO {
+        private final String userId;
+        private final ArrayList<Integer> weeklySteps;
+
+        PreviousWeeklyStepDTO(String userId, ArrayList<Integer> weeklySteps) {
+            this.userId = userId;
+            this.weeklySteps = weeklySteps;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public ArrayList<Integer> getWeeklySteps() {
+            return weeklySteps;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WeeklyStepResponseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -6,12 +6,14 @@
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -22,25 +24,49 @@
 import se.pbt.stepcounter.dto.starpointdto.BulkUserStarPointsDTO;
 import se.pbt.stepcounter.dto.starpointdto.RequestStarPointsDTO;
 import se.pbt.stepcounter.dto.starpointdto.StarPointDateDTO;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.dto.stepdto.BatchStepCountRequestDTO;
 import se.pbt.stepcounter.dto.stepdto.DailyWeekStepDTO;
+import se.pbt.stepcounter.dto.stepdto.IngestReceiptDTO;
+import se.pbt.stepcounter.dto.stepdto.NdjsonImportSummaryDTO;
 import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.dto.stepdto.StepHistoryPageDTO;
+import se.pbt.stepcounter.dto.stepdto.WeeklyStepDTO;
+import se.pbt.stepcounter.dto.stepdto.YearlyStepSummaryDTO;
+import se.pbt.stepcounter.exception.IngestQueueFullException;
 import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.exception.handler.GlobalExceptionHandler;
+import se.pbt.stepcounter.mapper.BinaryStepReader;
+import se.pbt.stepcounter.mapper.BinaryStepWriter;
+import se.pbt.stepcounter.mapper.StepDTOStreamReader;
 import se.pbt.stepcounter.model.Step;
+import se.pbt.stepcounter.model.WeekStep;
 import se.pbt.stepcounter.repository.StepRepository;
+import se.pbt.stepcounter.service.NdjsonStepImporter;
+import se.pbt.stepcounter.service.StepExporter;
 import se.pbt.stepcounter.service.StarPointService;
+import se.pbt.stepcounter.service.StepIngestQueue;
 import se.pbt.stepcounter.service.StepService;
 import se.pbt.stepcounter.testobjects.TestObjectBuilder;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -48,21 +74,34 @@
 @SpringBootTest
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class StepControllerTest {
+    private static final long EXPORT_TIMEOUT_MINUTES = 60;
+
     @MockBean
     private StarPointService starPointService;
     @MockBean
     private StepService stepService;
+    @MockBean
+    private StepIngestQueue stepIngestQueue;
+    @MockBean
+    private NdjsonStepImporter ndjsonStepImporter;
+    @MockBean
+    private StepExporter stepExporter;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @Autowired
+    private ObjectMapper applicationObjectMapper;
+
     @Autowired
     private StepRepository stepRepository;
+    @Autowired
+    private StepDTOStreamReader stepDTOStreamReader;
 
     @Nested
     @DisplayName("StepController:")
     class StepControllerDevTest {
 
-        private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StepController(stepService)).build();
+        private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StepController(stepService, stepIngestQueue, stepDTOStreamReader, ndjsonStepImporter, stepExporter, EXPORT_TIMEOUT_MINUTES)).build();
         private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
         private final String testUserId = "testUser";
 
@@ -130,7 +169,7 @@ public void shouldRegisterUserSteps() throws Exception {
 
                 // Mock the addSingleStepForUser method of the step service
                 when(stepService.addSingleStepForUser(Mockito.anyString(),
-                        Mockito.any(StepDTO.class))).thenReturn(mockStep);
+                        Mockito.any(StepDTO.class), Mockito.isNull())).thenReturn(mockStep);
 
                 // Build the request to add the user steps
                 RequestBuilder requestBuilder = MockMvcRequestBuilders
@@ -147,6 +186,53 @@ public void shouldRegisterUserSteps() throws Exception {
                 assertEquals(HttpStatus.OK.value(), response.getStatus()); // Assert that the response status is 200 OK
                 assertTrue(response.getContentAsString().contains(testUserId)); // Assert that the response body contains the user ID
             }
+
+            @Test
+            @DisplayName("Passes the Idempotency-Key header to the service")
+            public void shouldPassIdempotencyKey() throws Exception {
+                // Set up: create objects needed for the test with the test object builder classes
+                objectMapper.registerModule(new JavaTimeModule());
+                var mockStep = testObjectBuilder.getTestStep();
+
+                // Mock the service to only answer uploads carrying the key
+                when(stepService.addSingleStepForUser(Mockito.eq(testUserId),
+                        Mockito.any(StepDTO.class), Mockito.eq("upload-1"))).thenReturn(mockStep);
+
+                // Perform the request with the header and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/{userId}", testUserId)
+                                .header("Idempotency-Key", "upload-1")
+                                .content(objectMapper.writeValueAsString(testObjectBuilder.getTestStepDTO()))
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.userId").value(testUserId));
+            }
+            @Test
+            @DisplayName("Keeps the zone of the uploaded times when read by the ObjectMapper of the application")
+            public void shouldKeepUploadedZoneWithApplicationObjectMapper() throws Exception {
+                // Arrange: Read the request body with the ObjectMapper the application is configured with
+                var applicationMockMvc = MockMvcBuilders.standaloneSetup(new StepController(stepService, stepIngestQueue,
+                                stepDTOStreamReader, ndjsonStepImporter, stepExporter, EXPORT_TIMEOUT_MINUTES))
+                        .setMessageConverters(new MappingJackson2HttpMessageConverter(applicationObjectMapper))
+                        .build();
+                var stepDTOCaptor = ArgumentCaptor.forClass(StepDTO.class);
+                when(stepService.addSingleStepForUser(eq(testUserId), stepDTOCaptor.capture(), Mockito.isNull()))
+                        .thenReturn(testObjectBuilder.getTestStep());
+                var body = "{\"userId\":\"" + testUserId + "\",\"stepCount\":100," +
+                        "\"startTime\":\"2023-01-02T10:00:00+01:00[Europe/Stockholm]\"," +
+                        "\"endTime\":\"2023-01-02T10:30:00+01:00[Europe/Stockholm]\"," +
+                        "\"uploadTime\":\"2023-01-02T11:00:00+01:00[Europe/Stockholm]\"}";
+
+                // Act
+                applicationMockMvc.perform(MockMvcRequestBuilders.post("/steps/{userId}", testUserId)
+                                .content(body)
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk());
+
+                // Assert that the service gets the zone of the upload, not UTC, to register for the user
+                var startTime = stepDTOCaptor.getValue().getStartTime();
+                assertEquals(ZoneId.of("Europe/Stockholm"), startTime.getZone());
+                assertEquals(10, startTime.getHour());
+            }
         }
 
         @Nested
@@ -194,6 +280,182 @@ public void registerMultipleStepsWithValidInput() throws Exception {
             }
         }
 
+        @Nested
+        @DisplayName("streamStepListForUser(): ")
+        public class StreamStepListForUserTest {
+
+            @Test
+            @DisplayName("Returns 201 CREATED when successfully adding steps")
+            public void streamMultipleStepsWithValidInput() throws Exception {
+                // Register JavaTimeModule in objectMapper to serialize/deserialize Java 8 Date/Time API types
+                objectMapper.registerModule(new JavaTimeModule());
+
+                // Create two StepDTO objects representing steps taken during the first and second minutes of the year
+                var dto1 = testObjectBuilder.getTestStepDTO();
+                var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 1);
+
+                // Mock the stepService to return a Step object when the streamed data is added
+                when(stepService.addStreamedStepsForUser(Mockito.anyString(), Mockito.any())).thenReturn(
+                        new Step(testUserId, 40, dto1.getStartTime(), dto2.getEndTime(), dto2.getUploadTime()));
+
+                // Perform the request and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/stream/multiple/{userId}", testUserId)
+                                .content(objectMapper.writeValueAsString(List.of(dto1, dto2)))
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isCreated())
+                        .andExpect(jsonPath("$.stepCount").value(40));
+            }
+        }
+
+        @Nested
+        @DisplayName("addStepsForMultipleUsers(): ")
+        public class AddStepsForMultipleUsersTest {
+
+            @Test
+            @DisplayName("Returns 200 OK and the status of each item")
+            public void shouldReturnStatusOfEachItem() throws Exception {
+                // Register JavaTimeModule in objectMapper to serialize/deserialize Java 8 Date/Time API types
+                objectMapper.registerModule(new JavaTimeModule());
+                var stepDTOList = List.of(testObjectBuilder.getTestStepDTO(), testObjectBuilder.getTestStepDTO());
+
+                // Mock the service to accept the first item and reject the second
+                when(stepService.addStepsForMultipleUsers(Mockito.anyList())).thenReturn(List.of(
+                        BatchItemStatusDTO.accepted(0, testUserId),
+                        BatchItemStatusDTO.rejected(1, testUserId, "Step count must be greater than 0")));
+
+                // Perform the request and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/batch")
+                                .accept(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(stepDTOList))
+                                .characterEncoding("utf-8")
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$[0].status").value("ACCEPTED"))
+                        .andExpect(jsonPath("$[1].status").value("REJECTED"))
+                        .andExpect(jsonPath("$[1].index").value(1));
+            }
+        }
+
+        @Nested
+        @DisplayName("addBinaryStepForUser(): ")
+        public class AddBinaryStepForUserTest {
+
+            @Test
+            @DisplayName("Returns 200 OK and passes the decoded sample to the service")
+            public void shouldDecodeSingleSample() throws Exception {
+                var stepDTO = testObjectBuilder.getTestStepDTO();
+                var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(stepDTO));
+
+                // Mock the service to only answer a sample with the encoded step count
+                when(stepService.addSingleStepForUser(Mockito.eq(testUserId),
+                        Mockito.argThat(dto -> dto != null && dto.getStepCount() == stepDTO.getStepCount()), Mockito.isNull()))
+                        .thenReturn(testObjectBuilder.getTestStep());
+
+                // Perform the request and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/{userId}", testUserId)
+                                .content(bytes)
+                                .contentType(BinaryStepReader.MEDIA_TYPE))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.userId").value(testUserId));
+            }
+
+            @Test
+            @DisplayName("Returns 201 CREATED for an upload of several samples")
+            public void shouldPassReaderForMultipleSamples() throws Exception {
+                var stepDTO = testObjectBuilder.getTestStepDTO();
+                var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(),
+                        List.of(stepDTO, testObjectBuilder.copyAndPostponeMinutes(stepDTO, 1)));
+
+                // Mock the service to return a Step object for any binary upload
+                when(stepService.addBinaryStepsForUser(Mockito.anyString(), Mockito.any()))
+                        .thenReturn(testObjectBuilder.getTestStep());
+
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/multiple/{userId}", testUserId)
+                                .content(bytes)
+                                .contentType(BinaryStepReader.MEDIA_TYPE))
+                        .andExpect(status().isCreated());
+            }
+        }
+
+        @Nested
+        @DisplayName("addNdjsonSteps(): ")
+        public class AddNdjsonStepsTest {
+
+            @Test
+            @DisplayName("Returns 200 OK and the import summary")
+            public void shouldReturnImportSummary() throws Exception {
+                // Mock the importer to accept one line and reject another
+                when(ndjsonStepImporter.importSteps(Mockito.any())).thenReturn(new NdjsonImportSummaryDTO(1, 1,
+                        List.of(BatchItemStatusDTO.rejected(2, testUserId, "Step count must be greater than 0")), 2, null, 5));
+
+                // Perform the request and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/ndjson")
+                                .content("{}\n{}\n")
+                                .contentType("application/x-ndjson"))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.acceptedCount").value(1))
+                        .andExpect(jsonPath("$.rejectedLines[0].index").value(2));
+            }
+
+            @Test
+            @DisplayName("Returns 503 Service Unavailable and the partial summary when the import stopped on a failure")
+            public void shouldReturnPartialSummaryOnFailure() throws Exception {
+                // Mock the importer to have stored the first chunk before the database failed
+                when(ndjsonStepImporter.importSteps(Mockito.any())).thenReturn(new NdjsonImportSummaryDTO(2, 0,
+                        List.of(), 2, "Could not store lines 3 to 4: Database is down", 5));
+
+                // Perform the request and assert the response
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/ndjson")
+                                .content("{}\n{}\n{}\n{}\n")
+                                .contentType("application/x-ndjson"))
+                        .andExpect(status().isServiceUnavailable())
+                        .andExpect(jsonPath("$.acceptedCount").value(2))
+                        .andExpect(jsonPath("$.lastCommittedLine").value(2));
+            }
+        }
+
+        @Nested
+        @DisplayName("queueStepForUser(): ")
+        public class QueueStepForUserTest {
+
+            private final MockMvc mockMvcWithAdvice = MockMvcBuilders.standaloneSetup(new StepController(stepService, stepIngestQueue, stepDTOStreamReader, ndjsonStepImporter, stepExporter, EXPORT_TIMEOUT_MINUTES))
+                    .setControllerAdvice(new GlobalExceptionHandler())
+                    .build();
+
+            @Test
+            @DisplayName("Returns 202 Accepted and a receipt")
+            public void shouldReturnReceipt() throws Exception {
+                // Register JavaTimeModule in objectMapper to serialize/deserialize Java 8 Date/Time API types
+                objectMapper.registerModule(new JavaTimeModule());
+                var receipt = new IngestReceiptDTO("receipt", testUserId, IngestReceiptDTO.Status.QUEUED, null);
+                when(stepIngestQueue.submitSingleStep(Mockito.eq(testUserId), any(StepDTO.class))).thenReturn(receipt);
+
+                // Perform the request and assert the response
+                mockMvcWithAdvice.perform(MockMvcRequestBuilders.post("/steps/async/{userId}", testUserId)
+                                .content(objectMapper.writeValueAsString(testObjectBuilder.getTestStepDTO()))
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isAccepted())
+                        .andExpect(jsonPath("$.receiptId").value("receipt"))
+                        .andExpect(jsonPath("$.status").value("QUEUED"));
+            }
+
+            @Test
+            @DisplayName("Returns 503 Service Unavailable with Retry-After when the queue is full")
+            public void shouldReturnRetryAfterWhenQueueIsFull() throws Exception {
+                // Register JavaTimeModule in objectMapper to serialize/deserialize Java 8 Date/Time API types
+                objectMapper.registerModule(new JavaTimeModule());
+                when(stepIngestQueue.submitSingleStep(Mockito.eq(testUserId), any(StepDTO.class)))
+                        .thenThrow(new IngestQueueFullException(5));
+
+                // Perform the request and assert the response
+                mockMvcWithAdvice.perform(MockMvcRequestBuilders.post("/steps/async/{userId}", testUserId)
+                                .content(objectMapper.writeValueAsString(testObjectBuilder.getTestStepDTO()))
+                                .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isServiceUnavailable())
+                        .andExpect(header().string("Retry-After", "5"));
+            }
+        }
+
         @Nested
         @DisplayName("getUserWeekStepCountForWeekAndYear(): ")
         public class GetUserWeekStepCountForWeekAndYearTest {
@@ -246,6 +508,216 @@ public void getUserWeekStepSteps_WithValidInput_ReturnsStatusOKAndCorrectSteps()
             }
         }
 
+        @Nested
+        @DisplayName("getStepCountForUserPerWeek(): ")
+        public class GetStepCountForUserPerWeekTest {
+
+            @Test
+            @DisplayName("getStepCountForUserPerWeek returns the weekly step counts as one array, including week 53")
+            public void getStepCountForUserPerWeek_ReturnsWeeklyStepArray() throws Exception {
+                // Set up test data
+                String url = "/steps/stepcount/user/{userId}/year/{year}/weekly";
+                int year = 2020;
+                var weeklySteps = new int[WeeklyStepDTO.WEEK_SLOTS];
+                weeklySteps[1] = 300;
+                weeklySteps[53] = 800;
+
+                // Set up mock behavior
+                when(stepService.getStepCountPerWeekForUser(testUserId, year)).thenReturn(new WeeklyStepDTO(testUserId, weeklySteps));
+
+                // Perform the test
+                mockMvc.perform(get(url, testUserId, year))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                        .andExpect(jsonPath("$.userId").value(testUserId))
+                        .andExpect(jsonPath("$.weeklySteps.length()").value(54))
+                        .andExpect(jsonPath("$.weeklySteps[1]").value(300))
+                        .andExpect(jsonPath("$.weeklySteps[53]").value(800));
+            }
+        }
+
+        @Nested
+        @DisplayName("exportSteps(): ")
+        public class ExportStepsTest {
+
+            @Test
+            @DisplayName("Streams the output of the exporter with the content type of the format")
+            public void exportSteps_StreamsExporterOutput() throws Exception {
+                // Arrange: Let the exporter write a single CSV row
+                doAnswer(invocation -> {
+                    OutputStream outputStream = invocation.getArgument(4);
+                    outputStream.write("id,userId\n1,User1\n".getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                }).when(stepExporter).export(eq(StepExporter.Table.WEEK_STEP), eq("User1"), eq(StepExporter.Format.CSV),
+                        eq(false), any(OutputStream.class));
+
+                // Act: Start the export, and dispatch the streamed response body
+                var result = mockMvc.perform(get("/steps/export")
+                                .param("table", "WEEK_STEP")
+                                .param("userId", "User1")
+                                .param("format", "CSV"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn();
+
+                // Assert
+                mockMvc.perform(asyncDispatch(result))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string("Content-Type", "text/csv"))
+                        .andExpect(content().string("id,userId\n1,User1\n"));
+            }
+
+            @Test
+            @DisplayName("Runs the export with the export timeout instead of the default async timeout")
+            public void exportSteps_UsesExportTimeout() throws Exception {
+                // Act: Start the export
+                var result = mockMvc.perform(get("/steps/export"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn();
+
+                // Assert
+                assertEquals(EXPORT_TIMEOUT_MINUTES * 60_000, result.getRequest().getAsyncContext().getTimeout());
+                mockMvc.perform(asyncDispatch(result))
+                        .andExpect(status().isOk());
+            }
+        }
+
+        @Nested
+        @DisplayName("getStepHistoryForUser(): ")
+        public class GetStepHistoryForUserTest {
+
+            @Test
+            @DisplayName("Returns the page read with the given cursor and limit")
+            public void getStepHistoryForUser_ReturnsPageWithNextCursor() throws Exception {
+                var step = new Step();
+                step.setUserId("User1");
+                when(stepService.getStepHistory("User1", "cursor1", 1))
+                        .thenReturn(new StepHistoryPageDTO("User1", List.of(step), "cursor2"));
+
+                mockMvc.perform(get("/steps/history/{userId}", "User1")
+                                .param("after", "cursor1")
+                                .param("limit", "1"))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.steps[0].userId").value("User1"))
+                        .andExpect(jsonPath("$.nextCursor").value("cursor2"));
+            }
+        }
+
+        @Nested
+        @DisplayName("getStepCountsForMultipleUsers(): ")
+        public class GetStepCountsForMultipleUsersTest {
+
+            @Test
+            @DisplayName("Returns the step count of each requested user as a map")
+            public void getStepCountsForMultipleUsers_ReturnsMapOfUserIdToStepCount() throws Exception {
+                var request = new BatchStepCountRequestDTO(List.of("User1", "User2"), 2023, 10, null);
+                var stepCountByUser = new LinkedHashMap<String, Integer>();
+                stepCountByUser.put("User1", 1200);
+                stepCountByUser.put("User2", 0);
+                when(stepService.getStepCountsForUsers(any(BatchStepCountRequestDTO.class))).thenReturn(stepCountByUser);
+
+                mockMvc.perform(MockMvcRequestBuilders.post("/steps/stepcount/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.User1").value(1200))
+                        .andExpect(jsonPath("$.User2").value(0));
+            }
+        }
+
+        @Nested
+        @DisplayName("Conditional GET: ")
+        public class ConditionalGetTest {
+
+            @Test
+            @DisplayName("Returns the ETag of the users data version with the data")
+            public void getAllWeekSteps_WithoutIfNoneMatch_ReturnsDataAndETag() throws Exception {
+                when(stepService.getDataVersion(testUserId)).thenReturn(7L);
+                when(stepService.getWeekStepsForUserAndYear(testUserId, 2023)).thenReturn(List.of(new WeekStep(testUserId, 10, 2023, 500)));
+
+                mockMvc.perform(get("/steps/weeksteps/user/{userId}/year/{year}", testUserId, 2023))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string("ETag", "\"v7\""))
+                        .andExpect(jsonPath("$[0].stepCount").value(500));
+            }
+
+            @Test
+            @DisplayName("Returns 304 without reading the data when If-None-Match holds the current ETag")
+            public void getAllWeekSteps_WithCurrentETag_ReturnsNotModified() throws Exception {
+                // The mock is shared by all nested tests, so calls made by earlier tests are cleared first
+                clearInvocations(stepService);
+                when(stepService.getDataVersion(testUserId)).thenReturn(7L);
+
+                mockMvc.perform(get("/steps/weeksteps/user/{userId}/year/{year}", testUserId, 2023)
+                                .header("If-None-Match", "\"v7\""))
+                        .andExpect(status().isNotModified())
+                        .andExpect(content().string(""));
+
+                verify(stepService, never()).getWeekStepsForUserAndYear(testUserId, 2023);
+            }
+
+            @Test
+            @DisplayName("Returns the data when If-None-Match holds an older ETag")
+            public void getStepCount_WithOldETag_ReturnsData() throws Exception {
+                when(stepService.getDataVersion(testUserId)).thenReturn(8L);
+                when(stepService.getStepCountForUserYearAndWeek(testUserId, 2023, 10)).thenReturn(900);
+
+                mockMvc.perform(get("/steps/stepcount/{userId}/year/{year}/week/{week}", testUserId, 2023, 10)
+                                .header("If-None-Match", "\"v7\""))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string("ETag", "\"v8\""))
+                        .andExpect(content().string("900"));
+            }
+
+            @Test
+            @DisplayName("Includes the current day of the user in the ETag of the current week")
+            public void getCurrentWeekDaily_ETagChangesWithDay() throws Exception {
+                // The mock is shared by all nested tests, so calls made by earlier tests are cleared first
+                clearInvocations(stepService);
+                when(stepService.getDataVersion(testUserId)).thenReturn(7L);
+                when(stepService.getCurrentEpochDay(testUserId)).thenReturn(19700L);
+
+                mockMvc.perform(get("/steps/stepcount/{userId}/currentweekdaily", testUserId)
+                                .header("If-None-Match", "\"v7-19700\""))
+                        .andExpect(status().isNotModified());
+
+                verify(stepService, never()).getStepsPerDayForWeek(testUserId);
+            }
+        }
+
+        @Nested
+        @DisplayName("getYearlyStepSummaryForUser(): ")
+        public class GetYearlyStepSummaryForUserTest {
+
+            @Test
+            @DisplayName("getYearlyStepSummary with valid input returns status OK and the summary")
+            public void getYearlyStepSummary_WithValidInput_ReturnsStatusOKAndSummary() throws Exception {
+                // Set up test data
+                String url = "/steps/summary/{userId}/year/{year}";
+                int year = 2023;
+                var weeklySteps = new int[WeeklyStepDTO.WEEK_SLOTS];
+                weeklySteps[10] = 1500;
+                var monthlySteps = new int[12];
+                monthlySteps[2] = 1500;
+                var expectedSummary = new YearlyStepSummaryDTO(testUserId, year, weeklySteps, monthlySteps);
+
+                // Set up mock behavior
+                when(stepService.getYearlyStepSummary(testUserId, year)).thenReturn(expectedSummary);
+
+                // Perform the test
+                MvcResult result = mockMvc.perform(get(url, testUserId, year))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.yearlyStepCount").value(1500))
+                        .andExpect(jsonPath("$.weeklySteps[10]").value(1500))
+                        .andExpect(jsonPath("$.bestWeek").value(10))
+                        .andExpect(jsonPath("$.bestMonth").value(3))
+                        .andReturn();
+
+                // Verify the response
+                String expectedJsonResponse = objectMapper.writeValueAsString(expectedSummary);
+                assertEquals(expectedJsonResponse, result.getResponse().getContentAsString());
+            }
+        }
+
         @Nested
         @DisplayName("getUserMonthStepCountForYearAndMonth(): ")
         public class GetUserMonthStepCountForYearAndMonthTest {
@@ -297,14 +769,14 @@ public void testGetUserMonthStepsWithValidInput() throws Exception {
     @DisplayName("getStepCountByDayForUserCurrentWeek(): ")
     class GetStepCountByDayForUserCurrentWeekTest {
 
-        private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StepController(stepService)).build();
+        private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StepController(stepService, stepIngestQueue, stepDTOStreamReader, ndjsonStepImporter, stepExporter, EXPORT_TIMEOUT_MINUTES)).build();
 
         @Test
         @DisplayName("Returns correct fields and content type")
         public void testGetStepCountByDayForUserAndDate() throws Exception {
             // Set up test data
             String userId = "123";
-            DailyWeekStepDTO dailyWeekStepDTO = new DailyWeekStepDTO(userId, 1, new ArrayList<>(Collections.nCopies(7, 0)));
+            DailyWeekStepDTO dailyWeekStepDTO = new DailyWeekStepDTO(userId, 1, new int[7]);
 
             // Mock the stepService and set the expected return value
             when(stepService.getStepsPerDayForWeek(userId)).thenReturn(dailyWeekStepDTO);
@@ -334,7 +806,7 @@ public void testGetStepCountByDayForUserAndDate() throws Exception {
         public void testGetStepCountByDayForUserAndDate_whenWeekStepDTONotNull() throws Exception {
             // Set up test data
             String userId = "123";
-            DailyWeekStepDTO dailyWeekStepDTO = new DailyWeekStepDTO(userId, 1, new ArrayList<>(Collections.nCopies(7, 0)));
+            DailyWeekStepDTO dailyWeekStepDTO = new DailyWeekStepDTO(userId, 1, new int[7]);
 
             // Mock the stepService and set the expected return value
             when(stepService.getStepsPerDayForWeek(userId)).thenReturn(dailyWeekStepDTO);
@@ -363,10 +835,10 @@ public void testGetStepCountByDayForUserAndDate_whenWeekStepDTONotNull() throws
         public void testGetStepCountByDayForUserAndDateWithValidValues() throws Exception {
             // Set up test data
             String userId = "123";
-            List<Integer> weekStepCountByDay = new ArrayList<>(Collections.nCopies(7, 0));
-            weekStepCountByDay.set(0, 10);
-            weekStepCountByDay.set(1, 20);
-            weekStepCountByDay.set(6, 666);
+            int[] weekStepCountByDay = new int[7];
+            weekStepCountByDay[0] = 10;
+            weekStepCountByDay[1] = 20;
+            weekStepCountByDay[6] = 666;
             DailyWeekStepDTO dailyWeekStepDTO = new DailyWeekStepDTO(userId, 1, weekStepCountByDay);
 
             // Set up mock service
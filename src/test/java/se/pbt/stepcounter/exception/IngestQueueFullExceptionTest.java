@@ -0,0 +1,29 @@
+package se.pbt.stepcounter.exception;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+@DisplayName("IngestQueueFullException:")
+public class IngestQueueFullExceptionTest {
+
+    @Test
+    @DisplayName("Test IngestQueueFullException Constructor with Error Message")
+    public void testConstructorWithErrorMessage() {
+        String errorMessage = "Error Message";
+        IngestQueueFullException exception = new IngestQueueFullException(errorMessage, 10);
+        Assertions.assertEquals(errorMessage, exception.getMessage(), "Error message is not correct");
+        Assertions.assertEquals(10, exception.getRetryAfterSeconds(), "Retry delay is not correct");
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus(), "HTTP status is not correct");
+    }
+
+    @Test
+    @DisplayName("Test IngestQueueFullException Default Message")
+    public void testDefaultMessage() {
+        IngestQueueFullException exception = new IngestQueueFullException(5);
+        String defaultErrorMessage = "Ingest queue is full, retry later";
+        Assertions.assertEquals(defaultErrorMessage, exception.getMessage(), "Error message is not correct");
+        Assertions.assertEquals(5, exception.getRetryAfterSeconds(), "Retry delay is not correct");
+    }
+}
@@ -0,0 +1,84 @@
+package se.pbt.stepcounter.mapper;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BinaryStepReader:")
+class BinaryStepReaderTest {
+
+    private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
+
+    @Test
+    @DisplayName("Decodes the samples written by BinaryStepWriter")
+    public void testNext_DecodesWrittenSamples() throws Exception {
+        // Encode two samples, the second one earlier than the first to get a negative delta
+        var dto1 = testObjectBuilder.copyAndPostponeMinutes(testObjectBuilder.getTestStepDTO(), 90);
+        var dto2 = testObjectBuilder.getTestStepDTO();
+        dto2.setStepCount(100000);
+        var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(dto1, dto2));
+
+        var reader = new BinaryStepReader(new ByteArrayInputStream(bytes));
+
+        // Assert that the header and both samples are decoded
+        assertEquals(ZoneId.systemDefault(), reader.getZone());
+        assertEquals(2, reader.getSampleCount());
+        assertTrue(reader.next());
+        assertSample(dto1, reader);
+        assertTrue(reader.next());
+        assertSample(dto2, reader);
+        assertTrue(dto2.getStartTime().isEqual(reader.toStepDTO("testUser").getStartTime()));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    @DisplayName("Places samples in the calendar day of the upload zone, also across a daylight saving change")
+    public void testGetStartEpochDay_UsesZoneOffset() throws Exception {
+        // Samples just before midnight on both sides of the switch to summer time
+        var zone = ZoneId.of("Europe/Stockholm");
+        var winterDto = new StepDTO("testUser", 10, LocalDateTime.of(2023, 3, 25, 23, 30).atZone(zone),
+                LocalDateTime.of(2023, 3, 25, 23, 40).atZone(zone), LocalDateTime.of(2023, 3, 25, 23, 50).atZone(zone));
+        var summerDto = new StepDTO("testUser", 10, LocalDateTime.of(2023, 3, 26, 23, 30).atZone(zone),
+                LocalDateTime.of(2023, 3, 26, 23, 40).atZone(zone), LocalDateTime.of(2023, 3, 26, 23, 50).atZone(zone));
+        var reader = new BinaryStepReader(new ByteArrayInputStream(BinaryStepWriter.encode(zone, List.of(winterDto, summerDto))));
+
+        // Assert that each sample lands on its local day
+        reader.next();
+        assertEquals(winterDto.getStartTime().toLocalDate().toEpochDay(), reader.getStartEpochDay());
+        reader.next();
+        assertEquals(summerDto.getStartTime().toLocalDate().toEpochDay(), reader.getStartEpochDay());
+    }
+
+    @Test
+    @DisplayName("Throws 'InvalidStepDataException' when the data does not start with the format header")
+    public void testConstructor_ThrowsInvalidStepDataException_WhenHeaderIsWrong() {
+        assertThrows(InvalidStepDataException.class,
+                () -> new BinaryStepReader(new ByteArrayInputStream("{\"userId\"}".getBytes())));
+    }
+
+    @Test
+    @DisplayName("Throws 'InvalidStepDataException' when the data ends in the middle of a sample")
+    public void testNext_ThrowsInvalidStepDataException_WhenTruncated() throws Exception {
+        var bytes = BinaryStepWriter.encode(ZoneId.of("UTC"), List.of(testObjectBuilder.getTestStepDTO()));
+        var reader = new BinaryStepReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 2)));
+
+        assertThrows(InvalidStepDataException.class, reader::next);
+    }
+
+    private static void assertSample(StepDTO expected, BinaryStepReader reader) {
+        assertEquals(expected.getStartTime().toEpochSecond(), reader.getStartEpochSecond());
+        assertEquals(expected.getEndTime().toEpochSecond(), reader.getEndEpochSecond());
+        assertEquals(expected.getUploadTime().toEpochSecond(), reader.getUploadEpochSecond());
+        assertEquals(expected.getStepCount(), reader.getStepCount());
+    }
+}
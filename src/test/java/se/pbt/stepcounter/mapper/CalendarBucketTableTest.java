@@ -0,0 +1,86 @@
+package se.pbt.stepcounter.mapper;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.pbt.stepcounter.mapper.CalendarBucketTable.WeekDefinition;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CalendarBucketTable:")
+class CalendarBucketTableTest {
+
+    @Test
+    @DisplayName("Aligned buckets match the calculated year, week, month and day of week of every day in the table")
+    public void testLookup_AlignedMatchesCalculation() {
+        for (var date = CalendarBucketTable.FIRST_DAY; !date.isAfter(CalendarBucketTable.LAST_DAY); date = date.plusDays(1)) {
+            var bucket = CalendarBucketTable.ALIGNED.lookup(date.toEpochDay());
+
+            assertEquals(date.getYear(), CalendarBucketTable.getYear(bucket));
+            assertEquals(date.getYear(), CalendarBucketTable.getWeekYear(bucket));
+            assertEquals(Math.min(date.get(ChronoField.ALIGNED_WEEK_OF_YEAR), 52), CalendarBucketTable.getWeek(bucket));
+            assertEquals(date.getMonthValue(), CalendarBucketTable.getMonth(bucket));
+            assertEquals(date.getDayOfWeek().getValue(), CalendarBucketTable.getDayOfWeek(bucket));
+        }
+    }
+
+    @Test
+    @DisplayName("ISO buckets match the calculated week and week-based year of every day in the table")
+    public void testLookup_IsoMatchesCalculation() {
+        for (var date = CalendarBucketTable.FIRST_DAY; !date.isAfter(CalendarBucketTable.LAST_DAY); date = date.plusDays(1)) {
+            var bucket = CalendarBucketTable.ISO.lookup(date.toEpochDay());
+
+            assertEquals(date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR), CalendarBucketTable.getWeek(bucket));
+            assertEquals(date.get(IsoFields.WEEK_BASED_YEAR), CalendarBucketTable.getWeekYear(bucket));
+            assertEquals(date.getYear(), CalendarBucketTable.getYear(bucket));
+        }
+    }
+
+    @Test
+    @DisplayName("ISO weeks at the turn of the year belong to the year of their Thursday")
+    public void testLookup_IsoWeekAtTurnOfYear() {
+        // 2021-01-01 is a Friday in week 53 of 2020, 2024-12-30 is a Monday in week 1 of 2025
+        var newYearsDay = CalendarBucketTable.ISO.lookup(LocalDate.of(2021, 1, 1).toEpochDay());
+        var endOfYear = CalendarBucketTable.ISO.lookup(LocalDate.of(2024, 12, 30).toEpochDay());
+
+        assertEquals(53, CalendarBucketTable.getWeek(newYearsDay));
+        assertEquals(2020, CalendarBucketTable.getWeekYear(newYearsDay));
+        assertEquals(2021, CalendarBucketTable.getYear(newYearsDay));
+        assertEquals(1, CalendarBucketTable.getWeek(endOfYear));
+        assertEquals(2025, CalendarBucketTable.getWeekYear(endOfYear));
+        assertEquals(12, CalendarBucketTable.getMonth(endOfYear));
+    }
+
+    @Test
+    @DisplayName("Days outside the table are calculated")
+    public void testLookup_OutsideTable() {
+        var bucket = CalendarBucketTable.ALIGNED.lookup(LocalDate.of(2150, 3, 15).toEpochDay());
+
+        assertEquals(2150, CalendarBucketTable.getYear(bucket));
+        assertEquals(11, CalendarBucketTable.getWeek(bucket));
+        assertEquals(3, CalendarBucketTable.getMonth(bucket));
+    }
+
+    @Test
+    @DisplayName("Throws IllegalArgumentException for a year a bucket can not hold")
+    public void testLookup_YearOutOfRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CalendarBucketTable.ALIGNED.lookup(LocalDate.of(1800, 1, 1).toEpochDay()));
+    }
+
+    @Test
+    @DisplayName("Looks up a time on the day it falls on in its own zone")
+    public void testLookup_UsesZoneOfTime() {
+        // Monday 00:30 in Stockholm is still Sunday in UTC
+        var time = LocalDateTime.of(2023, 5, 8, 0, 30).atZone(ZoneId.of("Europe/Stockholm"));
+
+        assertEquals(1, CalendarBucketTable.getDayOfWeek(CalendarBucketTable.ALIGNED.lookup(time)));
+        assertEquals(7, CalendarBucketTable.getDayOfWeek(CalendarBucketTable.of(WeekDefinition.ALIGNED)
+                .lookup(time.withZoneSameInstant(ZoneId.of("UTC")))));
+    }
+}
@@ -0,0 +1,52 @@
+package se.pbt.stepcounter.mapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StepDTOStreamReader:")
+class StepDTOStreamReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final StepDTOStreamReader streamReader = new StepDTOStreamReader(objectMapper);
+    private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
+
+    @Test
+    @DisplayName("Reads every element of a JSON array in order")
+    public void testReadStepDTOs_ReadsAllElements() throws Exception {
+        // Write two StepDTO objects as a JSON array
+        var dto1 = testObjectBuilder.getTestStepDTO();
+        var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 1);
+        var json = objectMapper.writeValueAsBytes(List.of(dto1, dto2));
+
+        var result = new ArrayList<StepDTO>();
+        streamReader.readStepDTOs(new ByteArrayInputStream(json)).forEachRemaining(result::add);
+
+        // Assert that both objects were read
+        assertEquals(2, result.size());
+        assertTrue(dto2.getStartTime().isEqual(result.get(1).getStartTime()));
+        assertEquals(dto1.getStepCount(), result.get(0).getStepCount());
+    }
+
+    @Test
+    @DisplayName("Throws 'InvalidStepDataException' when the input is malformed")
+    public void testReadStepDTOs_ThrowsInvalidStepDataException_WhenMalformed() throws Exception {
+        var input = new ByteArrayInputStream("[{\"stepCount\": 5}, {\"stepCount\": ".getBytes(StandardCharsets.UTF_8));
+        var iterator = streamReader.readStepDTOs(input);
+
+        // Assert that the first element is read and the broken one is reported
+        assertEquals(5, iterator.next().getStepCount());
+        assertThrows(InvalidStepDataException.class, iterator::next);
+    }
+}
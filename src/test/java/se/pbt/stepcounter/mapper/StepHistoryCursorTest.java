@@ -0,0 +1,48 @@
+package se.pbt.stepcounter.mapper;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("StepHistoryCursor:")
+class StepHistoryCursorTest {
+
+    @Test
+    @DisplayName("Reads back the start time and ID it was written with")
+    public void testEncodeAndDecode_ReturnsSamePosition() {
+        var startTime = Instant.parse("2023-05-01T10:15:30.123456Z");
+        var encoded = new StepHistoryCursor(startTime, 4711).encode();
+
+        var cursor = StepHistoryCursor.decode(encoded);
+
+        assertEquals(startTime, cursor.getStartTime());
+        assertEquals(4711, cursor.getId());
+    }
+
+    @Test
+    @DisplayName("Throws IllegalArgumentException for a string that is not a cursor")
+    public void testDecode_InvalidCursor_ThrowsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> StepHistoryCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> StepHistoryCursor.decode("AAAA"));
+    }
+
+    @Test
+    @DisplayName("Throws IllegalArgumentException for a cursor whose start time is outside the range of an Instant")
+    public void testDecode_StartTimeOutOfRange_ThrowsIllegalArgumentException() {
+        var bytes = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES)
+                .putLong(Long.MAX_VALUE)
+                .putInt(0)
+                .putLong(4711)
+                .array();
+        var encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> StepHistoryCursor.decode(encoded));
+        assertEquals("Invalid history cursor: " + encoded, exception.getMessage());
+    }
+}
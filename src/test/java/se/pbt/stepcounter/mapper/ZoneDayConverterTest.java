@@ -0,0 +1,40 @@
+package se.pbt.stepcounter.mapper;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("ZoneDayConverter:")
+class ZoneDayConverterTest {
+
+    @Test
+    @DisplayName("Finds the day of the zone on both sides of a daylight saving transition")
+    public void testToEpochDay_AcrossDaylightSavingTransition() {
+        var zone = ZoneId.of("Europe/Stockholm");
+        var converter = new ZoneDayConverter(zone);
+
+        // Check times just after midnight in winter, in summer and back in winter, in that order
+        for (var time : new LocalDateTime[]{
+                LocalDateTime.of(2023, 3, 25, 0, 30),
+                LocalDateTime.of(2023, 3, 27, 0, 30),
+                LocalDateTime.of(2023, 10, 30, 0, 30),
+                LocalDateTime.of(2023, 3, 26, 23, 30)}) {
+            var zonedTime = time.atZone(zone);
+            assertEquals(zonedTime.toLocalDate().toEpochDay(), converter.toEpochDay(zonedTime.toEpochSecond()));
+        }
+    }
+
+    @Test
+    @DisplayName("Finds the day of a fixed offset zone")
+    public void testToEpochDay_FixedOffset() {
+        var converter = new ZoneDayConverter(ZoneOffset.ofHours(-5));
+        var time = LocalDateTime.of(1969, 12, 31, 23, 0).atOffset(ZoneOffset.ofHours(-5));
+
+        assertEquals(-1, converter.toEpochDay(time.toEpochSecond()));
+    }
+}
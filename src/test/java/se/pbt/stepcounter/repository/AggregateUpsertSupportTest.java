@@ -0,0 +1,146 @@
+package se.pbt.stepcounter.repository;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import se.pbt.stepcounter.model.UserDataVersion;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("AggregateUpsertSupport:")
+class AggregateUpsertSupportTest {
+
+    @Test
+    @DisplayName("Accepts PostgreSQL and H2")
+    public void testResolveDatabase_SupportedDatabases() throws Exception {
+        assertDoesNotThrow(() -> upsertSupportOn("PostgreSQL").resolveDatabase());
+        assertDoesNotThrow(() -> upsertSupportOn("H2").resolveDatabase());
+    }
+
+    @Test
+    @DisplayName("Falls back to JPA on any other database instead of sending it native statements")
+    public void testUpsert_OtherDatabase_UsesPortableFallback() throws Exception {
+        // Arrange
+        var upsertSupport = upsertSupportOn("Microsoft SQL Server");
+        var query = mock(Query.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.executeUpdate()).thenReturn(0);
+        var entityManager = mock(EntityManager.class);
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        ReflectionTestUtils.setField(upsertSupport, "entityManager", entityManager);
+
+        // Act
+        assertDoesNotThrow(upsertSupport::resolveDatabase);
+        var result = upsertSupport.upsert(List.of("user"));
+
+        // Assert that the missing row is persisted and that no native statement is run
+        assertArrayEquals(new int[]{1}, result);
+        verify(entityManager).persist(any(UserDataVersion.class));
+        verify(entityManager, never()).unwrap(Session.class);
+    }
+
+    @Test
+    @DisplayName("Upserts on PostgreSQL only the aggregates the update found no row for")
+    public void testUpsert_PostgresWithUpdate_UpsertsOnlyMissingRows() throws Exception {
+        // The update finds the rows of "a" and "c", but not of "b"
+        var update = mock(PreparedStatement.class);
+        when(update.executeBatch()).thenReturn(new int[]{1, 0, 1});
+        var upsert = mock(PreparedStatement.class);
+        when(upsert.executeBatch()).thenReturn(new int[]{1});
+        var connection = mock(Connection.class);
+        when(connection.prepareStatement("UPDATE")).thenReturn(update);
+        when(connection.prepareStatement("UPSERT")).thenReturn(upsert);
+        var upsertSupport = postgresUpsertSupportOn(connection);
+
+        var result = upsertSupport.upsert(List.of("a", "b", "c"));
+
+        // Assert that only "b" is upserted and that every aggregate is reported as written
+        assertArrayEquals(new int[]{1, 1, 1}, result);
+        verify(upsert).setString(1, "b");
+        verify(upsert, never()).setString(1, "a");
+        verify(upsert, never()).setString(1, "c");
+    }
+
+    @Test
+    @DisplayName("Does not prepare the upsert on PostgreSQL when the update found every row")
+    public void testUpsert_PostgresAllRowsUpdated_SkipsUpsert() throws Exception {
+        var update = mock(PreparedStatement.class);
+        when(update.executeBatch()).thenReturn(new int[]{1, 1});
+        var connection = mock(Connection.class);
+        when(connection.prepareStatement("UPDATE")).thenReturn(update);
+        var upsertSupport = postgresUpsertSupportOn(connection);
+
+        var result = upsertSupport.upsert(List.of("a", "b"));
+
+        assertArrayEquals(new int[]{1, 1}, result);
+        verify(connection, never()).prepareStatement("UPSERT");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AggregateUpsertSupport<String> postgresUpsertSupportOn(Connection connection) {
+        var session = mock(Session.class);
+        when(session.doReturningWork(any())).thenAnswer(invocation ->
+                ((ReturningWork<int[]>) invocation.getArgument(0)).execute(connection));
+        var entityManager = mock(EntityManager.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        var upsertSupport = new AggregateUpsertSupport<String>() {
+            @Override
+            protected String postgresUpsert() {
+                return "UPSERT";
+            }
+
+            @Override
+            protected String mergeUpsert() {
+                return "MERGE";
+            }
+
+            @Override
+            protected String postgresUpdate() {
+                return "UPDATE";
+            }
+
+            @Override
+            protected int portableUpsert(EntityManager entityManager, String aggregate) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            protected void bind(PreparedStatement statement, String aggregate) throws SQLException {
+                statement.setString(1, aggregate);
+            }
+        };
+        ReflectionTestUtils.setField(upsertSupport, "entityManager", entityManager);
+        ReflectionTestUtils.setField(upsertSupport, "postgres", true);
+        return upsertSupport;
+    }
+
+    private static AggregateUpsertSupport<String> upsertSupportOn(String productName) throws Exception {
+        var metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseProductName()).thenReturn(productName);
+        var connection = mock(Connection.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        var upsertSupport = new UserDataVersionRepositoryCustomImpl();
+        ReflectionTestUtils.setField(upsertSupport, "dataSource", dataSource);
+        return upsertSupport;
+    }
+}
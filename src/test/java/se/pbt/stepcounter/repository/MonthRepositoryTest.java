@@ -30,4 +30,12 @@ public void getStepCountMonth_test() {
        var test =  monthStepRepository.getStepCountByUserIdYearAndMonth("daniel", 2020, 12);
         assertEquals(300, (int) test.get());
     }
+
+    @Test
+    public void getStepCountPerMonth_test() {
+        var stepCountPerMonth = monthStepRepository.getStepCountPerMonth("daniel", 2020);
+        assertEquals(12, stepCountPerMonth.length);
+        assertEquals(300, stepCountPerMonth[11]);
+        assertEquals(0, stepCountPerMonth[0]);
+    }
 }
@@ -0,0 +1,104 @@
+package se.pbt.stepcounter.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import se.pbt.stepcounter.model.UserZone;
+import se.pbt.stepcounter.model.WeekStep;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the JPA fallback that databases other than PostgreSQL and H2 get instead of the native upserts, on H2.
+ */
+@DataJpaTest
+@DisplayName("Portable upserts:")
+public class PortableUpsertTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private WeekStepRepository weekStepRepository;
+
+    @Autowired
+    private UserDataVersionRepository userDataVersionRepository;
+
+    @Autowired
+    private UserZoneRepository userZoneRepository;
+
+    @Autowired
+    private WeekStepRepositoryCustomImpl weekStepRepositoryCustom;
+
+    @Autowired
+    private UserDataVersionRepositoryCustomImpl userDataVersionRepositoryCustom;
+
+    @Autowired
+    private UserZoneRepositoryCustomImpl userZoneRepositoryCustom;
+
+    @BeforeEach
+    public void setUp() {
+        setPortable(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        setPortable(false);
+    }
+
+    @Test
+    @DisplayName("Adds to existing weeks and inserts each new week once")
+    public void testAddStepsToWeeks_AddsToExistingAndInsertsNewWeeks() {
+        // Arrange
+        weekStepRepository.save(new WeekStep("testUser", 1, 2023, 300));
+
+        // Act
+        weekStepRepository.addStepsToWeeks(List.of(
+                new WeekStep("testUser", 1, 2023, 50),
+                new WeekStep("testUser", 2, 2023, 70),
+                new WeekStep("testUser", 2, 2023, 30)));
+        entityManager.clear();
+
+        // Assert
+        assertEquals(350, (int) weekStepRepository.getStepCountByUserIdYearAndWeek("testUser", 2023, 1).orElseThrow());
+        assertEquals(100, (int) weekStepRepository.getStepCountByUserIdYearAndWeek("testUser", 2023, 2).orElseThrow());
+        assertEquals(2, weekStepRepository.findByUserIdAndYear("testUser", 2023).size());
+    }
+
+    @Test
+    @DisplayName("Starts the data version of a new user at 1 and increases it after that")
+    public void testIncreaseVersions_StartsAtOneAndIncreases() {
+        // Act
+        userDataVersionRepository.increaseVersions(List.of("testUser"));
+        userDataVersionRepository.increaseVersions(List.of("testUser"));
+        entityManager.clear();
+
+        // Assert
+        assertEquals(2, userDataVersionRepository.findById("testUser").orElseThrow().getVersion());
+    }
+
+    @Test
+    @DisplayName("Keeps the first zone registered for a user")
+    public void testAddIfAbsent_KeepsFirstZone() {
+        // Act
+        userZoneRepository.addIfAbsent(new UserZone("testUser", "Europe/Stockholm"));
+        userZoneRepository.addIfAbsent(new UserZone("testUser", "UTC"));
+        entityManager.clear();
+
+        // Assert
+        assertEquals("Europe/Stockholm", userZoneRepository.findById("testUser").orElseThrow().getZoneId());
+    }
+
+    private void setPortable(boolean portable) {
+        Stream.of(weekStepRepositoryCustom, userDataVersionRepositoryCustom, userZoneRepositoryCustom)
+                .forEach(upsertSupport -> ReflectionTestUtils.setField(upsertSupport, "portable", portable));
+    }
+}
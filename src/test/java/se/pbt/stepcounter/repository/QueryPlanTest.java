@@ -0,0 +1,131 @@
+package se.pbt.stepcounter.repository;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.persistence.EntityManager;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the hot queries on the step, weekstep and monthstep tables are answered from an index on user_id
+ * rather than by scanning the table, by reading the H2 query plan of the SQL each repository method runs.
+ * The SQL Hibernate generates is captured by {@link SqlCapturingStatementInspector} and explained with its
+ * parameters unbound; the SQL of the JDBC queries is taken from the repository that runs it.
+ */
+@DataJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "se.pbt.stepcounter.repository.SqlCapturingStatementInspector")
+@DisplayName("Query plans:")
+public class QueryPlanTest {
+
+    private static final ZonedDateTime START = ZonedDateTime.of(2023, 1, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private StepRepository stepRepository;
+
+    @Autowired
+    private WeekStepRepository weekStepRepository;
+
+    @Autowired
+    private MonthStepRepository monthStepRepository;
+
+    @Test
+    @DisplayName("Latest step of a user uses idx_step_user_start_time")
+    public void testLatestStepOfUser_UsesUserStartTimeIndex() {
+        var sql = captureSql(() -> stepRepository.findFirstByUserIdOrderByStartTimeDesc("testUser"));
+
+        assertPlanUsesIndex(sql, "IDX_STEP_USER_START_TIME");
+    }
+
+    @Test
+    @DisplayName("Steps of a user summed per day use idx_step_user_start_time")
+    public void testStepsOfUserPerDay_UsesUserStartTimeIndex() {
+        assertPlanUsesIndex(StepRepositoryCustomImpl.sumStepCountPerDayQuery(7), "IDX_STEP_USER_START_TIME");
+    }
+
+    @Test
+    @DisplayName("A page of the step history of a user after a cursor uses idx_step_user_start_time")
+    public void testStepHistoryPageOfUser_UsesUserStartTimeIndex() {
+        var sql = captureSql(() -> stepRepository.findStepHistoryAfter("testUser", START, 100, PageRequest.of(0, 50)));
+
+        assertPlanUsesIndex(sql, "IDX_STEP_USER_START_TIME");
+    }
+
+    @Test
+    @DisplayName("Steps of a batch of users within a range of start times use idx_step_user_start_time")
+    public void testStepsOfUsersByStartTime_UsesUserStartTimeIndex() {
+        var sql = captureSql(() -> stepRepository.findStepsByUserIdsAndStartTimeRange(
+                List.of("testUser", "otherUser"), START, START.plusDays(7)));
+
+        assertPlanUsesIndex(sql, "IDX_STEP_USER_START_TIME");
+    }
+
+    @Test
+    @DisplayName("Steps of a user within a range of upload times use idx_step_user_uploaded")
+    public void testStepsOfUserByUploadTime_UsesUserUploadedIndex() {
+        var sql = captureSql(() -> stepRepository.getStepCountByUserIdAndDateRange("testUser", START, START.plusDays(7)));
+
+        assertPlanUsesIndex(sql, "IDX_STEP_USER_UPLOADED");
+    }
+
+    @Test
+    @DisplayName("The distinct user IDs of the steps are read from idx_step_user_start_time instead of the table")
+    public void testDistinctUserIds_UsesUserStartTimeIndex() {
+        var sql = captureSql(() -> stepRepository.getListOfAllDistinctUserId());
+
+        assertPlanUsesIndex(sql, "IDX_STEP_USER_START_TIME");
+    }
+
+    @Test
+    @DisplayName("Week steps of a user use the index of the user, year and week constraint")
+    public void testWeekStepsOfUser_UsesUserYearWeekIndex() {
+        assertPlanUsesIndex(captureSql(() -> weekStepRepository.findByUserIdAndYearAndWeek("testUser", 2023, 1)),
+                "UQ_WEEKSTEP_USER_YEAR_WEEK");
+        assertPlanUsesIndex(captureSql(() -> weekStepRepository.findByUserIdAndYear("testUser", 2023)),
+                "UQ_WEEKSTEP_USER_YEAR_WEEK");
+    }
+
+    @Test
+    @DisplayName("Month steps of a user use the index of the user, year and month constraint")
+    public void testMonthStepsOfUser_UsesUserYearMonthIndex() {
+        assertPlanUsesIndex(captureSql(() -> monthStepRepository.findByUserIdAndYearAndMonth("testUser", 2023, 1)),
+                "UQ_MONTHSTEP_USER_YEAR_MONTH");
+        assertPlanUsesIndex(captureSql(() -> monthStepRepository.findByUserIdAndYear("testUser", 2023)),
+                "UQ_MONTHSTEP_USER_YEAR_MONTH");
+    }
+
+    /**
+     * Runs a repository method and returns the single statement Hibernate prepared for it.
+     */
+    private static String captureSql(Runnable repositoryCall) {
+        SqlCapturingStatementInspector.clear();
+        repositoryCall.run();
+        var captured = SqlCapturingStatementInspector.captured();
+        assertEquals(1, captured.size(), "Expected a single statement:\n" + captured);
+        return captured.get(0);
+    }
+
+    private void assertPlanUsesIndex(String sql, String indexName) {
+        var plan = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement("EXPLAIN " + sql);
+                 var resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1).toUpperCase();
+            }
+        });
+        assertTrue(plan.contains(indexName), "Expected the plan to use " + indexName + ":\n" + plan);
+    }
+}
@@ -0,0 +1,35 @@
+package se.pbt.stepcounter.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL of every statement Hibernate prepares, so tests can inspect the SQL that repository methods
+ * actually run.
+ */
+public class SqlCapturingStatementInspector implements StatementInspector {
+
+    private static final List<String> CAPTURED = new ArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        synchronized (CAPTURED) {
+            CAPTURED.add(sql);
+        }
+        return sql;
+    }
+
+    public static void clear() {
+        synchronized (CAPTURED) {
+            CAPTURED.clear();
+        }
+    }
+
+    public static List<String> captured() {
+        synchronized (CAPTURED) {
+            return new ArrayList<>(CAPTURED);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package se.pbt.stepcounter.repository;
 
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import se.pbt.stepcounter.model.Step;
 import se.pbt.stepcounter.testobjects.TestObjectBuilder;
 
+import javax.persistence.EntityManagerFactory;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -18,6 +23,8 @@ public class StepRepositoryTest {
     @Autowired
     private StepRepository stepRepository;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
 
     static TestObjectBuilder testObjectBuilder;
 
@@ -174,4 +181,65 @@ public void  testGetStepDataByUserId_ReturnsCorrectLength(){
             assertEquals(expectedSize, actualSize);
         }
     }
+
+    @Nested
+    @DisplayName("sumStepCountPerDay():")
+    public class SumStepCountPerDayTest {
+
+        @Test
+        @DisplayName("Returns the step count of each day, counted to the day the steps start on")
+        public void testSumStepCountPerDay_ReturnsSumPerDay() {
+            // Day boundaries of the day before the test steps, the day of the test steps and the day after
+            var dayOfSteps = testStep1.getStartTime().toLocalDate().atStartOfDay(testStep1.getStartTime().getZone());
+            var dayBoundaries = new Instant[]{
+                    dayOfSteps.minusDays(1).toInstant(),
+                    dayOfSteps.toInstant(),
+                    dayOfSteps.plusDays(1).toInstant(),
+                    dayOfSteps.plusDays(2).toInstant()};
+
+            var result = stepRepository.sumStepCountPerDay("testUser", dayBoundaries);
+
+            // Assert that the three steps of the test user are summed on their day only
+            assertArrayEquals(new int[]{0, 39, 0}, result);
+        }
+
+        @Test
+        @DisplayName("Leaves out steps starting at the end boundary")
+        public void testSumStepCountPerDay_EndBoundaryIsExclusive() {
+            var dayBoundaries = new Instant[]{
+                    testStep1.getStartTime().minusDays(1).toInstant(),
+                    testStep1.getStartTime().toInstant()};
+
+            assertArrayEquals(new int[]{0}, stepRepository.sumStepCountPerDay("testUser", dayBoundaries));
+        }
+    }
+
+    @Nested
+    @DisplayName("saveAll():")
+    public class SaveAllTest {
+
+        @Test
+        @DisplayName("Inserts many steps using batched statements")
+        public void testSaveAll_InsertsStepsInBatches() {
+            // Build a large number of steps for the same user
+            var numberOfSteps = 200;
+            var steps = new ArrayList<Step>();
+            var step = testObjectBuilder.getTestStep();
+            for (int i = 0; i < numberOfSteps; i++) {
+                step = testObjectBuilder.copyAndPostponeMinutes(step, 1);
+                steps.add(step);
+            }
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            // Call the method to be tested, which flushes the inserts when its transaction commits
+            stepRepository.saveAll(steps);
+
+            // Assert every step was inserted
+            assertEquals(numberOfSteps, statistics.getEntityInsertCount());
+
+            // Assert the inserts were sent in batches rather than one statement per row
+            assertTrue(statistics.getPrepareStatementCount() < numberOfSteps / 10);
+        }
+    }
 }
@@ -10,6 +10,8 @@
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,7 +31,7 @@ public void setUp() {
         WeekStep wStep3 = new WeekStep("yahya", 1, 2020, 500);
         WeekStep wStep4 = new WeekStep("gabrielle", 1,2020, 900);
         WeekStep wStep5 = new WeekStep("gabrielle", 52,2020, 900);
-        WeekStep wStep6 = new WeekStep("gabrielle", 52,2020, 900);
+        WeekStep wStep6 = new WeekStep("gabrielle", 51,2020, 900);
 
         weekStepRepository.save(wStep1);
         weekStepRepository.save(wStep2);
@@ -59,6 +61,29 @@ public void shouldReturnEmptyOptionalForNonExistingWeekStep() {
         Assert.assertFalse(weekStep.isPresent());
     }
 
+    @Test
+    public void shouldReturnStepCountPerWeekIndexedByWeek() {
+        int[] stepCountPerWeek = weekStepRepository.getStepCountPerWeek("gabrielle", 2020);
+
+        Assert.assertEquals(54, stepCountPerWeek.length);
+        Assert.assertEquals(0, stepCountPerWeek[0]);
+        Assert.assertEquals(900, stepCountPerWeek[1]);
+        Assert.assertEquals(900, stepCountPerWeek[51]);
+        Assert.assertEquals(900, stepCountPerWeek[52]);
+        Assert.assertEquals(2700, Arrays.stream(stepCountPerWeek).sum());
+    }
+
+    @Test
+    public void shouldReturnStepCountsOfGivenUsersForWeek() {
+        List<Object[]> stepCounts = weekStepRepository.getStepCountsByUserIdsYearAndWeek(List.of("johanna", "yahya", "john"), 2020, 1);
+
+        Assert.assertEquals(2, stepCounts.size());
+        var stepCountByUser = new HashMap<Object, Object>();
+        stepCounts.forEach(row -> stepCountByUser.put(row[0], row[1]));
+        Assert.assertEquals(300, stepCountByUser.get("johanna"));
+        Assert.assertEquals(500, stepCountByUser.get("yahya"));
+    }
+
     @Test
     public void shouldSetTotalStepCountById() {
         Optional<WeekStep> weekStepOptional = weekStepRepository.findTopByUserIdOrderByIdDesc("johanna");
@@ -148,6 +173,6 @@ public void shouldReturnCorrectListSizeWithSeveralObjectsInDB() {
         var secondResult = weekStepRepository.getStepCountByUserIdYearAndWeek("gabrielle", 2020, 52)
                 .orElseThrow();
         Assert.assertEquals(3, weekSteps.size());
-        Assert.assertEquals(1800, (int) secondResult);
+        Assert.assertEquals(900, (int) secondResult);
     }
 }
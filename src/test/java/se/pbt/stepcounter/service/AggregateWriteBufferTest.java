@@ -0,0 +1,134 @@
+package se.pbt.stepcounter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import se.pbt.stepcounter.cache.AggregateStepCache;
+import se.pbt.stepcounter.cache.UserDataVersionRegistry;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@DisplayName("AggregateWriteBuffer:")
+class AggregateWriteBufferTest {
+    @Autowired
+    private WeekStepRepository weekStepRepository;
+    @Autowired
+    private MonthStepRepository monthStepRepository;
+    @Autowired
+    private UserDataVersionRegistry userDataVersionRegistry;
+
+    String testUser = "testUser";
+
+    AggregateWriteBuffer writeBehindBuffer;
+
+    @BeforeEach
+    public void setUp() {
+        var aggregateStepCache = new AggregateStepCache(weekStepRepository, monthStepRepository, new SimpleMeterRegistry(), 60, 1000);
+        writeBehindBuffer = new AggregateWriteBuffer(weekStepRepository, monthStepRepository, aggregateStepCache, userDataVersionRegistry, true, 3);
+    }
+
+    @AfterEach
+    public void resetDataBase() {
+        writeBehindBuffer.shutdown();
+        weekStepRepository.deleteAll();
+        monthStepRepository.deleteAll();
+    }
+
+    @Nested
+    @DisplayName("With write-behind enabled:")
+    public class WriteBehindTest {
+
+        @Test
+        @DisplayName("Does not write increments before they are flushed")
+        public void testAddSteps_DoesNotWriteBeforeFlush() {
+            // Add steps to a week and a month
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 100);
+            writeBehindBuffer.addStepsToMonth(testUser, 2023, 3, 100);
+
+            // Assert that nothing was written to the database
+            assertTrue(weekStepRepository.findAll().isEmpty());
+            assertTrue(monthStepRepository.findAll().isEmpty());
+        }
+
+        @Test
+        @DisplayName("Includes pending increments when reading step counts")
+        public void testGetStepCount_IncludesPendingIncrements() {
+            // Store some steps, then add more without flushing
+            weekStepRepository.addStepsToWeek(testUser, 2023, 10, 100);
+            monthStepRepository.addStepsToMonth(testUser, 2023, 3, 100);
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 50);
+            writeBehindBuffer.addStepsToMonth(testUser, 2023, 3, 25);
+
+            // Assert that the stored and pending steps are added together
+            assertEquals(150, writeBehindBuffer.getStepCountForWeek(testUser, 2023, 10));
+            assertEquals(125, writeBehindBuffer.getStepCountForMonth(testUser, 2023, 3));
+        }
+
+        @Test
+        @DisplayName("Writes the sum of all increments to one row when flushed")
+        public void testFlush_WritesSummedIncrements() {
+            // Add steps to the same week and month twice
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 100);
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 250);
+            writeBehindBuffer.addStepsToMonth(testUser, 2023, 3, 100);
+            writeBehindBuffer.addStepsToMonth(testUser, 2023, 3, 250);
+
+            writeBehindBuffer.flush();
+
+            // Assert that a single row holds the sum of both increments, which is not counted twice when read
+            assertEquals(1, weekStepRepository.findAll().size());
+            assertEquals((Integer) 350, weekStepRepository.getStepCountByUserIdYearAndWeek(testUser, 2023, 10).orElseThrow());
+            assertEquals((Integer) 350, monthStepRepository.getStepCountByUserIdYearAndMonth(testUser, 2023, 3).orElseThrow());
+            assertEquals(350, writeBehindBuffer.getStepCountForWeek(testUser, 2023, 10));
+        }
+
+        @Test
+        @DisplayName("Does not read a stored value cached before the flush")
+        public void testFlush_InvalidatesCachedStepCounts() {
+            // Read a week and a month, which caches their stored values, then add steps to them
+            writeBehindBuffer.getStepCountForWeek(testUser, 2023, 10);
+            writeBehindBuffer.getStepCountForMonth(testUser, 2023, 3);
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 100);
+            writeBehindBuffer.addStepsToMonth(testUser, 2023, 3, 100);
+
+            writeBehindBuffer.flush();
+
+            // Assert that the flushed steps are read back
+            assertEquals(100, writeBehindBuffer.getStepCountForWeek(testUser, 2023, 10));
+            assertEquals(100, writeBehindBuffer.getStepCountForMonth(testUser, 2023, 3));
+        }
+
+        @Test
+        @DisplayName("Flushes when the maximum number of pending rows is reached")
+        public void testAddSteps_FlushesWhenFull() throws InterruptedException {
+            // Add steps to as many different weeks as the buffer holds
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 100);
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 11, 100);
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 12, 100);
+
+            // Wait for the flush running in the background
+            for (int attempt = 0; attempt < 50 && weekStepRepository.findAll().size() < 3; attempt++) {
+                Thread.sleep(100);
+            }
+
+            // Assert that all weeks were written
+            assertEquals(3, weekStepRepository.findAll().size());
+        }
+
+        @Test
+        @DisplayName("Flushes pending increments on shutdown")
+        public void testShutdown_FlushesPendingIncrements() {
+            // Add steps without flushing
+            writeBehindBuffer.addStepsToWeek(testUser, 2023, 10, 100);
+
+            writeBehindBuffer.shutdown();
+
+            // Assert that the steps were written
+            assertEquals((Integer) 100, weekStepRepository.getStepCountByUserIdYearAndWeek(testUser, 2023, 10).orElseThrow());
+        }
+    }
+}
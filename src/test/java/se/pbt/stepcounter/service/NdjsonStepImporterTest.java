@@ -0,0 +1,140 @@
+package se.pbt.stepcounter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.mapper.StepDTOStreamReader;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.StepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@DisplayName("NdjsonStepImporter:")
+class NdjsonStepImporterTest {
+    private static final int MAX_LINE_LENGTH = 1000;
+
+    @Autowired
+    private StepService stepService;
+    @Autowired
+    private StepDTOStreamReader stepDTOStreamReader;
+    @Autowired
+    private StepRepository stepRepository;
+    @Autowired
+    private WeekStepRepository weekStepRepository;
+    @Autowired
+    private MonthStepRepository monthStepRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
+
+    NdjsonStepImporter ndjsonStepImporter;
+
+    @BeforeEach
+    public void setUp() {
+        // A chunk size of two makes the test data span several chunks
+        ndjsonStepImporter = new NdjsonStepImporter(stepService, stepDTOStreamReader, 2, 1, MAX_LINE_LENGTH);
+    }
+
+    @AfterEach
+    public void resetDataBase() {
+        stepService.deleteStepTable();
+        weekStepRepository.deleteAll();
+        monthStepRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Stores the valid lines and reports the rejected ones by line number")
+    public void testImportSteps_ReportsRejectedLines() throws Exception {
+        // Write valid data for two users, a malformed line, a blank line and a line with a bad step count
+        var firstUserDto = testObjectBuilder.getTestStepDTO();
+        var secondUserDto = testObjectBuilder.getTestStepDTO();
+        secondUserDto.setUserId("otherUser");
+        var laterDto = testObjectBuilder.copyAndPostponeMinutes(firstUserDto, 24 * 60);
+        var badDto = testObjectBuilder.getTestStepDTO();
+        badDto.setStepCount(0);
+        var ndjson = String.join("\n",
+                objectMapper.writeValueAsString(firstUserDto),
+                objectMapper.writeValueAsString(secondUserDto),
+                "{\"userId\": ",
+                "",
+                objectMapper.writeValueAsString(badDto),
+                objectMapper.writeValueAsString(laterDto));
+
+        var summary = ndjsonStepImporter.importSteps(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert that the valid lines were stored and both rejections counted, with only the first one listed
+        assertEquals(3, summary.getAcceptedCount());
+        assertEquals(2, summary.getRejectedCount());
+        assertEquals(1, summary.getRejectedLines().size());
+        assertEquals(3, summary.getRejectedLines().get(0).getIndex());
+        assertEquals(2, stepRepository.getListOfStepsByUserId("testUser").orElseThrow().size());
+        assertEquals(1, stepRepository.getListOfStepsByUserId("otherUser").orElseThrow().size());
+        assertEquals(6, summary.getLastCommittedLine());
+        assertNull(summary.getFailureMessage());
+    }
+
+    @Test
+    @DisplayName("Rejects a line longer than the maximum line length and reads the lines after it")
+    public void testImportSteps_RejectsTooLongLine() throws Exception {
+        var stepDto = testObjectBuilder.getTestStepDTO();
+        var tooLongLine = String.join("", Collections.nCopies(MAX_LINE_LENGTH + 1, "x"));
+        var ndjson = String.join("\r\n", tooLongLine, objectMapper.writeValueAsString(stepDto));
+
+        var summary = ndjsonStepImporter.importSteps(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert that only the long line was rejected, by its line number
+        assertEquals(1, summary.getAcceptedCount());
+        assertEquals(1, summary.getRejectedCount());
+        assertEquals(1, summary.getRejectedLines().get(0).getIndex());
+        assertTrue(summary.getRejectedLines().get(0).getMessage().contains("longer than " + MAX_LINE_LENGTH));
+    }
+
+    @Test
+    @DisplayName("Stops on a database failure and returns the summary up to the last committed line")
+    public void testImportSteps_DatabaseFailure_ReturnsPartialSummary() throws Exception {
+        // Arrange: The first chunk is stored and the database fails on the second one
+        var failingStepService = mock(StepService.class);
+        when(failingStepService.addStepsForMultipleUsers(anyList()))
+                .thenReturn(List.of(BatchItemStatusDTO.accepted(0, "testUser"), BatchItemStatusDTO.accepted(1, "testUser")))
+                .thenThrow(new DataAccessResourceFailureException("Database is down"));
+        var importer = new NdjsonStepImporter(failingStepService, stepDTOStreamReader, 2, 1, MAX_LINE_LENGTH);
+        var line = objectMapper.writeValueAsString(testObjectBuilder.getTestStepDTO());
+        var ndjson = String.join("\n", line, line, line, line, line);
+
+        // Act
+        var summary = importer.importSteps(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert that the first chunk is reported as stored and that no line after the failed chunk was sent
+        assertEquals(2, summary.getAcceptedCount());
+        assertEquals(2, summary.getLastCommittedLine());
+        assertTrue(summary.getFailureMessage().contains("lines 3 to 4"));
+        verify(failingStepService, times(2)).addStepsForMultipleUsers(anyList());
+    }
+
+    @Test
+    @DisplayName("Returns an empty summary when the input holds no lines")
+    public void testImportSteps_EmptyInput() throws Exception {
+        var summary = ndjsonStepImporter.importSteps(new ByteArrayInputStream(new byte[0]));
+
+        assertEquals(0, summary.getAcceptedCount());
+        assertEquals(0, summary.getRejectedCount());
+        assertTrue(summary.getRejectedLines().isEmpty());
+    }
+}
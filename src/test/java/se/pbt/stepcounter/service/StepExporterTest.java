@@ -0,0 +1,115 @@
+package se.pbt.stepcounter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.pbt.stepcounter.model.MonthStep;
+import se.pbt.stepcounter.model.Step;
+import se.pbt.stepcounter.model.WeekStep;
+import se.pbt.stepcounter.repository.MonthStepRepository;
+import se.pbt.stepcounter.repository.StepRepository;
+import se.pbt.stepcounter.repository.WeekStepRepository;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@DisplayName("StepExporter:")
+class StepExporterTest {
+    @Autowired
+    private StepRepository stepRepository;
+    @Autowired
+    private WeekStepRepository weekStepRepository;
+    @Autowired
+    private MonthStepRepository monthStepRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private StepExporter stepExporter;
+
+    @BeforeEach
+    public void setUp() {
+        // A clear interval of two makes the persistence context be cleared while the rows are streamed
+        stepExporter = new StepExporter(stepRepository, weekStepRepository, monthStepRepository, entityManager,
+                transactionManager, objectMapper, 2);
+    }
+
+    @AfterEach
+    public void resetDataBase() {
+        stepRepository.deleteAll();
+        weekStepRepository.deleteAll();
+        monthStepRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Writes the steps of a user as one JSON object per line")
+    public void testExport_StepsOfUserAsNdjson() throws Exception {
+        var start = ZonedDateTime.of(2023, 5, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        for (int i = 0; i < 5; i++)
+            stepRepository.save(new Step("testUser", i + 1, start.plusHours(i), start.plusHours(i).plusMinutes(5), start.plusHours(i).plusMinutes(10)));
+        stepRepository.save(new Step("otherUser", 100, start, start.plusMinutes(5), start.plusMinutes(10)));
+        var output = new ByteArrayOutputStream();
+
+        var rowCount = stepExporter.export(StepExporter.Table.STEP, "testUser", StepExporter.Format.NDJSON, false, output);
+
+        // Assert that each line holds a step of the user, and that the output ends with a line break
+        var text = output.toString(StandardCharsets.UTF_8);
+        var lines = text.split("\n");
+        assertEquals(5, rowCount);
+        assertEquals(5, lines.length);
+        assertTrue(text.endsWith("\n"));
+        var stepCountSum = 0;
+        for (var line : lines) {
+            var step = objectMapper.readTree(line);
+            assertEquals("testUser", step.get("userId").asText());
+            stepCountSum += step.get("stepCount").asInt();
+        }
+        assertEquals(15, stepCountSum);
+    }
+
+    @Test
+    @DisplayName("Writes the week steps of all users as CSV with a header, quoting user IDs holding a comma")
+    public void testExport_WeekStepsOfAllUsersAsCsv() throws Exception {
+        weekStepRepository.save(new WeekStep("testUser", 10, 2023, 1000));
+        weekStepRepository.save(new WeekStep("other,user", 11, 2023, 2000));
+        weekStepRepository.save(new WeekStep("thirdUser", 12, 2023, 3000));
+        var output = new ByteArrayOutputStream();
+
+        var rowCount = stepExporter.export(StepExporter.Table.WEEK_STEP, null, StepExporter.Format.CSV, false, output);
+
+        var lines = List.of(output.toString(StandardCharsets.UTF_8).split("\n"));
+        assertEquals(3, rowCount);
+        assertEquals("id,userId,year,week,stepCount", lines.get(0));
+        assertEquals(4, lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith(",testUser,2023,10,1000")));
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith(",\"other,user\",2023,11,2000")));
+    }
+
+    @Test
+    @DisplayName("Writes gzipped output when asked to")
+    public void testExport_Gzip_WritesGzippedOutput() throws Exception {
+        monthStepRepository.save(new MonthStep("testUser", 3, 2023, 1500));
+        var output = new ByteArrayOutputStream();
+
+        stepExporter.export(StepExporter.Table.MONTH_STEP, "testUser", StepExporter.Format.CSV, true, output);
+
+        var unzipped = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())).readAllBytes();
+        var lines = new String(unzipped, StandardCharsets.UTF_8).split("\n");
+        assertEquals("id,userId,year,month,stepCount", lines[0]);
+        assertTrue(lines[1].endsWith(",testUser,2023,3,1500"));
+    }
+}
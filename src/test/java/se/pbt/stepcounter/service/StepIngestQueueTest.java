@@ -0,0 +1,141 @@
+package se.pbt.stepcounter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+import se.pbt.stepcounter.dto.stepdto.IngestReceiptDTO;
+import se.pbt.stepcounter.exception.IngestQueueFullException;
+import se.pbt.stepcounter.exception.InvalidUserIdException;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@DisplayName("StepIngestQueue:")
+class StepIngestQueueTest {
+
+    private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
+    private final String testUser = "testUser";
+
+    private StepService stepService;
+    private SimpleMeterRegistry meterRegistry;
+    private StepIngestQueue stepIngestQueue;
+
+    @BeforeEach
+    public void setUp() {
+        stepService = Mockito.mock(StepService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        // One worker, room for one waiting upload and one receipt
+        stepIngestQueue = new StepIngestQueue(stepService, meterRegistry, 1, 1, 5, 60, 1);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        stepIngestQueue.shutdown();
+    }
+
+    @Test
+    @DisplayName("Stores queued data and marks the receipt as completed")
+    public void testSubmitSingleStep_CompletesReceipt() throws InterruptedException {
+        var stored = new CountDownLatch(1);
+        when(stepService.addSingleStepForUser(eq(testUser), any())).thenAnswer(invocation -> {
+            stored.countDown();
+            return null;
+        });
+
+        // Queue an upload and wait for it to be stored
+        var receipt = stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO());
+        assertTrue(stored.await(5, TimeUnit.SECONDS));
+        stepIngestQueue.shutdown();
+
+        // Assert that the receipt shows the upload as completed and that its latency was recorded
+        assertEquals(IngestReceiptDTO.Status.COMPLETED, stepIngestQueue.getReceipt(receipt.getReceiptId()).orElseThrow().getStatus());
+        assertEquals(1, meterRegistry.get("stepcounter.ingest.drain.latency").timer().count());
+    }
+
+    @Test
+    @DisplayName("Rejects invalid data without queueing it")
+    public void testSubmitMultipleSteps_RejectsInvalidData() {
+        doThrow(new InvalidUserIdException("User ID cannot be null or empty"))
+                .when(stepService).validateStepData(eq(null), anyList());
+
+        // Assert that the validation error is thrown to the caller and nothing is stored
+        assertThrows(InvalidUserIdException.class,
+                () -> stepIngestQueue.submitMultipleSteps(null, List.of(testObjectBuilder.getTestStepDTO())));
+        Mockito.verify(stepService, Mockito.never()).addMultipleStepsForUser(any(), anyList());
+    }
+
+    @Test
+    @DisplayName("Rejects a single step of another user than the request without queueing it")
+    public void testSubmitSingleStep_RejectsMismatchedUserId() {
+        var stepDTO = testObjectBuilder.getTestStepDTO();
+        stepDTO.setUserId("otherUser");
+        doThrow(new InvalidUserIdException("User ID of the step data does not match the user ID of the request"))
+                .when(stepService).validateSingleStepData(testUser, stepDTO);
+
+        // Assert that the mismatch is thrown to the caller and nothing is stored
+        assertThrows(InvalidUserIdException.class, () -> stepIngestQueue.submitSingleStep(testUser, stepDTO));
+        Mockito.verify(stepService, Mockito.never()).addSingleStepForUser(any(), any());
+    }
+
+    @Test
+    @DisplayName("Drops the least recently used receipt when the maximum number of receipts is kept")
+    public void testSubmitSingleStep_DropsOldestReceiptAtMaximumSize() throws InterruptedException {
+        var workerBusy = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(stepService.addSingleStepForUser(eq(testUser), any())).thenAnswer(invocation -> {
+            workerBusy.countDown();
+            release.await();
+            return null;
+        });
+
+        // Keep the worker busy with the first upload, which has already updated its receipt, and queue a second one
+        try {
+            var first = stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO());
+            assertTrue(workerBusy.await(5, TimeUnit.SECONDS));
+            var second = stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO());
+
+            // Assert that only the receipt of the second upload is kept
+            assertFalse(stepIngestQueue.getReceipt(first.getReceiptId()).isPresent());
+            assertTrue(stepIngestQueue.getReceipt(second.getReceiptId()).isPresent());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Throws IngestQueueFullException when the queue is full")
+    public void testSubmitSingleStep_ThrowsWhenQueueIsFull() throws InterruptedException {
+        var workerBusy = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(stepService.addSingleStepForUser(eq(testUser), any())).thenAnswer(invocation -> {
+            workerBusy.countDown();
+            release.await();
+            return null;
+        });
+
+        // Keep the worker busy and fill the queue
+        stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO());
+        assertTrue(workerBusy.await(5, TimeUnit.SECONDS));
+        stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO());
+
+        // Assert that the next upload is rejected with a retry delay and counted
+        try {
+            var exception = assertThrows(IngestQueueFullException.class,
+                    () -> stepIngestQueue.submitSingleStep(testUser, testObjectBuilder.getTestStepDTO()));
+            assertEquals(5, exception.getRetryAfterSeconds());
+            assertEquals(1, meterRegistry.get("stepcounter.ingest.queue.depth").gauge().value());
+            assertEquals(1, meterRegistry.get("stepcounter.ingest.rejected").counter().count());
+        } finally {
+            release.countDown();
+        }
+    }
+}
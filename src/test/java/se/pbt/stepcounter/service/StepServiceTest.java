@@ -1,29 +1,57 @@
 package se.pbt.stepcounter.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.pbt.stepcounter.cache.LatestStepCache;
+import se.pbt.stepcounter.cache.UserZoneRegistry;
+import se.pbt.stepcounter.dto.stepdto.BatchItemStatusDTO;
+import se.pbt.stepcounter.dto.stepdto.BatchStepCountRequestDTO;
 import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.dto.stepdto.WeeklyStepDTO;
 import se.pbt.stepcounter.exception.DateTimeValueException;
 import se.pbt.stepcounter.exception.InvalidUserIdException;
 import se.pbt.stepcounter.exception.InvalidStepDataException;
+import se.pbt.stepcounter.mapper.BinaryStepReader;
+import se.pbt.stepcounter.mapper.BinaryStepWriter;
 import se.pbt.stepcounter.mapper.DateHelper;
 import se.pbt.stepcounter.mapper.StepMapper;
 import se.pbt.stepcounter.model.Step;
+import se.pbt.stepcounter.model.WeekStep;
 import se.pbt.stepcounter.repository.MonthStepRepository;
 import se.pbt.stepcounter.repository.StepRepository;
+import se.pbt.stepcounter.repository.UserZoneRepository;
 import se.pbt.stepcounter.repository.WeekStepRepository;
 import se.pbt.stepcounter.testobjects.TestObjectBuilder;
 
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest
 @DisplayName("StepService:")
@@ -36,6 +64,14 @@ class StepServiceTest {
     private WeekStepRepository weekStepRepository;
     @Autowired
     private MonthStepRepository monthStepRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private UserZoneRepository userZoneRepository;
+    @Autowired
+    private UserZoneRegistry userZoneRegistry;
 
     String testUser = "testUser";
 
@@ -51,6 +87,8 @@ public void resetDataBase() {
         stepService.deleteStepTable();
         weekStepRepository.deleteAll();
         monthStepRepository.deleteAll();
+        userZoneRepository.deleteAll();
+        userZoneRegistry.invalidateAll();
     }
 
     @Nested
@@ -92,6 +130,39 @@ public void testAddSingleStepForUser_ThrowsInvalidUserIdException_WhenStepDTOIsN
                         "Expected exception message to be '" + expectedMessage + "' but was '" + result.getMessage() + "'");
             }
 
+            @Test
+            @DisplayName("Throws 'InvalidUserIdException' when input: stepDTO, belongs to another user than userId")
+            public void testAddSingleStepForUser_ThrowsInvalidUserIdException_WhenUserIdsDoNotMatch() {
+                // Create a StepDTO belonging to another user than the one it is added for
+                var otherUsersStepDTO = testObjectBuilder.getTestStepDTO();
+                otherUsersStepDTO.setUserId("otherUser");
+
+                // Expected exception message
+                var expectedMessage = "does not match the user ID of the request";
+
+                // Assert that correct exception is thrown and that nothing is stored for either user
+                var result = assertThrows(InvalidUserIdException.class,
+                        () -> stepService.addSingleStepForUser(testUser, otherUsersStepDTO));
+
+                assertTrue(result.getMessage().contains(expectedMessage),
+                        "Expected exception message to be '" + expectedMessage + "' but was '" + result.getMessage() + "'");
+                assertFalse(stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).isPresent());
+                assertFalse(stepRepository.findFirstByUserIdOrderByStartTimeDesc("otherUser").isPresent());
+            }
+
+            @Test
+            @DisplayName("Rejects a stepDTO of another user than userId before it is queued")
+            public void testValidateSingleStepData_ThrowsInvalidUserIdException_WhenUserIdsDoNotMatch() {
+                // Create a StepDTO belonging to another user than the one it is queued for
+                var otherUsersStepDTO = testObjectBuilder.getTestStepDTO();
+                otherUsersStepDTO.setUserId("otherUser");
+
+                // Assert that the same check as addSingleStepForUser is applied
+                var result = assertThrows(InvalidUserIdException.class,
+                        () -> stepService.validateSingleStepData(testUser, otherUsersStepDTO));
+                assertTrue(result.getMessage().contains("does not match the user ID of the request"));
+            }
+
             @Test
             @DisplayName("Throws 'DateTimeValueException' when input: stepDTO, has incompatible time-field values")
             public void testAddSingleStepForUser_ThrowsDateTimeValueException_WhenTimeValueIsIncorrect() {
@@ -660,6 +731,680 @@ public void testAddSingleStepForUser_AddsAllFieldsCorrectlyToMonthStepTable() {
         }
 
 
+    @Nested
+    @DisplayName("Aggregate upserts:")
+    public class AggregateUpsertTest {
+
+        @Test
+        @DisplayName("Adds steps to the same WeekStep row instead of creating a new one")
+        public void testAddStepsToWeek_AccumulatesInOneRow() {
+            // Add steps to the same week twice
+            weekStepRepository.addStepsToWeek(testUser, 2023, 10, 100);
+            weekStepRepository.addStepsToWeek(testUser, 2023, 10, 250);
+
+            // Assert that a single row holds the sum of both increments
+            var weekSteps = weekStepRepository.findByUserIdAndYear(testUser, 2023);
+            assertEquals(1, weekSteps.size());
+            assertEquals(350, weekSteps.get(0).getStepCount());
+        }
+
+        @Test
+        @DisplayName("Adds steps to the same MonthStep row instead of creating a new one")
+        public void testAddStepsToMonth_AccumulatesInOneRow() {
+            // Add steps to the same month twice and to another month once
+            monthStepRepository.addStepsToMonth(testUser, 2023, 3, 100);
+            monthStepRepository.addStepsToMonth(testUser, 2023, 3, 250);
+            monthStepRepository.addStepsToMonth(testUser, 2023, 4, 10);
+
+            // Assert that each month has a single row holding its sum
+            assertEquals(2, monthStepRepository.findByUserIdAndYear(testUser, 2023).size());
+            assertEquals((Integer) 350, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 3));
+            assertEquals((Integer) 10, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 4));
+        }
+
+        @Test
+        @DisplayName("Does not lose increments when uploads for the same week run concurrently")
+        public void testAddStepsToWeek_DoesNotLoseConcurrentIncrements() throws Exception {
+            var executor = Executors.newFixedThreadPool(8);
+            try {
+                // Add one step 200 times from several threads at once
+                var tasks = new ArrayList<Callable<Integer>>();
+                for (int i = 0; i < 200; i++) {
+                    tasks.add(() -> weekStepRepository.addStepsToWeek(testUser, 2023, 11, 1));
+                }
+                for (Future<Integer> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            // Assert that every increment made it to the database
+            assertEquals((Integer) 200, stepService.getStepCountForUserYearAndWeek(testUser, 2023, 11));
+        }
+    }
+
+    @Nested
+    @DisplayName("Concurrent uploads:")
+    public class ConcurrentUploadTest {
+
+        @Test
+        @DisplayName("Creates one step per user and adds no extra week steps when the same data is uploaded concurrently")
+        public void testAddSingleStepForUser_SerializesUploadsPerUser() throws Exception {
+            var numberOfUsers = 8;
+            var uploadsPerUser = 50;
+            var stepCount = 100;
+            var firstDto = testObjectBuilder.getTestStepDTO();
+            var executor = Executors.newFixedThreadPool(16);
+            try {
+                // Upload the same daily total many times for every user, all at once
+                var tasks = new ArrayList<Callable<Step>>();
+                for (int upload = 0; upload < uploadsPerUser; upload++) {
+                    for (int user = 0; user < numberOfUsers; user++) {
+                        var dto = testObjectBuilder.copyAndPostponeMinutes(firstDto, upload);
+                        dto.setUserId("concurrentUser" + user);
+                        dto.setStepCount(stepCount);
+                        tasks.add(() -> stepService.addSingleStepForUser(dto.getUserId(), dto));
+                    }
+                }
+                for (Future<Step> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            for (int user = 0; user < numberOfUsers; user++) {
+                // Assert that the repeated uploads updated a single step, and only the first one added to the week
+                var userId = "concurrentUser" + user;
+                assertEquals(1, stepRepository.getListOfStepsByUserId(userId).orElseThrow().size());
+                var weekStepTotal = weekStepRepository.findAll().stream()
+                        .filter(weekStep -> weekStep.getUserId().equals(userId))
+                        .mapToInt(WeekStep::getStepCount)
+                        .sum();
+                assertEquals(stepCount, weekStepTotal);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Repeated uploads:")
+    public class RepeatedUploadTest {
+
+        @Test
+        @DisplayName("Returns the earlier Step without adding steps again when an upload is resent with the same key")
+        public void testAddSingleStepForUser_DeduplicatesIdempotencyKey() {
+            // Upload a day total, then a higher one, then resend the first upload with its key
+            var firstDto = testObjectBuilder.getTestStepDTO();
+            firstDto.setStepCount(100);
+            var laterDto = testObjectBuilder.copyAndPostponeMinutes(firstDto, 30);
+            laterDto.setStepCount(150);
+            var firstStep = stepService.addSingleStepForUser(testUser, firstDto, "upload-1");
+            stepService.addSingleStepForUser(testUser, laterDto, "upload-2");
+            var resentStep = stepService.addSingleStepForUser(testUser, firstDto, "upload-1");
+
+            // Assert that the first result is returned and the week still holds the latest day total
+            assertEquals(firstStep.getStepCount(), resentStep.getStepCount());
+            assertEquals((Integer) 150, stepService.getStepCountForUserYearAndWeek(testUser, 2023, DateHelper.getWeek(firstDto.getStartTime())));
+            assertEquals(150, stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).orElseThrow().getStepCount());
+        }
+
+        @Test
+        @DisplayName("Recognizes a resent upload by its content when it has no key")
+        public void testAddSingleStepForUser_DeduplicatesContent() {
+            // Upload the same data twice without a key
+            var dto = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, dto);
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            stepService.addSingleStepForUser(testUser, testObjectBuilder.getTestStepDTO());
+
+            // Assert that the repeat did not touch the database
+            assertEquals(0, statistics.getPrepareStatementCount());
+        }
+
+        @Test
+        @DisplayName("Does not add steps for a lower day total arriving after a higher one")
+        public void testAddSingleStepForUser_IgnoresLowerDayTotal() {
+            // Upload a day total, then a higher one, then an older lower one with other content
+            var firstDto = testObjectBuilder.getTestStepDTO();
+            firstDto.setStepCount(100);
+            var laterDto = testObjectBuilder.copyAndPostponeMinutes(firstDto, 30);
+            laterDto.setStepCount(150);
+            var lateDto = testObjectBuilder.copyAndPostponeMinutes(firstDto, 10);
+            lateDto.setStepCount(120);
+            stepService.addSingleStepForUser(testUser, firstDto);
+            stepService.addSingleStepForUser(testUser, laterDto);
+            stepService.addSingleStepForUser(testUser, lateDto);
+
+            // Assert that the week and the stored step still hold the highest day total
+            assertEquals((Integer) 150, stepService.getStepCountForUserYearAndWeek(testUser, 2023, DateHelper.getWeek(firstDto.getStartTime())));
+            assertEquals(150, stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).orElseThrow().getStepCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Latest step cache:")
+    public class LatestStepCacheTest {
+
+        @Test
+        @DisplayName("Updates the latest step without querying the step table")
+        public void testAddSingleStepForUser_UsesCachedLatestStep() {
+            // Upload a step, which puts it in the cache
+            var firstDto = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, firstDto);
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            // Upload a new total for the same day
+            var secondDto = testObjectBuilder.copyAndPostponeMinutes(firstDto, 10);
+            secondDto.setStepCount(firstDto.getStepCount() + 50);
+            stepService.addSingleStepForUser(testUser, secondDto);
+
+            // Assert that no query was run and that the stored step was still updated
+            assertEquals(0, statistics.getQueryExecutionCount());
+            assertEquals(secondDto.getStepCount(),
+                    stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).orElseThrow().getStepCount());
+        }
+
+        @Test
+        @DisplayName("Counts cache hits in the meter registry")
+        public void testGetLatestStep_RecordsCacheHits() {
+            // Upload a step, which puts it in the cache
+            stepService.addSingleStepForUser(testUser, testObjectBuilder.getTestStepDTO());
+            var hits = meterRegistry.get("cache.gets").tag("cache", "latestStep").tag("result", "hit").functionCounter();
+            var hitsBefore = hits.count();
+
+            // Read the latest step of the user
+            stepService.getLatestStepByStartTimeFromUser(testUser);
+
+            // Assert that the read was counted as a hit
+            assertEquals(hitsBefore + 1, hits.count());
+        }
+
+        @Test
+        @DisplayName("Is emptied when the step table is deleted")
+        public void testDeleteStepTable_InvalidatesCache() {
+            // Upload a step, which puts it in the cache
+            stepService.addSingleStepForUser(testUser, testObjectBuilder.getTestStepDTO());
+
+            // Delete all steps
+            stepService.deleteStepTable();
+
+            // Assert that the deleted step is no longer returned
+            assertThrows(InvalidUserIdException.class, () -> stepService.getLatestStepByStartTimeFromUser(testUser));
+        }
+
+        @Test
+        @DisplayName("Does not overwrite a step written while a cache miss was loading an older version of it")
+        public void testGet_WriteDuringLoad_KeepsWrittenStep() {
+            // Arrange: A write of the same step lands while the miss is still reading the stored row
+            var start = ZonedDateTime.of(2023, 5, 1, 10, 0, 0, 0, ZoneId.systemDefault());
+            var storedStep = new Step(testUser, 100, start, start.plusMinutes(1), start.plusMinutes(2));
+            var writtenStep = new Step(testUser, 150, start, start.plusMinutes(5), start.plusMinutes(6));
+            var repository = mock(StepRepository.class);
+            var latestStepCache = new LatestStepCache(repository, new SimpleMeterRegistry(), 60, 100);
+            when(repository.findFirstByUserIdOrderByStartTimeDesc(testUser)).thenAnswer(invocation -> {
+                latestStepCache.update(writtenStep);
+                return Optional.of(storedStep);
+            });
+
+            // Act
+            latestStepCache.get(testUser);
+
+            // Assert that the next lookup returns the written step
+            assertEquals(150, latestStepCache.get(testUser).orElseThrow().getStepCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("getYearlyStepSummary():")
+    public class GetYearlyStepSummaryTest {
+
+        @Test
+        @DisplayName("Returns the weekly and monthly step counts, the total and the best week and month of the year")
+        public void testGetYearlyStepSummary_ReturnsSummaryOfYear() {
+            // Upload steps in March and on two days of the same week in July
+            var march = ZonedDateTime.of(2023, 3, 15, 10, 0, 0, 0, ZoneId.systemDefault());
+            var july = ZonedDateTime.of(2023, 7, 4, 10, 0, 0, 0, ZoneId.systemDefault());
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 1000, march, march.plusMinutes(1), march.plusMinutes(2)));
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 500, july, july.plusMinutes(1), july.plusMinutes(2)));
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 700, july.plusDays(1), july.plusDays(1).plusMinutes(1), july.plusDays(1).plusMinutes(2)));
+
+            var summary = stepService.getYearlyStepSummary(testUser, 2023);
+
+            // Assert that the weeks are indexed by week number and the months from January
+            assertEquals(WeeklyStepDTO.WEEK_SLOTS, summary.getWeeklySteps().length);
+            assertEquals(12, summary.getMonthlySteps().length);
+            assertEquals(1000, summary.getWeeklySteps()[DateHelper.getWeek(march)]);
+            assertEquals(1200, summary.getWeeklySteps()[DateHelper.getWeek(july)]);
+            assertEquals(1000, summary.getMonthlySteps()[2]);
+            assertEquals(1200, summary.getMonthlySteps()[6]);
+            assertEquals(2200, summary.getYearlyStepCount());
+            assertEquals(DateHelper.getWeek(july), summary.getBestWeek());
+            assertEquals(1200, summary.getBestWeekStepCount());
+            assertEquals(7, summary.getBestMonth());
+            assertEquals(1200, summary.getBestMonthStepCount());
+        }
+
+        @Test
+        @DisplayName("Returns zeros and no best periods for a year without steps")
+        public void testGetYearlyStepSummary_NoStepData_ReturnsZeros() {
+            var summary = stepService.getYearlyStepSummary(testUser, 2023);
+
+            assertTrue(Arrays.stream(summary.getWeeklySteps()).allMatch(stepCount -> stepCount == 0));
+            assertTrue(Arrays.stream(summary.getMonthlySteps()).allMatch(stepCount -> stepCount == 0));
+            assertEquals(0, summary.getYearlyStepCount());
+            assertEquals(0, summary.getBestWeek());
+            assertEquals(0, summary.getBestMonth());
+        }
+
+        @Test
+        @DisplayName("Reads the year with at most two queries")
+        public void testGetYearlyStepSummary_RunsTwoQueries() {
+            stepService.addSingleStepForUser(testUser, testObjectBuilder.getTestStepDTO());
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            stepService.getYearlyStepSummary(testUser, 2023);
+
+            // The summary is read with plain JDBC, so Hibernate must not have loaded any week or month entity
+            assertEquals(0, statistics.getEntityLoadCount());
+            assertEquals(0, statistics.getQueryExecutionCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("getStepHistory():")
+    public class GetStepHistoryTest {
+
+        @Test
+        @DisplayName("Walks all steps of the user page by page, newest first")
+        public void testGetStepHistory_ReadsAllPagesInOrder() {
+            // Arrange: Store seven steps, where the last two share their start time, and a step of another user
+            var start = ZonedDateTime.of(2023, 5, 1, 10, 0, 0, 0, ZoneId.systemDefault());
+            var storedIds = new ArrayList<Long>();
+            for (int i = 0; i < 7; i++) {
+                var startTime = start.plusMinutes(Math.min(i, 5));
+                storedIds.add(stepRepository.save(new Step(testUser, i + 1, startTime, startTime.plusMinutes(1),
+                        startTime.plusMinutes(2))).getId());
+            }
+            stepRepository.save(new Step("otherUser", 1, start, start.plusMinutes(1), start.plusMinutes(2)));
+
+            // Act: Read pages of three steps until there is no next page
+            var readIds = new ArrayList<Long>();
+            var pages = 0;
+            String cursor = null;
+            do {
+                var page = stepService.getStepHistory(testUser, cursor, 3);
+                page.getSteps().forEach(step -> readIds.add(step.getId()));
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+
+            // Assert: All steps of the user were read once, ordered by start time and then ID, newest first
+            Collections.reverse(storedIds);
+            assertEquals(storedIds, readIds);
+            assertEquals(3, pages);
+        }
+
+        @Test
+        @DisplayName("Returns no next cursor when the page holds the last steps")
+        public void testGetStepHistory_LastPage_HasNoNextCursor() {
+            var start = ZonedDateTime.of(2023, 5, 1, 10, 0, 0, 0, ZoneId.systemDefault());
+            stepRepository.save(new Step(testUser, 10, start, start.plusMinutes(1), start.plusMinutes(2)));
+            stepRepository.save(new Step(testUser, 20, start.plusHours(1), start.plusHours(1).plusMinutes(1), start.plusHours(1).plusMinutes(2)));
+
+            var page = stepService.getStepHistory(testUser, null, 2);
+
+            assertEquals(2, page.getSteps().size());
+            assertEquals(20, page.getSteps().get(0).getStepCount());
+            assertNull(page.getNextCursor());
+        }
+
+        @Test
+        @DisplayName("Throws IllegalArgumentException for a limit below 1 or an invalid cursor")
+        public void testGetStepHistory_InvalidArguments_ThrowsIllegalArgumentException() {
+            assertThrows(IllegalArgumentException.class, () -> stepService.getStepHistory(testUser, null, 0));
+            assertThrows(IllegalArgumentException.class, () -> stepService.getStepHistory(testUser, "invalid", 10));
+        }
+    }
+
+    @Nested
+    @DisplayName("getStepCountsForUsers():")
+    public class GetStepCountsForUsersTest {
+
+        @Test
+        @DisplayName("Returns the week step count of each user, and 0 for users without steps")
+        public void testGetStepCountsForUsers_Week_ReturnsCountPerUser() {
+            weekStepRepository.addStepsToWeek("user1", 2023, 10, 1000);
+            weekStepRepository.addStepsToWeek("user2", 2023, 10, 2000);
+            weekStepRepository.addStepsToWeek("user2", 2023, 11, 500);
+
+            var result = stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(List.of("user2", "user3", "user1"), 2023, 10, null));
+
+            // Assert that every user is present, in the order of the request
+            assertEquals(List.of("user2", "user3", "user1"), new ArrayList<>(result.keySet()));
+            assertEquals((Integer) 2000, result.get("user2"));
+            assertEquals((Integer) 0, result.get("user3"));
+            assertEquals((Integer) 1000, result.get("user1"));
+        }
+
+        @Test
+        @DisplayName("Returns the month step count of each user")
+        public void testGetStepCountsForUsers_Month_ReturnsCountPerUser() {
+            monthStepRepository.addStepsToMonth("user1", 2023, 3, 1500);
+            monthStepRepository.addStepsToMonth("user1", 2023, 4, 700);
+
+            var result = stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(List.of("user1", "user2"), 2023, null, 3));
+
+            assertEquals((Integer) 1500, result.get("user1"));
+            assertEquals((Integer) 0, result.get("user2"));
+        }
+
+        @Test
+        @DisplayName("Reads large user lists with one query per chunk of users")
+        public void testGetStepCountsForUsers_LargeList_QueriesInChunks() {
+            // Store steps for a few users of a list spanning three chunks
+            var userIds = new ArrayList<String>();
+            for (int i = 0; i < 2500; i++)
+                userIds.add("user" + i);
+            weekStepRepository.addStepsToWeek("user0", 2023, 10, 100);
+            weekStepRepository.addStepsToWeek("user1999", 2023, 10, 200);
+            weekStepRepository.addStepsToWeek("user2499", 2023, 10, 300);
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            var result = stepService.getStepCountsForUsers(new BatchStepCountRequestDTO(userIds, 2023, 10, null));
+
+            // Assert that all users were read with three queries
+            assertEquals(3, statistics.getQueryExecutionCount());
+            assertEquals(2500, result.size());
+            assertEquals((Integer) 100, result.get("user0"));
+            assertEquals((Integer) 200, result.get("user1999"));
+            assertEquals((Integer) 300, result.get("user2499"));
+        }
+
+        @Test
+        @DisplayName("Throws IllegalArgumentException unless exactly one of week and month is given")
+        public void testGetStepCountsForUsers_InvalidPeriod_ThrowsIllegalArgumentException() {
+            assertThrows(IllegalArgumentException.class, () -> stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(List.of(testUser), 2023, 10, 3)));
+            assertThrows(IllegalArgumentException.class, () -> stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(List.of(testUser), 2023, null, null)));
+            assertThrows(IllegalArgumentException.class, () -> stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(List.of(testUser), 2023, null, 13)));
+        }
+
+        @Test
+        @DisplayName("Throws InvalidUserIdException when the user list is null")
+        public void testGetStepCountsForUsers_NullUserIds_ThrowsInvalidUserIdException() {
+            assertThrows(InvalidUserIdException.class, () -> stepService.getStepCountsForUsers(
+                    new BatchStepCountRequestDTO(null, 2023, 10, null)));
+        }
+    }
+
+    @Nested
+    @DisplayName("getDataVersion():")
+    public class GetDataVersionTest {
+
+        @Test
+        @DisplayName("Is increased by every upload for the user")
+        public void testGetDataVersion_IncreasedByUploads() {
+            var versionBefore = stepService.getDataVersion(testUser);
+
+            // Upload a single step, then a list of steps
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, stepDTO);
+            var versionAfterSingleUpload = stepService.getDataVersion(testUser);
+            stepService.addMultipleStepsForUser(testUser, new ArrayList<>(List.of(testObjectBuilder.copyAndPostponeMinutes(stepDTO, 10))));
+
+            // Assert that each upload gave a new, higher version
+            assertTrue(versionAfterSingleUpload > versionBefore);
+            assertTrue(stepService.getDataVersion(testUser) > versionAfterSingleUpload);
+        }
+
+        @Test
+        @DisplayName("Is not changed by reads or by uploads for other users")
+        public void testGetDataVersion_UnchangedByReadsAndOtherUsers() {
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, stepDTO);
+            var version = stepService.getDataVersion(testUser);
+
+            // Read the data of the user and upload data for another user
+            stepService.getWeekStepsForUserAndYear(testUser, stepDTO.getStartTime().getYear());
+            var otherUserDTO = testObjectBuilder.getTestStepDTO();
+            otherUserDTO.setUserId("otherUser");
+            stepService.addSingleStepForUser("otherUser", otherUserDTO);
+
+            assertEquals(version, stepService.getDataVersion(testUser));
+        }
+
+        @Test
+        @DisplayName("Is increased when the step table is deleted")
+        public void testGetDataVersion_IncreasedByDeleteStepTable() {
+            stepService.addSingleStepForUser(testUser, testObjectBuilder.getTestStepDTO());
+            var version = stepService.getDataVersion(testUser);
+
+            stepService.deleteStepTable();
+
+            assertTrue(stepService.getDataVersion(testUser) > version);
+        }
+    }
+
+    @Nested
+    @DisplayName("Aggregate step cache:")
+    public class AggregateStepCacheTest {
+
+        @Test
+        @DisplayName("Serves repeated reads of the weeks of a year from the cache")
+        public void testGetWeekStepsForUserAndYear_RecordsCacheHits() {
+            // Upload a step and read the weeks of its year, which puts them in the cache
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, stepDTO);
+            var year = stepDTO.getStartTime().getYear();
+            stepService.getWeekStepsForUserAndYear(testUser, year);
+            var hits = meterRegistry.get("cache.gets").tag("cache", "weekStepList").tag("result", "hit").functionCounter();
+            var hitsBefore = hits.count();
+            var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            // Read the weeks of the year again
+            var weekSteps = stepService.getWeekStepsForUserAndYear(testUser, year);
+
+            // Assert that the read was counted as a hit and did not query the database
+            assertEquals(hitsBefore + 1, hits.count());
+            assertEquals(0, statistics.getQueryExecutionCount());
+            assertEquals(1, weekSteps.size());
+        }
+
+        @Test
+        @DisplayName("Returns the new totals after an upload to a cached week and month")
+        public void testAddSingleStepForUser_InvalidatesCachedTotals() {
+            // Upload a step and read the weeks and months of its year, which puts them in the cache
+            var firstDto = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, firstDto);
+            var year = firstDto.getStartTime().getYear();
+            stepService.getWeekStepsForUserAndYear(testUser, year);
+            stepService.getMonthStepsFromYearForUser(testUser, year);
+
+            // Upload a new total for the same day
+            var secondDto = testObjectBuilder.copyAndPostponeMinutes(firstDto, 10);
+            secondDto.setStepCount(firstDto.getStepCount() + 50);
+            stepService.addSingleStepForUser(testUser, secondDto);
+
+            // Assert that the new totals are read
+            assertEquals(secondDto.getStepCount(), stepService.getWeekStepsForUserAndYear(testUser, year).get(0).getStepCount());
+            assertEquals(secondDto.getStepCount(), stepService.getMonthStepsFromYearForUser(testUser, year).get(0).getStepCount());
+        }
+
+        @Test
+        @DisplayName("Is emptied when the step table is deleted")
+        public void testDeleteStepTable_InvalidatesCache() {
+            // Upload a step and read the weeks of its year, which puts them in the cache
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, stepDTO);
+            var year = stepDTO.getStartTime().getYear();
+            stepService.getWeekStepsForUserAndYear(testUser, year);
+
+            // Delete all step data
+            stepService.deleteStepTable();
+            weekStepRepository.deleteAll();
+
+            // Assert that the deleted weeks are no longer returned
+            assertTrue(stepService.getWeekStepsForUserAndYear(testUser, year).isEmpty());
+        }
+    }
+
+
+    @Nested
+    @DisplayName("addStreamedStepsForUser():")
+    public class AddStreamedStepsForUserTest {
+
+        @Test
+        @DisplayName("Stores the same Step as addMultipleStepsForUser() for the same data")
+        public void testAddStreamedStepsForUser_MatchesListUpload() {
+            // Create three StepDTO objects, delivered out of order
+            var dto1 = testObjectBuilder.getTestStepDTO();
+            var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 1);
+            var dto3 = testObjectBuilder.copyAndPostponeMinutes(dto2, 1);
+
+            var result = stepService.addStreamedStepsForUser(testUser, List.of(dto2, dto3, dto1).iterator());
+
+            // Assert that the data was gathered from the earliest start to the latest end
+            assertEquals(39, result.getStepCount());
+            assertEquals(dto1.getStartTime(), result.getStartTime());
+            assertEquals(dto3.getEndTime(), result.getEndTime());
+            assertEquals(dto3.getUploadTime(), result.getUploadTime());
+        }
+
+        @Test
+        @DisplayName("Reads the data without holding a transaction, and stores it afterwards")
+        public void testAddStreamedStepsForUser_ReadsDataOutsideTransaction() {
+            var dto1 = testObjectBuilder.getTestStepDTO();
+            var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 1);
+            var transactionActiveWhileReading = new ArrayList<Boolean>();
+            var source = List.of(dto1, dto2).iterator();
+            // An iterator recording whether a transaction is open each time an object is read from it
+            var stepDTOs = new Iterator<StepDTO>() {
+                @Override
+                public boolean hasNext() {
+                    transactionActiveWhileReading.add(TransactionSynchronizationManager.isActualTransactionActive());
+                    return source.hasNext();
+                }
+
+                @Override
+                public StepDTO next() {
+                    return source.next();
+                }
+            };
+
+            var result = stepService.addStreamedStepsForUser(testUser, stepDTOs);
+
+            assertFalse(transactionActiveWhileReading.contains(true));
+            assertEquals(26, result.getStepCount());
+            assertTrue(stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).isPresent());
+        }
+
+        @Test
+        @DisplayName("Throws 'DateTimeValueException' when StepDTO with incompatible time fields is encountered")
+        public void testAddStreamedStepsForUser_ThrowsDateTimeValueException_WhenBadTimeFields() {
+            // Create StepDTO with an end time after its upload time
+            var badTimeFieldsDTO = testObjectBuilder.getTestStepDTO();
+            badTimeFieldsDTO.setUploadTime(badTimeFieldsDTO.getEndTime().minusSeconds(1));
+
+            // Assert that nothing is stored when the bad object is encountered
+            assertThrows(DateTimeValueException.class, () -> stepService.addStreamedStepsForUser(testUser,
+                    List.of(testObjectBuilder.getTestStepDTO(), badTimeFieldsDTO).iterator()));
+            assertFalse(stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).isPresent());
+        }
+
+        @Test
+        @DisplayName("Throws 'InvalidStepDataException' when no data is sent")
+        public void testAddStreamedStepsForUser_ThrowsInvalidStepDataException_WhenEmpty() {
+            assertThrows(InvalidStepDataException.class,
+                    () -> stepService.addStreamedStepsForUser(testUser, new ArrayList<StepDTO>().iterator()));
+        }
+    }
+
+    @Nested
+    @DisplayName("addBinaryStepsForUser():")
+    public class AddBinaryStepsForUserTest {
+
+        @Test
+        @DisplayName("Stores one Step per day of the upload zone")
+        public void testAddBinaryStepsForUser_StoresOneStepPerDay() throws Exception {
+            // Encode two samples on the first day of the year and one on the second
+            var dto1 = testObjectBuilder.getTestStepDTO();
+            var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 30);
+            var dto3 = testObjectBuilder.copyAndPostponeMinutes(dto1, 24 * 60);
+            var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(dto1, dto2, dto3));
+
+            var result = stepService.addBinaryStepsForUser(testUser, new BinaryStepReader(new ByteArrayInputStream(bytes)));
+
+            // Assert that each day got its own Step and the latest one is returned
+            assertEquals(2, stepRepository.getListOfStepsByUserId(testUser).orElseThrow().size());
+            assertEquals(13, result.getStepCount());
+            assertTrue(dto3.getStartTime().isEqual(result.getStartTime()));
+            assertEquals((Integer) 39, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 1));
+        }
+
+        @Test
+        @DisplayName("Decodes the upload without holding a transaction, and stores it afterwards")
+        public void testAddBinaryStepsForUser_DecodesUploadOutsideTransaction() throws Exception {
+            var dto1 = testObjectBuilder.getTestStepDTO();
+            var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(dto1, testObjectBuilder.copyAndPostponeMinutes(dto1, 1)));
+            var transactionActiveWhileReading = new ArrayList<Boolean>();
+            // An input stream recording whether a transaction is open each time it is read from
+            var upload = new ByteArrayInputStream(bytes) {
+                @Override
+                public synchronized int read(byte[] buffer, int offset, int length) {
+                    transactionActiveWhileReading.add(TransactionSynchronizationManager.isActualTransactionActive());
+                    return super.read(buffer, offset, length);
+                }
+
+                @Override
+                public synchronized int read() {
+                    transactionActiveWhileReading.add(TransactionSynchronizationManager.isActualTransactionActive());
+                    return super.read();
+                }
+            };
+
+            var result = stepService.addBinaryStepsForUser(testUser, new BinaryStepReader(upload));
+
+            assertFalse(transactionActiveWhileReading.isEmpty());
+            assertFalse(transactionActiveWhileReading.contains(true));
+            assertEquals(26, result.getStepCount());
+        }
+
+        @Test
+        @DisplayName("Throws 'DateTimeValueException' when a sample ends after it was uploaded")
+        public void testAddBinaryStepsForUser_ThrowsDateTimeValueException_WhenBadTimeFields() throws Exception {
+            // Encode a sample with an upload time before its end time
+            var badDto = testObjectBuilder.getTestStepDTO();
+            badDto.setUploadTime(badDto.getEndTime().minusMinutes(1));
+            var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(testObjectBuilder.getTestStepDTO(), badDto));
+
+            // Assert that nothing is stored
+            assertThrows(DateTimeValueException.class,
+                    () -> stepService.addBinaryStepsForUser(testUser, new BinaryStepReader(new ByteArrayInputStream(bytes))));
+            assertFalse(stepRepository.findFirstByUserIdOrderByStartTimeDesc(testUser).isPresent());
+        }
+
+        @Test
+        @DisplayName("Throws 'IllegalArgumentException' when a sample has no steps")
+        public void testAddBinaryStepsForUser_ThrowsIllegalArgumentException_WhenStepCountIsZero() throws Exception {
+            var badDto = testObjectBuilder.getTestStepDTO();
+            badDto.setStepCount(0);
+            var bytes = BinaryStepWriter.encode(ZoneId.systemDefault(), List.of(badDto));
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> stepService.addBinaryStepsForUser(testUser, new BinaryStepReader(new ByteArrayInputStream(bytes))));
+        }
+    }
+
     @Nested
     @DisplayName("addMultipleStepsForUser():")
     public class AddMultipleStepsForUserTest {
@@ -816,6 +1561,144 @@ public void testAddMultipleStepsForUser_ReturnsStepWithTotalStepCount_WhenNoUser
                 // Assert that the Step object returned by the tested method has the correct stepCount
                 assertEquals(expectedStepCount, actualStepCount,"Expected stepCount to be '" + expectedStepCount + "' but was '" + actualStepCount + "'. " + result);
             }
+
+            @Test
+            @DisplayName("Stores data covering several days in the day, week and month each part belongs to")
+            public void testAddMultipleStepsForUser_SplitsDataByDay() {
+                // Create two samples on the last day of January and one on the first day of February
+                var januaryDto = testObjectBuilder.getTestStepDTO();
+                januaryDto.setStartTime(januaryDto.getStartTime().plusDays(30));
+                januaryDto.setEndTime(januaryDto.getEndTime().plusDays(30));
+                januaryDto.setUploadTime(januaryDto.getUploadTime().plusDays(30));
+                var laterJanuaryDto = testObjectBuilder.copyAndPostponeMinutes(januaryDto, 60);
+                var februaryDto = testObjectBuilder.copyAndPostponeMinutes(januaryDto, 24 * 60);
+
+                var result = stepService.addMultipleStepsForUser(testUser,
+                        new ArrayList<>(List.of(februaryDto, laterJanuaryDto, januaryDto)));
+
+                // Assert that one Step per day is stored and the latest one is returned
+                assertEquals(2, stepRepository.getListOfStepsByUserId(testUser).orElseThrow().size());
+                assertEquals(13, result.getStepCount());
+                assertTrue(februaryDto.getStartTime().isEqual(result.getStartTime()));
+                // Assert that each month only holds the steps of its own days, while the week they share holds all of them
+                assertEquals((Integer) 26, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 1));
+                assertEquals((Integer) 13, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 2));
+                assertEquals((Integer) 39, stepService.getStepCountForUserYearAndWeek(testUser, 2023, DateHelper.getWeek(januaryDto.getStartTime())));
+            }
+        }
+    }
+
+
+    @Nested
+    @DisplayName("addStepsForMultipleUsers():")
+    public class AddStepsForMultipleUsersTest {
+
+        @Test
+        @DisplayName("Rejects only the invalid items and stores the valid ones")
+        public void testAddStepsForMultipleUsers_RejectsOnlyInvalidItems() {
+            // Create one valid item per user and one item with incompatible time fields
+            var validDto = testObjectBuilder.getTestStepDTO();
+            var otherUserDto = testObjectBuilder.getTestStepDTO();
+            otherUserDto.setUserId("otherUser");
+            var badDto = testObjectBuilder.getTestStepDTO();
+            badDto.setUserId("badUser");
+            badDto.setEndTime(badDto.getStartTime().minusSeconds(1));
+
+            // Pass the test data to the method to be tested
+            var result = stepService.addStepsForMultipleUsers(new ArrayList<>(List.of(validDto, badDto, otherUserDto)));
+
+            // Assert that each item got the correct status and only valid data was stored
+            assertEquals(3, result.size());
+            assertEquals(BatchItemStatusDTO.Status.ACCEPTED, result.get(0).getStatus());
+            assertEquals(BatchItemStatusDTO.Status.REJECTED, result.get(1).getStatus());
+            assertTrue(result.get(1).getMessage().contains("Start time must be before end time"));
+            assertEquals(BatchItemStatusDTO.Status.ACCEPTED, result.get(2).getStatus());
+            assertEquals(2, stepRepository.findAll().size());
+            assertFalse(stepRepository.findFirstByUserIdOrderByStartTimeDesc("badUser").isPresent());
+        }
+
+        @Test
+        @DisplayName("Stores the same totals as adding the items one by one")
+        public void testAddStepsForMultipleUsers_StoresSameTotalsAsSingleUploads() {
+            // Create three uploads from the same day and one from the next day
+            var dto1 = testObjectBuilder.getTestStepDTO();
+            var dto2 = testObjectBuilder.copyAndPostponeMinutes(dto1, 60);
+            dto2.setStepCount(100);
+            var dto3 = testObjectBuilder.copyAndPostponeMinutes(dto2, 60);
+            dto3.setStepCount(250);
+            var nextDay = testObjectBuilder.copyAndPostponeMinutes(dto1, 60 * 24);
+            nextDay.setStepCount(40);
+
+            // Pass the test data to the method to be tested in shuffled order
+            stepService.addStepsForMultipleUsers(new ArrayList<>(List.of(nextDay, dto3, dto1, dto2)));
+
+            // Assert that one Step per day exists and the aggregates hold the day totals
+            var week = DateHelper.getWeek(dto1.getStartTime());
+            assertEquals(2, stepRepository.findAll().size());
+            assertEquals(40, stepService.getLatestStepByStartTimeFromUser(testUser).getStepCount());
+            assertEquals((Integer) 290, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 1));
+            assertEquals((Integer) (250 + (DateHelper.getWeek(nextDay.getStartTime()) == week ? 40 : 0)),
+                    stepService.getStepCountForUserYearAndWeek(testUser, 2023, week));
+        }
+
+        @Test
+        @DisplayName("Counts a multi-day batch that is uploaded twice only once")
+        public void testAddStepsForMultipleUsers_SameBatchTwice_CountsOnce() {
+            // Arrange: One day total on each of three days of the same week
+            var start = ZonedDateTime.of(2023, 3, 14, 10, 0, 0, 0, ZoneId.systemDefault());
+            var batch = List.of(stepDTOOnDay(start, 0, 500), stepDTOOnDay(start, 1, 600), stepDTOOnDay(start, 2, 700));
+
+            // Act
+            stepService.addStepsForMultipleUsers(new ArrayList<>(batch));
+            stepService.addStepsForMultipleUsers(new ArrayList<>(batch));
+
+            // Assert that one Step per day is stored and each day is counted once in the week and the month
+            assertEquals(3, stepRepository.findAll().size());
+            assertEquals((Integer) 1800, stepService.getStepCountForUserYearAndWeek(testUser, 2023, DateHelper.getWeek(start)));
+            assertEquals((Integer) 1800, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 3));
+        }
+
+        @Test
+        @DisplayName("Adds only the difference to the stored days of an overlapping backfill")
+        public void testAddStepsForMultipleUsers_OverlappingBackfill_AddsDifference() {
+            // Arrange: Store three days, then upload a higher total for the second day, the same total for the
+            // third and a total for a new fourth day
+            var start = ZonedDateTime.of(2023, 3, 14, 10, 0, 0, 0, ZoneId.systemDefault());
+            stepService.addStepsForMultipleUsers(new ArrayList<>(List.of(
+                    stepDTOOnDay(start, 0, 500), stepDTOOnDay(start, 1, 600), stepDTOOnDay(start, 2, 700))));
+
+            // Act
+            stepService.addStepsForMultipleUsers(new ArrayList<>(List.of(
+                    stepDTOOnDay(start, 1, 650), stepDTOOnDay(start, 2, 700), stepDTOOnDay(start, 3, 100))));
+
+            // Assert
+            assertEquals(4, stepRepository.findAll().size());
+            assertEquals(100, stepService.getLatestStepByStartTimeFromUser(testUser).getStepCount());
+            assertEquals((Integer) 1950, stepService.getStepCountForUserYearAndWeek(testUser, 2023, DateHelper.getWeek(start)));
+            assertEquals((Integer) 1950, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 3));
+        }
+
+        private StepDTO stepDTOOnDay(ZonedDateTime start, int day, int stepCount) {
+            var startTime = start.plusDays(day);
+            return new StepDTO(testUser, stepCount, startTime, startTime.plusMinutes(1), startTime.plusMinutes(2));
+        }
+
+        @Test
+        @DisplayName("Updates the stored Step when the batch holds data from the same day")
+        public void testAddStepsForMultipleUsers_UpdatesStoredStepOfSameDay() {
+            // Store a step through the single upload path first
+            var storedDto = testObjectBuilder.getTestStepDTO();
+            stepService.addSingleStepForUser(testUser, storedDto);
+
+            // Upload a new day total for the same day through the batch
+            var laterDto = testObjectBuilder.copyAndPostponeMinutes(storedDto, 30);
+            laterDto.setStepCount(113);
+            stepService.addStepsForMultipleUsers(new ArrayList<>(List.of(laterDto)));
+
+            // Assert that the stored step was updated and the aggregate holds the new day total
+            assertEquals(1, stepRepository.findAll().size());
+            assertEquals(113, stepService.getLatestStepByStartTimeFromUser(testUser).getStepCount());
+            assertEquals((Integer) 113, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 1));
         }
     }
 
@@ -836,8 +1719,8 @@ void testGetStepCountPerWeekForUser_NoStepData_ReturnsEmptyList() {
             // Assertions
             assertNotNull(result);
             assertEquals(testUser, result.getUserId());
-            assertEquals(53, result.getWeeklySteps().size());
-            assertTrue(result.getWeeklySteps().stream().allMatch(stepCount -> stepCount == 0));
+            assertEquals(54, result.getWeeklySteps().length);
+            assertTrue(Arrays.stream(result.getWeeklySteps()).allMatch(stepCount -> stepCount == 0));
         }
 
         @Test
@@ -859,8 +1742,22 @@ void testGetStepCountPerWeekForUser_WeekOutOfRange_IgnoresInvalidWeek() {
             // Assertions
             assertNotNull(result);
             assertEquals(testUser, result.getUserId());
-            assertEquals(53, result.getWeeklySteps().size());
-            assertTrue(result.getWeeklySteps().stream().allMatch(stepCount -> stepCount == 0));
+            assertEquals(54, result.getWeeklySteps().length);
+            assertTrue(Arrays.stream(result.getWeeklySteps()).allMatch(stepCount -> stepCount == 0));
+        }
+
+        @Test
+        @DisplayName("Returns the step count of week 53")
+        void testGetStepCountPerWeekForUser_Week53_ReturnsStepCount() {
+            // Store steps in week 53, which years with ISO weeks can have
+            weekStepRepository.addStepsToWeek(testUser, 2020, 53, 800);
+
+            // Invoke the method under test
+            var result = stepService.getStepCountPerWeekForUser(testUser, 2020);
+
+            // Assertions
+            assertEquals(54, result.getWeeklySteps().length);
+            assertEquals(800, result.getWeeklySteps()[53]);
         }
 
         @Test
@@ -885,45 +1782,45 @@ void testGetStepCountPerWeekForUser_MultipleStepsInDifferentWeeks_ReturnsCorrect
             var result = stepService.getStepCountPerWeekForUser(testUser, ZonedDateTime.now().getYear());
 
             // Retrieve expected values
-            var expected1 = result.getWeeklySteps().get(DateHelper.getWeek(stepsInWeek1.getStartTime()));
-            var expected2 = result.getWeeklySteps().get(DateHelper.getWeek(stepsInWeek2.getStartTime()));
-            var expected3 = result.getWeeklySteps().get(DateHelper.getWeek(stepsInWeek3.getStartTime()));
-            System.out.println(result.getWeeklySteps());
+            var expected1 = result.getWeeklySteps()[DateHelper.getWeek(stepsInWeek1.getStartTime())];
+            var expected2 = result.getWeeklySteps()[DateHelper.getWeek(stepsInWeek2.getStartTime())];
+            var expected3 = result.getWeeklySteps()[DateHelper.getWeek(stepsInWeek3.getStartTime())];
             // Assertions
             assertNotNull(result);
             assertEquals(testUser, result.getUserId());
-            assertEquals(53, result.getWeeklySteps().size());
-            assertEquals((Integer) 1000, expected1);
-            assertEquals((Integer) 2000, expected2);
-            assertEquals((Integer) 1500, expected3);
+            assertEquals(54, result.getWeeklySteps().length);
+            assertEquals(1000, expected1);
+            assertEquals(2000, expected2);
+            assertEquals(1500, expected3);
         }
 
         @Test
         @DisplayName("Returns correct step count same week")
         void testGetStepCountPerWeekForUser_MultipleStepsInSameWeek_ReturnsSumOfStepCounts() {
-            var now = ZonedDateTime.now();
-            var startOfWeek = DateHelper.getWeekStart(now);
+            // Monday and Thursday of 2023-03-06, both in week 10 whether weeks are aligned to January 1 or ISO weeks
+            var monday = ZonedDateTime.of(2023, 3, 6, 10, 0, 0, 0, ZoneId.systemDefault());
+            var thursday = monday.plusDays(3);
 
             // Create DTO objects for testing
-            var stepsInWeek = new StepDTO(testUser, 500, startOfWeek, startOfWeek.plusMinutes(1), startOfWeek.plusMinutes(2));
-            var additionalStepsInWeek = new StepDTO(testUser, 700, startOfWeek.plusDays(3), startOfWeek.plusMinutes(1).plusDays(3), startOfWeek.plusMinutes(2).plusDays(3));
+            var stepsInWeek = new StepDTO(testUser, 500, monday, monday.plusMinutes(1), monday.plusMinutes(2));
+            var additionalStepsInWeek = new StepDTO(testUser, 700, thursday, thursday.plusMinutes(1), thursday.plusMinutes(2));
 
             // Add data to test method
             stepService.addSingleStepForUser(testUser, stepsInWeek);
             stepService.addSingleStepForUser(testUser, additionalStepsInWeek);
 
             // Invoke the method under test
-            var result = stepService.getStepCountPerWeekForUser(testUser, ZonedDateTime.now().getYear());
+            var result = stepService.getStepCountPerWeekForUser(testUser, 2023);
             var objectsInDataBase = weekStepRepository.findAll();
 
             // Retrieve expected value
-            var expected = result.getWeeklySteps().get(DateHelper.getWeek(startOfWeek));
+            var expected = result.getWeeklySteps()[10];
 
             // Assertions
             assertNotNull(result);
             assertEquals(testUser, result.getUserId());
-            assertEquals(53, result.getWeeklySteps().size());
-            assertEquals((Integer) 1200, expected); // Sum of step counts in the same week
+            assertEquals(54, result.getWeeklySteps().length);
+            assertEquals(1200, expected); // Sum of step counts in the same week
             assertEquals(1, objectsInDataBase.size());
         }
 
@@ -948,15 +1845,15 @@ void testGetStepCountPerWeekForUser_ReturnsCorrectValues() {
             var weeklyStepCount = stepService.getStepCountPerWeekForUser(testUser, ZonedDateTime.now().getYear());
 
             // Retrieve expected values (adjust for negative array index)
-            var expected1 = weeklyStepCount.getWeeklySteps().get(DateHelper.getWeek(stepsInCurrentWeek.getStartTime()));
-            var expected2 = weeklyStepCount.getWeeklySteps().get(DateHelper.getWeek(stepsInNextWeek.getStartTime()));
+            var expected1 = weeklyStepCount.getWeeklySteps()[DateHelper.getWeek(stepsInCurrentWeek.getStartTime())];
+            var expected2 = weeklyStepCount.getWeeklySteps()[DateHelper.getWeek(stepsInNextWeek.getStartTime())];
 
             // Assertions
             assertNotNull(weeklyStepCount);
             assertEquals(testUser, weeklyStepCount.getUserId());
-            assertEquals(53, weeklyStepCount.getWeeklySteps().size());
-            assertEquals((Integer) 1000, expected1);
-            assertEquals((Integer) 2000, expected2);
+            assertEquals(54, weeklyStepCount.getWeeklySteps().length);
+            assertEquals(1000, expected1);
+            assertEquals(2000, expected2);
         }
     }
 
@@ -984,8 +1881,10 @@ public void testGetStepsPerDayOfWeekWithNullUser() {
         @Test
         @DisplayName("Returns the correct total stepCount for the week")
         public void testGetTotalStepCountForWeek() {
-            // Arrange: Create and save three test Step objects of the same week
-            var firstTestStep = testObjectBuilder.getTestStep();
+            // Arrange: Create and save three test Step objects on Monday of the current week
+            var monday = LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .atTime(1, 1).atZone(ZoneId.systemDefault());
+            var firstTestStep = new Step(testUser, 13, monday, monday.plusMinutes(10), monday.plusMinutes(20));
             stepRepository.save(firstTestStep);
             stepRepository.save(testObjectBuilder.copyAndPostponeMinutes(firstTestStep, 1));
             stepRepository.save(testObjectBuilder.copyAndPostponeMinutes(firstTestStep, 2));
@@ -1008,25 +1907,25 @@ public void testGetTotalStepCountForWeek() {
 
             // Assert that the actual total step count matches the expected total step count
             assertEquals(expectedTotalStepCount, actualTotalStepCount);
+            assertEquals(expectedTotalStepCount, testWeekStepDTO.getMondayStepCount());
         }
 
         @Test
-        @DisplayName("Returns correct stepCount for a week that spans two different years")
-        public void testGetStepsPerDayOfWeekForWeekSpanningTwoYears() {
-            // Arrange: Set up two dates of different years but on same week
-            var monday2022 = LocalDateTime.of(
-                    2022, 12, 26, 1, 1).atZone(ZoneId.systemDefault()); // Monday december 2022
-            var sunday2023 = LocalDateTime.of(
-                    2023, 1, 1, 1, 1).atZone(ZoneId.systemDefault()); // Sunday januari 2023
-
-
-            // Create Step objects of both years
-            var step1 = new Step(testUser, 2022, monday2022, monday2022.plusMinutes(1), monday2022.plusMinutes(2));
-            var step2 = new Step(testUser, 2022, monday2022.plusMinutes(3), monday2022.plusMinutes(4), monday2022.plusMinutes(5));
-            var step3 = new Step(testUser, 2023, sunday2023, sunday2023.plusMinutes(1), sunday2023.plusMinutes(2));
+        @DisplayName("Returns the stepCount of each day of the current week and leaves out earlier weeks")
+        public void testGetStepsPerDayOfWeek_OnlyCountsCurrentWeek() {
+            // Arrange: Set up the first and last minute of the current week, and the last minute of the week before
+            var monday = LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .atStartOfDay(ZoneId.systemDefault());
+            var sunday = monday.plusDays(7).minusMinutes(1);
+            var sundayLastWeek = monday.minusMinutes(1);
+
+            var step1 = new Step(testUser, 2022, monday, monday.plusSeconds(10), monday.plusSeconds(20));
+            var step2 = new Step(testUser, 2022, monday.plusMinutes(3), monday.plusMinutes(4), monday.plusMinutes(5));
+            var step3 = new Step(testUser, 2023, sunday, sunday.plusSeconds(10), sunday.plusSeconds(20));
+            var step4 = new Step(testUser, 5000, sundayLastWeek, sundayLastWeek.plusSeconds(10), sundayLastWeek.plusSeconds(20));
 
             // Save Step objects to database
-            stepRepository.saveAll(List.of(step1, step2, step3));
+            stepRepository.saveAll(List.of(step1, step2, step3, step4));
 
             // Act: Call method to be tested to receive the data from the database
             var testWeekStepDTO = stepService.getStepsPerDayForWeek(testUser);
@@ -1040,9 +1939,107 @@ public void testGetStepsPerDayOfWeekForWeekSpanningTwoYears() {
             assertEquals(0, testWeekStepDTO.getSaturdayStepCount());
             assertEquals(2023, testWeekStepDTO.getSundayStepCount());
         }
+
+        @Test
+        @DisplayName("Returns zero for every day when the user has no steps this week")
+        public void testGetStepsPerDayOfWeek_NoStepsThisWeek() {
+            // Arrange: Save a step of an earlier year only
+            stepRepository.save(testObjectBuilder.getTestStep());
+
+            var testWeekStepDTO = stepService.getStepsPerDayForWeek(testUser);
+
+            // Assert that all days are empty
+            assertEquals(0, testWeekStepDTO.getMondayStepCount() + testWeekStepDTO.getTuesdayStepCount()
+                    + testWeekStepDTO.getWednesdayStepCount() + testWeekStepDTO.getThursdayStepCount()
+                    + testWeekStepDTO.getFridayStepCount() + testWeekStepDTO.getSaturdayStepCount()
+                    + testWeekStepDTO.getSundayStepCount());
+        }
     }
 
 
+    @Nested
+    @DisplayName("Bucketing in the zone of the user:")
+    public class UserZoneBucketingTest {
+
+        private final ZoneId stockholm = ZoneId.of("Europe/Stockholm");
+
+        @Test
+        @DisplayName("Stores the zone of the first upload as the zone of the user and keeps it")
+        public void testAddSingleStepForUser_RegistersZoneOfFirstUpload() {
+            var start = LocalDateTime.of(2023, 5, 1, 10, 0).atZone(stockholm);
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 100, start, start.plusMinutes(10), start.plusMinutes(20)));
+            var utcStart = start.plusDays(1).withZoneSameInstant(ZoneId.of("UTC"));
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 100, utcStart, utcStart.plusMinutes(10), utcStart.plusMinutes(20)));
+
+            // Assert that the zone of the first upload is kept
+            assertEquals("Europe/Stockholm", userZoneRepository.findById(testUser).orElseThrow().getZoneId());
+        }
+
+        @Test
+        @DisplayName("Gives concurrent first uploads of a user the zone that was stored first, without failing")
+        public void testRegisterIfAbsent_ConcurrentFirstUploads_AllGetStoredZone() throws Exception {
+            // Let eight threads register a zone of their own for the same new user at the same time
+            var zones = List.of("Europe/Stockholm", "UTC", "America/New_York", "Asia/Tokyo",
+                    "Europe/London", "Australia/Sydney", "Africa/Cairo", "America/Chicago");
+            var executor = Executors.newFixedThreadPool(zones.size());
+            var startGate = new CountDownLatch(1);
+            var results = new ArrayList<Future<ZoneId>>();
+            try {
+                for (var zone : zones) {
+                    results.add(executor.submit(() -> {
+                        startGate.await();
+                        return userZoneRegistry.registerIfAbsent(testUser, ZoneId.of(zone)).getZone();
+                    }));
+                }
+                startGate.countDown();
+
+                var registeredZones = new ArrayList<ZoneId>();
+                for (var result : results)
+                    registeredZones.add(result.get());
+
+                // Assert that every thread got the zone that is stored for the user
+                var storedZone = ZoneId.of(userZoneRepository.findById(testUser).orElseThrow().getZoneId());
+                registeredZones.forEach(registeredZone -> assertEquals(storedZone, registeredZone));
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        @Test
+        @DisplayName("Counts data sent with another offset to the month of the users zone")
+        public void testAddSingleStepForUser_CountsToMonthOfUserZone() {
+            // Register Stockholm as the zone of the user
+            var start = LocalDateTime.of(2023, 5, 1, 10, 0).atZone(stockholm);
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 100, start, start.plusMinutes(10), start.plusMinutes(20)));
+
+            // Send data starting 00:30 on June 1st in Stockholm, which is still May 31st in UTC
+            var utcStart = LocalDateTime.of(2023, 6, 1, 0, 30).atZone(stockholm).withZoneSameInstant(ZoneId.of("UTC"));
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 50, utcStart, utcStart.plusMinutes(10), utcStart.plusMinutes(20)));
+
+            // Assert that the data is counted to June
+            assertEquals((Integer) 100, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 5));
+            assertEquals((Integer) 50, stepService.getStepCountForUserYearAndMonth(testUser, 2023, 6));
+        }
+
+        @Test
+        @DisplayName("Splits a list upload into days of the users zone")
+        public void testAddMultipleStepsForUser_SplitsByDayOfUserZone() {
+            // Register Stockholm as the zone of the user
+            var start = LocalDateTime.of(2023, 5, 1, 10, 0).atZone(stockholm);
+            stepService.addSingleStepForUser(testUser, new StepDTO(testUser, 100, start, start.plusMinutes(10), start.plusMinutes(20)));
+
+            // Send two samples in UTC on the same UTC day, the second one after midnight in Stockholm
+            var evening = LocalDateTime.of(2023, 5, 10, 21, 0).atZone(ZoneId.of("UTC"));
+            var lateEvening = evening.plusMinutes(90);
+            stepService.addMultipleStepsForUser(testUser, new ArrayList<>(List.of(
+                    new StepDTO(testUser, 10, evening, evening.plusMinutes(10), evening.plusMinutes(20)),
+                    new StepDTO(testUser, 20, lateEvening, lateEvening.plusMinutes(10), lateEvening.plusMinutes(20)))));
+
+            // Assert that the samples were stored as two days
+            assertEquals(3, stepRepository.getListOfStepsByUserId(testUser).orElseThrow().size());
+        }
+    }
+
     @Nested
     @DisplayName("Parameterized tests: ")
     public class ParameterizedTests {
@@ -1058,6 +2055,7 @@ public void testAddSingleStepForUser_ThrowsUserIdValueException(String userId, b
             if (shouldThrow) {
                 assertThrows(InvalidUserIdException.class, () -> stepService.addSingleStepForUser(userId.isEmpty() ? null : userId, testStepDTO));
             } else {
+                testStepDTO.setUserId(userId);
                 assertDoesNotThrow(() -> stepService.addSingleStepForUser(userId.isEmpty() ? null : userId, testStepDTO));
             }
         }
@@ -0,0 +1,87 @@
+package se.pbt.stepcounter.validator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import se.pbt.stepcounter.dto.stepdto.StepDTO;
+import se.pbt.stepcounter.exception.DateTimeValueException;
+import se.pbt.stepcounter.testobjects.TestObjectBuilder;
+import se.pbt.stepcounter.validator.boostappvalidator.StepValidator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StepValidator:")
+class StepValidatorTest {
+
+    private final StepValidator stepValidator = new StepValidator();
+    private final TestObjectBuilder testObjectBuilder = new TestObjectBuilder(2023);
+
+    @Nested
+    @DisplayName("findViolations():")
+    public class FindViolationsTest {
+
+        @Test
+        @DisplayName("Returns NONE for valid data")
+        public void testFindViolations_ReturnsNone_WhenValid() {
+            assertEquals(StepDataViolation.NONE, stepValidator.findViolations(testObjectBuilder.getTestStepDTO()));
+        }
+
+        @Test
+        @DisplayName("Returns every broken rule in one pass")
+        public void testFindViolations_ReturnsAllViolations() {
+            // Create data with no user, no steps and no upload time
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepDTO.setUserId(null);
+            stepDTO.setStepCount(0);
+            stepDTO.setUploadTime(null);
+
+            assertEquals(StepDataViolation.NULL_USER_ID | StepDataViolation.STEP_COUNT_TOO_LOW | StepDataViolation.NULL_UPLOAD_TIME,
+                    stepValidator.findViolations(stepDTO));
+        }
+
+        @Test
+        @DisplayName("Applies the DateTimeRange rule to the time fields")
+        public void testFindViolations_AppliesDateTimeRangeRule() {
+            // Create data with equal start and end times, and data uploaded before it ended
+            var sameTimesDTO = testObjectBuilder.getTestStepDTO();
+            sameTimesDTO.setEndTime(sameTimesDTO.getStartTime());
+            var uploadedEarlyDTO = testObjectBuilder.getTestStepDTO();
+            uploadedEarlyDTO.setUploadTime(uploadedEarlyDTO.getEndTime().minusSeconds(1));
+            var endBeforeStartDTO = testObjectBuilder.getTestStepDTO();
+            endBeforeStartDTO.setEndTime(endBeforeStartDTO.getStartTime().minusSeconds(1));
+
+            // Assert that the result agrees with the DateTimeRange constraint
+            var dateTimeRangeValidator = new DateTimeRangeValidator();
+            for (var stepDTO : new StepDTO[]{sameTimesDTO, uploadedEarlyDTO, endBeforeStartDTO}) {
+                assertFalse(dateTimeRangeValidator.isValid(stepDTO, null));
+                assertNotEquals(0, stepValidator.findViolations(stepDTO) & StepDataViolation.TIME_RANGE);
+            }
+            assertEquals(StepDataViolation.END_BEFORE_START | StepDataViolation.TIME_RANGE,
+                    stepValidator.findViolations(endBeforeStartDTO));
+        }
+    }
+
+    @Nested
+    @DisplayName("stepDataIsValid():")
+    public class StepDataIsValidTest {
+
+        @Test
+        @DisplayName("Throws 'DateTimeValueException' describing the data when the end time is before the start time")
+        public void testStepDataIsValid_ThrowsDateTimeValueException_WhenEndBeforeStart() {
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepDTO.setEndTime(stepDTO.getStartTime().minusSeconds(1));
+
+            var result = assertThrows(DateTimeValueException.class, () -> stepValidator.stepDataIsValid(stepDTO));
+            assertTrue(result.getMessage().startsWith("Start time must be before end time\nstepCount= 13"));
+        }
+
+        @Test
+        @DisplayName("Leaves the order of the upload time to the DateTimeRange constraint")
+        public void testStepDataIsValid_IgnoresUploadTimeOrder() {
+            var stepDTO = testObjectBuilder.getTestStepDTO();
+            stepDTO.setUploadTime(stepDTO.getEndTime().minusSeconds(1));
+
+            assertTrue(stepValidator.stepDataIsValid(stepDTO));
+        }
+    }
+}